@@ -5,7 +5,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.client.RestClient;
 import org.springframework.web.client.support.RestClientAdapter;
 import org.springframework.web.service.invoker.HttpServiceProxyFactory;
@@ -17,6 +20,12 @@ import org.springframework.web.service.invoker.HttpServiceProxyFactory;
  * configuring beans, and setting up the application context.
  */
 @SpringBootApplication
+// Registers the @ConfigurationProperties records found in the application packages
+@ConfigurationPropertiesScan
+// Enables the @Scheduled background jobs, e.g. the run partition maintenance
+@EnableScheduling
+// Reflection, proxy and resource hints for the native image (mvn -Pnative native:compile)
+@ImportRuntimeHints(RunnerzRuntimeHints.class)
 public class Application {
 
     private static final Logger log = LoggerFactory.getLogger(Application.class);
@@ -0,0 +1,53 @@
+package com.bryanchow.runnerz;
+
+import com.bryanchow.runnerz.idempotency.IdempotencyRecord;
+import com.bryanchow.runnerz.run.Run;
+import com.bryanchow.runnerz.run.Runs;
+import com.bryanchow.runnerz.statement.SlowStatement;
+import com.bryanchow.runnerz.track.TrackPoint;
+import com.bryanchow.runnerz.user.User;
+import com.bryanchow.runnerz.user.UserHttpClient;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+
+import java.nio.Buffer;
+
+/**
+ * Tells GraalVM native-image about what the application reaches through reflection,
+ * proxies and resources, where Spring's AOT processing cannot see it
+ * (see the native profile in pom.xml).
+ *
+ * Controllers, @ConfigurationProperties, actuator endpoints and Spring Data repositories,
+ * including RunRepository and its RunPatchRepository fragment, are covered by the AOT
+ * processing itself.
+ */
+public class RunnerzRuntimeHints implements RuntimeHintsRegistrar {
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        // Records (de)serialized by an ObjectMapper or DataClassRowMapper outside of a controller:
+        // Runs by RunJsonDataLoader, User by UserRestClient, TrackPoint by TrackController,
+        // IdempotencyRecord by JdbcIdempotencyStore and SlowStatement by /actuator/statements.
+        // The registrar follows the components, e.g. Run to Geo and User to Address and Company.
+        new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(),
+                Runs.class, Run.class, User.class, TrackPoint.class, IdempotencyRecord.class, SlowStatement.class);
+
+        // The userHttpClient bean in Application is a JDK proxy created at runtime,
+        // with the interfaces every Spring AOP proxy implements
+        hints.proxies().registerJdkProxy(AopProxyUtils.completeJdkProxyInterfaces(UserHttpClient.class));
+        hints.reflection().registerType(UserHttpClient.class, MemberCategory.INTROSPECT_PUBLIC_METHODS, MemberCategory.INVOKE_PUBLIC_METHODS);
+
+        // Read by RunJsonDataLoader on startup
+        hints.resources().registerPattern("data/runs.json");
+
+        // Arrow (RunExporter) gets hold of Unsafe and the address of direct buffers reflectively
+        hints.reflection()
+                .registerType(TypeReference.of("sun.misc.Unsafe"), MemberCategory.DECLARED_FIELDS)
+                .registerType(TypeReference.of("java.nio.DirectByteBuffer"), MemberCategory.INVOKE_DECLARED_CONSTRUCTORS)
+                .registerType(Buffer.class, builder -> builder.withField("address"));
+    }
+}
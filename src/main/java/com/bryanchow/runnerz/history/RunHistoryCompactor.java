@@ -0,0 +1,31 @@
+package com.bryanchow.runnerz.history;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+// Keeps the run history from growing without bound, see RunHistoryRepository.compact()
+@Component
+public class RunHistoryCompactor {
+
+    private static final Logger log = LoggerFactory.getLogger(RunHistoryCompactor.class);
+
+    private final RunHistoryRepository historyRepository;
+    private final RunHistoryProperties properties;
+
+    public RunHistoryCompactor(RunHistoryRepository historyRepository, RunHistoryProperties properties) {
+        this.historyRepository = historyRepository;
+        this.properties = properties;
+    }
+
+    // Compacts every night, by default at 03:30, after the partition maintenance
+    @Scheduled(cron = "${runnerz.history.cron:0 30 3 * * *}")
+    public void compact() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(properties.retention());
+        int dropped = historyRepository.compact(cutoff);
+        log.info("Compacted the run history before {}, {} changes dropped", cutoff, dropped);
+    }
+}
@@ -0,0 +1,44 @@
+package com.bryanchow.runnerz.history;
+
+import com.bryanchow.runnerz.run.Run;
+import com.bryanchow.runnerz.run.RunNotFoundException;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Reads past versions of a run from the run history
+@RestController
+@RequestMapping("/api/runs/{id}/history")
+public class RunHistoryController {
+
+    private final RunHistoryRepository historyRepository;
+
+    public RunHistoryController(RunHistoryRepository historyRepository) {
+        this.historyRepository = historyRepository;
+    }
+
+    /**
+     * @GetMapping annotation maps HTTP GET requests to the findAll method.
+     * It returns every kept version of the run, oldest first, including its deletion.
+     */
+    @GetMapping
+    List<RunRevision> findAll(@PathVariable Long id) {
+        List<RunRevision> revisions = historyRepository.findByRunId(id);
+        if (revisions.isEmpty()) {
+            throw new RunNotFoundException();
+        }
+        return revisions;
+    }
+
+    /**
+     * @GetMapping with params = "asOf" maps requests with an asOf parameter to the findAsOf method,
+     * e.g. /api/runs/1/history?asOf=2024-02-20T08:00:00 returns the run as it was at that time.
+     */
+    @GetMapping(params = "asOf")
+    Run findAsOf(@PathVariable Long id, @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime asOf) {
+        return historyRepository.findAsOf(id, asOf)
+                .orElseThrow(RunNotFoundException::new);
+    }
+}
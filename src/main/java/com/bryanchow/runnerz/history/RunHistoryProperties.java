@@ -0,0 +1,18 @@
+package com.bryanchow.runnerz.history;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the run history, bound from the runnerz.history.* properties.
+ *
+ * @param retention how long every change is kept; older changes are compacted to
+ *                  the state of each run at the start of the retention window
+ */
+@ConfigurationProperties(prefix = "runnerz.history")
+public record RunHistoryProperties(
+        @DefaultValue("365d") Duration retention
+) {
+}
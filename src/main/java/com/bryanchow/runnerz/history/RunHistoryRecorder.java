@@ -0,0 +1,33 @@
+package com.bryanchow.runnerz.history;
+
+import com.bryanchow.runnerz.run.Run;
+import org.springframework.data.relational.core.mapping.event.AbstractRelationalEventListener;
+import org.springframework.data.relational.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.relational.core.mapping.event.BeforeDeleteEvent;
+import org.springframework.stereotype.Component;
+
+/**
+ * Appends every run saved, patched or deleted through RunRepository to the run history,
+ * in the transaction of the write. JdbcClientRunRepository writes its history records
+ * in the same statement as the change instead (see RunHistoryRepository.APPEND_CHANGED).
+ */
+@Component
+public class RunHistoryRecorder extends AbstractRelationalEventListener<Run> {
+
+    private final RunHistoryRepository historyRepository;
+
+    public RunHistoryRecorder(RunHistoryRepository historyRepository) {
+        this.historyRepository = historyRepository;
+    }
+
+    @Override
+    protected void onAfterSave(AfterSaveEvent<Run> event) {
+        historyRepository.appendSaved(event.getEntity());
+    }
+
+    // Before the delete, while the last state of the run can still be read from the run table
+    @Override
+    protected void onBeforeDelete(BeforeDeleteEvent<Run> event) {
+        historyRepository.appendDeleted((Long) event.getId().getValue());
+    }
+}
@@ -0,0 +1,128 @@
+package com.bryanchow.runnerz.history;
+
+import com.bryanchow.runnerz.run.Location;
+import com.bryanchow.runnerz.run.Run;
+import com.bryanchow.runnerz.user.Geo;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The append-only log of changes to runs, one row per run and version in run_history.
+ *
+ * Rows are only ever inserted, and deleted by compact(). A deletion of a run is
+ * recorded as one more version of it, with deleted set.
+ */
+@Repository
+public class RunHistoryRepository {
+
+    /**
+     * Appends the rows returned by a data-modifying CTE named "changed" to the history,
+     * e.g. "WITH changed AS (UPDATE run SET ... RETURNING *) " + APPEND_CHANGED,
+     * so the change and its history record are written by one statement.
+     */
+    public static final String APPEND_CHANGED = """
+            INSERT INTO run_history (run_id, version, title, started_on, completed_on, kilometers, location, start_lat, start_lng, deleted)
+            SELECT id, version, title, started_on, completed_on, kilometers, location, start_lat, start_lng, FALSE FROM changed
+            """;
+
+    /**
+     * Like APPEND_CHANGED, for a CTE named "changed" that deleted runs.
+     */
+    public static final String APPEND_DELETED = """
+            INSERT INTO run_history (run_id, version, title, started_on, completed_on, kilometers, location, start_lat, start_lng, deleted)
+            SELECT id, version + 1, title, started_on, completed_on, kilometers, location, start_lat, start_lng, TRUE FROM changed
+            """;
+
+    // Read by position in REVISION, in this order
+    private static final String COLUMNS = "run_id, version, title, started_on, completed_on, kilometers, location, start_lat, start_lng, deleted, changed_at";
+
+    // Reads the columns by position, like RunRowMapper does for the run table
+    private static final RowMapper<RunRevision> REVISION = (rs, rowNum) -> {
+        double lat = rs.getDouble(8);
+        Geo start = rs.wasNull() ? null : new Geo(lat, rs.getDouble(9));
+        Run run = new Run(rs.getLong(1),
+                rs.getString(3),
+                rs.getObject(4, LocalDateTime.class),
+                rs.getObject(5, LocalDateTime.class),
+                rs.getInt(6),
+                Location.of(rs.getString(7)),
+                start,
+                rs.getInt(2));
+        return new RunRevision(run, rs.getBoolean(10), rs.getObject(11, LocalDateTime.class));
+    };
+
+    private final JdbcClient jdbcClient;
+
+    public RunHistoryRepository(JdbcClient jdbcClient) {
+        this.jdbcClient = jdbcClient;
+    }
+
+    // Records a run as saved, at the version it was saved with
+    public void appendSaved(Run run) {
+        jdbcClient.sql("""
+                        INSERT INTO run_history (run_id, version, title, started_on, completed_on, kilometers, location, start_lat, start_lng, deleted)
+                        VALUES (:id, :version, :title, :startedOn, :completedOn, :kilometers, :location, :startLat, :startLng, FALSE)
+                        """)
+                .param("id", run.id())
+                .param("version", run.version())
+                .param("title", run.title())
+                .param("startedOn", run.startedOn())
+                .param("completedOn", run.completedOn())
+                .param("kilometers", run.kilometers())
+                .param("location", run.location().toString())
+                .param("startLat", run.start() == null ? null : run.start().lat())
+                .param("startLng", run.start() == null ? null : run.start().lng())
+                .update();
+    }
+
+    // Records the deletion of a run, copying its last state from the run table, so it has to run before the delete
+    public void appendDeleted(Long id) {
+        jdbcClient.sql("WITH changed AS (SELECT * FROM run WHERE id = :id) " + APPEND_DELETED)
+                .param("id", id)
+                .update();
+    }
+
+    // All versions of a run that are still kept, oldest first
+    public List<RunRevision> findByRunId(Long id) {
+        return jdbcClient.sql("SELECT " + COLUMNS + " FROM run_history WHERE run_id = :id ORDER BY version")
+                .param("id", id)
+                .query(REVISION)
+                .list();
+    }
+
+    // The run as it was at the given time, empty if it did not exist (yet or anymore)
+    public Optional<Run> findAsOf(Long id, LocalDateTime asOf) {
+        return jdbcClient.sql("SELECT " + COLUMNS + " FROM run_history WHERE run_id = :id AND changed_at <= :asOf ORDER BY version DESC LIMIT 1")
+                .param("id", id)
+                .param("asOf", asOf)
+                .query(REVISION)
+                .optional()
+                .filter(revision -> !revision.deleted())
+                .map(RunRevision::run);
+    }
+
+    /**
+     * Drops the changes made before the cutoff, except for the last one of each run,
+     * which is the state of the run at the cutoff and still needed by findAsOf().
+     * Runs that were deleted before the cutoff disappear from the history entirely.
+     *
+     * @return the number of changes dropped
+     */
+    public int compact(LocalDateTime cutoff) {
+        return jdbcClient.sql("""
+                        DELETE FROM run_history h
+                        WHERE h.changed_at < :cutoff
+                          AND (h.deleted OR EXISTS (SELECT 1 FROM run_history newer
+                                                    WHERE newer.run_id = h.run_id
+                                                      AND newer.version > h.version
+                                                      AND newer.changed_at < :cutoff))
+                        """)
+                .param("cutoff", cutoff)
+                .update();
+    }
+}
@@ -0,0 +1,15 @@
+package com.bryanchow.runnerz.history;
+
+import com.bryanchow.runnerz.run.Run;
+
+import java.time.LocalDateTime;
+
+/**
+ * A run as it was after one of its changes.
+ *
+ * @param run       the run at that version, for deletions the run as it was when deleted
+ * @param deleted   whether this change deleted the run
+ * @param changedAt when the change was written
+ */
+public record RunRevision(Run run, boolean deleted, LocalDateTime changedAt) {
+}
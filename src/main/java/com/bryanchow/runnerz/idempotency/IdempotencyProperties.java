@@ -0,0 +1,22 @@
+package com.bryanchow.runnerz.idempotency;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the Idempotency-Key support, bound from the runnerz.idempotency.* properties.
+ *
+ * @param store       where the keys are kept: "memory" (per instance) or "jdbc" (the idempotency_key table,
+ *                    shared by all instances and kept across restarts)
+ * @param ttl         how long the result of a request is remembered for retries
+ * @param lockTimeout how long a key stays claimed by a request that never completed (e.g. a crashed instance)
+ */
+@ConfigurationProperties(prefix = "runnerz.idempotency")
+public record IdempotencyProperties(
+        @DefaultValue("memory") String store,
+        @DefaultValue("24h") Duration ttl,
+        @DefaultValue("30s") Duration lockTimeout
+) {
+}
@@ -0,0 +1,15 @@
+package com.bryanchow.runnerz.idempotency;
+
+/**
+ * What is remembered about the first request with an idempotency key.
+ *
+ * @param fingerprint the hash of the request body, to detect a key reused for a different request
+ * @param status      the HTTP status the request was answered with, null while it is still being processed
+ * @param location    the Location header of the answer, if any
+ */
+public record IdempotencyRecord(String fingerprint, Integer status, String location) {
+
+    public boolean completed() {
+        return status != null;
+    }
+}
@@ -0,0 +1,46 @@
+package com.bryanchow.runnerz.idempotency;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Optional;
+
+/**
+ * Remembers the requests made with an Idempotency-Key header, so that a client
+ * retrying a request gets the original result instead of performing it twice.
+ *
+ * A request first claims its key. Only one of several concurrent requests with the
+ * same key can claim it, the others get the record of the claiming request. Once the
+ * request is done, its result is stored with complete(), or the key is released if
+ * the request failed, so that it can be retried.
+ *
+ * complete() is called in the transaction of the request's writes, so the result is
+ * stored if and only if the writes are committed. If the application stops before the
+ * commit, the key stays claimed until runnerz.idempotency.lock-timeout, and a retry
+ * after that performs the request again, as nothing of the first attempt was kept.
+ */
+public interface IdempotencyStore {
+
+    /**
+     * Claims a key for a new request.
+     *
+     * @return empty if the key was claimed, otherwise the record of the earlier request with the key
+     */
+    Optional<IdempotencyRecord> claim(String key, String fingerprint);
+
+    // Stores the result of the request that claimed the key, as part of the current transaction
+    void complete(String key, int status, String location);
+
+    // Forgets a claimed key whose request failed
+    void release(String key);
+
+    // A compact hash (44 characters) of a request body
+    static String fingerprint(byte[] request) {
+        try {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(request));
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
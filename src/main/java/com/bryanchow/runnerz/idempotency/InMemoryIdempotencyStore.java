@@ -0,0 +1,84 @@
+package com.bryanchow.runnerz.idempotency;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the idempotency keys in memory, which is enough for a single instance.
+ * This is the default store (runnerz.idempotency.store=memory).
+ */
+@Component
+@ConditionalOnProperty(prefix = "runnerz.idempotency", name = "store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryIdempotencyStore implements IdempotencyStore {
+
+    private record Entry(String fingerprint, Integer status, String location, Instant expiresAt) {
+    }
+
+    private final IdempotencyProperties properties;
+    private final Clock clock;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    @Autowired
+    public InMemoryIdempotencyStore(IdempotencyProperties properties) {
+        this(properties, Clock.systemUTC());
+    }
+
+    InMemoryIdempotencyStore(IdempotencyProperties properties, Clock clock) {
+        this.properties = properties;
+        this.clock = clock;
+    }
+
+    @Override
+    public Optional<IdempotencyRecord> claim(String key, String fingerprint) {
+        Instant now = clock.instant();
+        Entry claimed = new Entry(fingerprint, null, null, now.plus(properties.lockTimeout()));
+        // compute() runs atomically per key, so only one of several concurrent requests gets the key
+        Entry current = entries.compute(key, (k, existing) ->
+                existing == null || existing.expiresAt().isBefore(now) ? claimed : existing);
+        return current == claimed
+                ? Optional.empty()
+                : Optional.of(new IdempotencyRecord(current.fingerprint(), current.status(), current.location()));
+    }
+
+    @Override
+    public void complete(String key, int status, String location) {
+        // Like the idempotency_key row of JdbcIdempotencyStore, the result only counts once the transaction has committed
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    store(key, status, location);
+                }
+            });
+        } else {
+            store(key, status, location);
+        }
+    }
+
+    @Override
+    public void release(String key) {
+        entries.computeIfPresent(key, (k, entry) -> entry.status() == null ? null : entry);
+    }
+
+    private void store(String key, int status, String location) {
+        entries.computeIfPresent(key, (k, entry) ->
+                new Entry(entry.fingerprint(), status, location, clock.instant().plus(properties.ttl())));
+    }
+
+    // Forget expired keys, so the map only holds the keys of recent requests
+    @Scheduled(fixedDelay = 60_000)
+    void evictExpired() {
+        Instant now = clock.instant();
+        entries.values().removeIf(entry -> entry.expiresAt().isBefore(now));
+    }
+}
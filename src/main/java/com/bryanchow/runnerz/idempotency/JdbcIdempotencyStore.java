@@ -0,0 +1,85 @@
+package com.bryanchow.runnerz.idempotency;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Keeps the idempotency keys in the idempotency_key table, so that retries are recognized
+ * by every instance of the application and across restarts (runnerz.idempotency.store=jdbc).
+ *
+ * A key is claimed by inserting its row. The primary key makes sure only one of several
+ * concurrent requests succeeds, and an expired row is taken over in the same statement.
+ * The claim commits on its own, so that concurrent requests see it right away, while
+ * complete() joins the transaction that inserts the run.
+ */
+@Repository
+@ConditionalOnProperty(prefix = "runnerz.idempotency", name = "store", havingValue = "jdbc")
+public class JdbcIdempotencyStore implements IdempotencyStore {
+
+    private final JdbcClient jdbcClient;
+    private final IdempotencyProperties properties;
+
+    public JdbcIdempotencyStore(JdbcClient jdbcClient, IdempotencyProperties properties) {
+        this.jdbcClient = jdbcClient;
+        this.properties = properties;
+    }
+
+    @Override
+    public Optional<IdempotencyRecord> claim(String key, String fingerprint) {
+        while (true) {
+            LocalDateTime now = LocalDateTime.now();
+            int claimed = jdbcClient.sql("""
+                            INSERT INTO idempotency_key (idempotency_key, fingerprint, status, expires_at)
+                            VALUES (:key, :fingerprint, NULL, :expiresAt)
+                            ON CONFLICT (idempotency_key) DO UPDATE
+                                SET fingerprint = EXCLUDED.fingerprint, status = NULL, location = NULL, expires_at = EXCLUDED.expires_at
+                                WHERE idempotency_key.expires_at < :now""")
+                    .param("key", key)
+                    .param("fingerprint", fingerprint)
+                    .param("expiresAt", now.plus(properties.lockTimeout()))
+                    .param("now", now)
+                    .update();
+            if (claimed == 1) {
+                return Optional.empty();
+            }
+            Optional<IdempotencyRecord> earlier = jdbcClient.sql("SELECT fingerprint, status, location FROM idempotency_key WHERE idempotency_key = :key")
+                    .param("key", key)
+                    .query(IdempotencyRecord.class)
+                    .optional();
+            // The row is gone if the earlier request failed in the meantime, then try to claim the key again
+            if (earlier.isPresent()) {
+                return earlier;
+            }
+        }
+    }
+
+    @Override
+    public void complete(String key, int status, String location) {
+        jdbcClient.sql("UPDATE idempotency_key SET status = :status, location = :location, expires_at = :expiresAt WHERE idempotency_key = :key")
+                .param("status", status)
+                .param("location", location)
+                .param("expiresAt", LocalDateTime.now().plus(properties.ttl()))
+                .param("key", key)
+                .update();
+    }
+
+    @Override
+    public void release(String key) {
+        jdbcClient.sql("DELETE FROM idempotency_key WHERE idempotency_key = :key AND status IS NULL")
+                .param("key", key)
+                .update();
+    }
+
+    // Delete expired keys every hour
+    @Scheduled(fixedDelay = 3_600_000)
+    void evictExpired() {
+        jdbcClient.sql("DELETE FROM idempotency_key WHERE expires_at < :now")
+                .param("now", LocalDateTime.now())
+                .update();
+    }
+}
@@ -0,0 +1,49 @@
+package com.bryanchow.runnerz.leaderboard;
+
+/**
+ * The leaderboards kept for every location.
+ *
+ * Pace boards only rank runs whose distance falls into the board's band
+ * (from minKilometers inclusive to maxKilometers exclusive), and the
+ * lowest pace in minutes per kilometer ranks first.
+ */
+public enum Board {
+    LONGEST_RUN(false, 0, 0),
+    MOST_WEEKLY_KILOMETERS(false, 0, 0),
+    FASTEST_PACE_UNDER_5K(true, 0, 5),
+    FASTEST_PACE_5K_TO_10K(true, 5, 10),
+    FASTEST_PACE_10K_TO_HALF_MARATHON(true, 10, 21),
+    FASTEST_PACE_HALF_MARATHON_AND_LONGER(true, 21, Integer.MAX_VALUE);
+
+    private final boolean lowerIsBetter;
+    private final int minKilometers;
+    private final int maxKilometers;
+
+    Board(boolean lowerIsBetter, int minKilometers, int maxKilometers) {
+        this.lowerIsBetter = lowerIsBetter;
+        this.minKilometers = minKilometers;
+        this.maxKilometers = maxKilometers;
+    }
+
+    public boolean lowerIsBetter() {
+        return lowerIsBetter;
+    }
+
+    int minKilometers() {
+        return minKilometers;
+    }
+
+    int maxKilometers() {
+        return maxKilometers;
+    }
+
+    // The pace board for a run of the given distance
+    static Board paceBoard(int kilometers) {
+        for (Board board : values()) {
+            if (board.lowerIsBetter && kilometers >= board.minKilometers && kilometers < board.maxKilometers) {
+                return board;
+            }
+        }
+        throw new IllegalArgumentException("No pace board for " + kilometers + " km");
+    }
+}
@@ -0,0 +1,100 @@
+package com.bryanchow.runnerz.leaderboard;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The first places of a board: at most capacity keys (runs or weeks), ordered by their score.
+ *
+ * Only the first places are kept, so the memory used does not grow with the number
+ * of runs. The price is that when a key drops out of the first places of a full
+ * board, the key that moves up into the last place is not known. put() reports that
+ * as INCOMPLETE, and the board has to be ranked again from the run table.
+ * Ties are ordered by key.
+ */
+class Leaderboard<K extends Comparable<? super K>> {
+
+    enum Change {
+        NONE, CHANGED, INCOMPLETE
+    }
+
+    record Score<K>(K key, double value) {
+    }
+
+    private final Comparator<Score<K>> order;
+    private final int capacity;
+    private final List<Score<K>> ranking;
+
+    /**
+     * @param lowerIsBetter whether the lowest score ranks first
+     * @param capacity      how many places are kept
+     * @param scores        the first places as stored, if a board is not full all its keys are on it
+     */
+    Leaderboard(boolean lowerIsBetter, int capacity, List<Score<K>> scores) {
+        Comparator<Score<K>> byValue = Comparator.comparingDouble(Score::value);
+        Comparator<Score<K>> byKey = Comparator.comparing(Score::key);
+        this.order = (lowerIsBetter ? byValue : byValue.reversed()).thenComparing(byKey);
+        this.capacity = capacity;
+        this.ranking = new ArrayList<>(scores);
+        this.ranking.sort(order);
+    }
+
+    /**
+     * Set the score of a key.
+     *
+     * @param key   the run or week
+     * @param value its new score, or null if it is no longer on the board
+     * @return whether the places changed, or INCOMPLETE if they have to be ranked again
+     * (the board is then left in an unspecified state)
+     */
+    Change put(K key, Double value) {
+        boolean full = ranking.size() >= capacity;
+        Score<K> last = ranking.isEmpty() ? null : ranking.getLast();
+        Score<K> previous = remove(key);
+        Score<K> score = value == null ? null : new Score<>(key, value);
+
+        if (Objects.equals(previous, score)) {
+            if (previous != null) {
+                insert(previous);
+            }
+            return Change.NONE;
+        }
+        if (previous != null && full && (score == null || order.compare(score, last) > 0)) {
+            // A key left a full board or fell behind its last place, and the keys
+            // that were behind the last place may now be ahead of it
+            return Change.INCOMPLETE;
+        }
+        if (score == null) {
+            return Change.CHANGED;
+        }
+        if (previous == null && full) {
+            if (order.compare(score, last) > 0) {
+                return Change.NONE;
+            }
+            ranking.removeLast();
+        }
+        insert(score);
+        return Change.CHANGED;
+    }
+
+    List<Score<K>> scores() {
+        return Collections.unmodifiableList(ranking);
+    }
+
+    private Score<K> remove(K key) {
+        for (int i = 0; i < ranking.size(); i++) {
+            if (ranking.get(i).key().equals(key)) {
+                return ranking.remove(i);
+            }
+        }
+        return null;
+    }
+
+    private void insert(Score<K> score) {
+        int index = Collections.binarySearch(ranking, score, order);
+        ranking.add(-index - 1, score);
+    }
+}
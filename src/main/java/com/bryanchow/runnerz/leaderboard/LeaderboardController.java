@@ -0,0 +1,37 @@
+package com.bryanchow.runnerz.leaderboard;
+
+import com.bryanchow.runnerz.run.Location;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/leaderboards")
+public class LeaderboardController {
+
+    // Upper bound for the number of places returned per request, all of them are kept in the summary table
+    private static final int MAX_LIMIT = RunLeaderboards.TOP_PLACES;
+
+    private final RunLeaderboards leaderboards;
+
+    public LeaderboardController(RunLeaderboards leaderboards) {
+        this.leaderboards = leaderboards;
+    }
+
+    /**
+     * @GetMapping("/{board}") annotation maps HTTP GET requests to the findTop method.
+     * It returns the first places of a board for a location,
+     * e.g. /api/leaderboards/LONGEST_RUN?location=OUTDOOR&limit=10
+     */
+    @GetMapping("/{board}")
+    List<LeaderboardEntry> findTop(@PathVariable Board board,
+                                   @RequestParam Location location,
+                                   @RequestParam(defaultValue = "10") int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_LIMIT);
+        }
+        return leaderboards.top(new RunLeaderboards.BoardKey(board, location), limit);
+    }
+}
@@ -0,0 +1,19 @@
+package com.bryanchow.runnerz.leaderboard;
+
+import java.time.LocalDate;
+
+/**
+ * One place on a leaderboard.
+ *
+ * @param rank  the place, starting at 1
+ * @param runId the ranked run, or null on the weekly board
+ * @param week  the Monday of the ranked week on the weekly board, otherwise null
+ * @param value kilometers, or minutes per kilometer on the pace boards
+ */
+public record LeaderboardEntry(
+        int rank,
+        Long runId,
+        LocalDate week,
+        double value
+) {
+}
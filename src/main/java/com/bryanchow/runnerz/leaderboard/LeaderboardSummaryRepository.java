@@ -0,0 +1,152 @@
+package com.bryanchow.runnerz.leaderboard;
+
+import com.bryanchow.runnerz.run.Location;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Stores the first places of every leaderboard in the run_leaderboard summary table,
+ * and ranks the boards from the run table when their first places are not enough.
+ */
+@Repository
+public class LeaderboardSummaryRepository {
+
+    // Minutes per kilometer, from whole seconds like Duration.toSeconds()
+    private static final String PACE = "CAST(FLOOR(EXTRACT(EPOCH FROM completed_on - started_on)) / 60 / kilometers AS DOUBLE PRECISION)";
+
+    private final JdbcClient jdbcClient;
+
+    public LeaderboardSummaryRepository(JdbcClient jdbcClient) {
+        this.jdbcClient = jdbcClient;
+    }
+
+    public List<LeaderboardEntry> find(RunLeaderboards.BoardKey key, int limit) {
+        return jdbcClient.sql("SELECT rank, run_id, week, value FROM run_leaderboard WHERE board = :board AND location = :location ORDER BY rank LIMIT :limit")
+                .param("board", key.board().name())
+                .param("location", key.location().name())
+                .param("limit", limit)
+                .query((rs, rowNum) -> new LeaderboardEntry(rs.getInt(1), rs.getObject(2, Long.class), rs.getObject(3, LocalDate.class), rs.getDouble(4)))
+                .list();
+    }
+
+    // Until the end of the transaction, so that instances of the application change a board one after another
+    public void lock(RunLeaderboards.BoardKey key) {
+        jdbcClient.sql("SELECT pg_advisory_xact_lock(hashtext(:board || '/' || :location))")
+                .param("board", key.board().name())
+                .param("location", key.location().name())
+                .query()
+                .singleRow();
+    }
+
+    /**
+     * Replace the stored places of a board with the current ones, in two statements
+     * whatever the number of places: places behind the last current one are deleted,
+     * and the current places are upserted from arrays. Places that did not change are
+     * left alone, so moving one run only rewrites the ranks between its old and new place.
+     */
+    public void replace(RunLeaderboards.BoardKey key, List<LeaderboardEntry> entries) {
+        jdbcClient.sql("DELETE FROM run_leaderboard WHERE board = :board AND location = :location AND rank > :places")
+                .param("board", key.board().name())
+                .param("location", key.location().name())
+                .param("places", entries.size())
+                .update();
+        if (entries.isEmpty()) {
+            return;
+        }
+        jdbcClient.sql("""
+                        INSERT INTO run_leaderboard (board, location, rank, run_id, week, value)
+                        SELECT ?, ?, entry.rank, entry.run_id, entry.week, entry.value
+                        FROM unnest(CAST(? AS INT[]), CAST(? AS BIGINT[]), CAST(? AS DATE[]), CAST(? AS DOUBLE PRECISION[])) AS entry(rank, run_id, week, value)
+                        ON CONFLICT (board, location, rank) DO UPDATE
+                        SET run_id = EXCLUDED.run_id, week = EXCLUDED.week, value = EXCLUDED.value
+                        WHERE (run_leaderboard.run_id, run_leaderboard.week, run_leaderboard.value)
+                              IS DISTINCT FROM (EXCLUDED.run_id, EXCLUDED.week, EXCLUDED.value)
+                        """)
+                .param(key.board().name())
+                .param(key.location().name())
+                // One array parameter per column instead of a statement per place
+                .param(entries.stream().map(LeaderboardEntry::rank).toArray(Integer[]::new))
+                .param(entries.stream().map(LeaderboardEntry::runId).toArray(Long[]::new))
+                .param(entries.stream().map(entry -> entry.week() == null ? null : entry.week().toString()).toArray(String[]::new))
+                .param(entries.stream().map(LeaderboardEntry::value).toArray(Double[]::new))
+                .update();
+    }
+
+    public Optional<RankedRun> findRun(Long id) {
+        return jdbcClient.sql("SELECT id, started_on, kilometers, location FROM run WHERE id = :id")
+                .param("id", id)
+                .query((rs, rowNum) -> new RankedRun(rs.getLong(1),
+                        rs.getObject(2, LocalDateTime.class),
+                        rs.getObject(3, Integer.class),
+                        rs.getString(4) == null ? null : Location.of(rs.getString(4))))
+                .optional();
+    }
+
+    /**
+     * The score of a run on a board of runs.
+     *
+     * @return kilometers or minutes per kilometer, empty if the run is not (or no longer) on the board
+     */
+    public Optional<Double> findScore(RunLeaderboards.BoardKey key, Long runId) {
+        return jdbcClient.sql("SELECT " + score(key.board()) + " FROM run WHERE id = :id AND " + filter(key.board()))
+                .param("id", runId)
+                .param("location", key.location().name())
+                .query(Double.class)
+                .optional();
+    }
+
+    // The kilometers of a week, only reading the partition of the week
+    public double findWeekKilometers(Location location, LocalDate week) {
+        return jdbcClient.sql("SELECT COALESCE(SUM(kilometers), 0) FROM run WHERE location = :location AND started_on >= :from AND started_on < :to")
+                .param("location", location.name())
+                .param("from", week.atStartOfDay())
+                .param("to", week.plusWeeks(1).atStartOfDay())
+                .query(Double.class)
+                .single();
+    }
+
+    /**
+     * Rank a board from the run table.
+     *
+     * @return the first limit places of the board
+     */
+    public List<LeaderboardEntry> rank(RunLeaderboards.BoardKey key, int limit) {
+        if (key.board() == Board.MOST_WEEKLY_KILOMETERS) {
+            return jdbcClient.sql("""
+                            SELECT CAST(date_trunc('week', started_on) AS DATE) AS week, CAST(SUM(kilometers) AS DOUBLE PRECISION) AS total
+                            FROM run
+                            WHERE location = :location
+                            GROUP BY week
+                            ORDER BY total DESC, week
+                            LIMIT :limit
+                            """)
+                    .param("location", key.location().name())
+                    .param("limit", limit)
+                    .query((rs, rowNum) -> new LeaderboardEntry(rowNum + 1, null, rs.getObject(1, LocalDate.class), rs.getDouble(2)))
+                    .list();
+        }
+        return jdbcClient.sql("SELECT id, " + score(key.board()) + " AS score FROM run WHERE " + filter(key.board())
+                        + " ORDER BY score " + (key.board().lowerIsBetter() ? "ASC" : "DESC") + ", id LIMIT :limit")
+                .param("location", key.location().name())
+                .param("limit", limit)
+                .query((rs, rowNum) -> new LeaderboardEntry(rowNum + 1, rs.getLong(1), null, rs.getDouble(2)))
+                .list();
+    }
+
+    private static String score(Board board) {
+        return board.lowerIsBetter() ? PACE : "CAST(kilometers AS DOUBLE PRECISION)";
+    }
+
+    // The runs on a board of runs, pace boards only rank runs within their band
+    private static String filter(Board board) {
+        if (!board.lowerIsBetter()) {
+            return "location = :location";
+        }
+        return "location = :location AND kilometers > 0 AND kilometers >= " + board.minKilometers() + " AND kilometers < " + board.maxKilometers();
+    }
+}
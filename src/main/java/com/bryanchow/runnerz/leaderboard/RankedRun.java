@@ -0,0 +1,47 @@
+package com.bryanchow.runnerz.leaderboard;
+
+import com.bryanchow.runnerz.run.Location;
+import com.bryanchow.runnerz.run.Run;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The values of a run that decide which boards it is on.
+ *
+ * @param id         the run
+ * @param startedOn  decides the week
+ * @param kilometers decides the pace board
+ * @param location   decides the location of all boards
+ */
+public record RankedRun(
+        Long id,
+        LocalDateTime startedOn,
+        Integer kilometers,
+        Location location
+) {
+
+    public static RankedRun of(Run run) {
+        return new RankedRun(run.id(), run.startedOn(), run.kilometers(), run.location());
+    }
+
+    // The boards the run is on, none if its location or distance is unknown
+    Set<RunLeaderboards.BoardKey> boardKeys() {
+        Set<RunLeaderboards.BoardKey> keys = new HashSet<>();
+        if (location != null && kilometers != null) {
+            keys.add(new RunLeaderboards.BoardKey(Board.LONGEST_RUN, location));
+            keys.add(new RunLeaderboards.BoardKey(Board.MOST_WEEKLY_KILOMETERS, location));
+            keys.add(new RunLeaderboards.BoardKey(Board.paceBoard(kilometers), location));
+        }
+        return keys;
+    }
+
+    // Runs are counted towards the ISO week (starting on Monday) in which they started
+    LocalDate week() {
+        return startedOn.toLocalDate().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+    }
+}
@@ -0,0 +1,105 @@
+package com.bryanchow.runnerz.leaderboard;
+
+import com.bryanchow.runnerz.run.Run;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.relational.core.mapping.event.AbstractRelationalEventListener;
+import org.springframework.data.relational.core.mapping.event.BeforeDeleteEvent;
+import org.springframework.data.relational.core.mapping.event.BeforeSaveEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the leaderboards up to date with every run saved, patched or deleted through RunRepository.
+ *
+ * Spring Data JDBC publishes an event before each save and delete, inside the
+ * transaction of the write. The stored state of the run is read at that point,
+ * so that the boards it leaves are known as well as the boards it joins. The
+ * boards themselves are updated just before the transaction commits, on its
+ * connection, so a write that is rolled back never shows up on them. Updating them
+ * after the commit would need a second connection while the first one is still
+ * held, and enough concurrent writes would then take every connection of the pool
+ * and wait for each other.
+ */
+@Component
+public class RunLeaderboardUpdater extends AbstractRelationalEventListener<Run> {
+
+    private static final Logger log = LoggerFactory.getLogger(RunLeaderboardUpdater.class);
+
+    private final RunLeaderboards leaderboards;
+    private final LeaderboardSummaryRepository summaryRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    public RunLeaderboardUpdater(RunLeaderboards leaderboards, LeaderboardSummaryRepository summaryRepository, PlatformTransactionManager transactionManager) {
+        this.leaderboards = leaderboards;
+        this.summaryRepository = summaryRepository;
+        // A failed update only rolls back to a savepoint, the run is written either way
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+    }
+
+    @Override
+    protected void onBeforeSave(BeforeSaveEvent<Run> event) {
+        Run run = event.getEntity();
+        List<RankedRun> changed = changedRuns();
+        if (changed != null) {
+            summaryRepository.findRun(run.id()).ifPresent(changed::add);
+            changed.add(RankedRun.of(run));
+        }
+    }
+
+    @Override
+    protected void onBeforeDelete(BeforeDeleteEvent<Run> event) {
+        List<RankedRun> changed = changedRuns();
+        if (changed != null) {
+            summaryRepository.findRun((Long) event.getId().getValue()).ifPresent(changed::add);
+        }
+    }
+
+    // The runs changed in the current transaction, updated on the boards when it commits.
+    // Null outside a transaction, which RunRepository always opens for its writes
+    // (the boards then catch up with runnerz.leaderboard.rebuild-cron).
+    @SuppressWarnings("unchecked")
+    private List<RankedRun> changedRuns() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            log.warn("Run written outside a transaction, the leaderboards are not updated");
+            return null;
+        }
+        List<RankedRun> changed = (List<RankedRun>) TransactionSynchronizationManager.getResource(this);
+        if (changed == null) {
+            List<RankedRun> runs = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(this, runs);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    update(runs);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResource(RunLeaderboardUpdater.this);
+                }
+            });
+            changed = runs;
+        }
+        return changed;
+    }
+
+    private void update(List<RankedRun> runs) {
+        try {
+            var changed = transactionTemplate.execute(status -> leaderboards.update(runs));
+            log.debug("Leaderboards updated for {} runs, {} boards changed", runs.size(), changed.size());
+        } catch (DataAccessException e) {
+            // The run is committed either way, the boards catch up with the next rebuild
+            log.warn("Failed to update the leaderboards", e);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.bryanchow.runnerz.leaderboard;
+
+import com.bryanchow.runnerz.run.Location;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * All leaderboards, kept in the run_leaderboard summary table.
+ *
+ * Only the first TOP_PLACES places of each board are stored. When runs change,
+ * their places are updated from what is in the run table at that moment: the
+ * score of a run, or the kilometers of a week. A board is only ranked again from
+ * the run table as a whole when a run or week drops out of its first places.
+ * Every board is changed under a database lock, so several instances of the
+ * application never overwrite each other's places, and all of them serve the
+ * boards from the same table.
+ */
+@Component
+public class RunLeaderboards {
+
+    /**
+     * A leaderboard is identified by its board and location.
+     */
+    public record BoardKey(Board board, Location location) {
+    }
+
+    // How many places of each board are kept, and the most that can be requested
+    public static final int TOP_PLACES = 100;
+
+    // Boards are always locked in the same order, so that two updates never wait for each other
+    private static final Comparator<BoardKey> LOCK_ORDER = Comparator.comparing(BoardKey::board).thenComparing(BoardKey::location);
+
+    private final LeaderboardSummaryRepository summaryRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    public RunLeaderboards(LeaderboardSummaryRepository summaryRepository, PlatformTransactionManager transactionManager) {
+        this.summaryRepository = summaryRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public List<LeaderboardEntry> top(BoardKey key, int limit) {
+        return summaryRepository.find(key, limit);
+    }
+
+    /**
+     * Update the boards of changed runs from the run table, as the current transaction sees it.
+     * Joins the current transaction, and holds the locks of the boards until it ends.
+     *
+     * @param runs the changed runs, as they were before and after the change
+     * @return the boards whose places changed
+     */
+    public Set<BoardKey> update(Collection<RankedRun> runs) {
+        Map<BoardKey, Set<Long>> runIds = new TreeMap<>(LOCK_ORDER);
+        Map<BoardKey, Set<LocalDate>> weeks = new TreeMap<>(LOCK_ORDER);
+        for (RankedRun run : runs) {
+            for (BoardKey key : run.boardKeys()) {
+                if (key.board() == Board.MOST_WEEKLY_KILOMETERS) {
+                    weeks.computeIfAbsent(key, k -> new HashSet<>()).add(run.week());
+                } else {
+                    runIds.computeIfAbsent(key, k -> new HashSet<>()).add(run.id());
+                }
+            }
+        }
+
+        Set<BoardKey> changed = new HashSet<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            Set<BoardKey> keys = new TreeSet<>(LOCK_ORDER);
+            keys.addAll(runIds.keySet());
+            keys.addAll(weeks.keySet());
+            for (BoardKey key : keys) {
+                boolean boardChanged = key.board() == Board.MOST_WEEKLY_KILOMETERS
+                        ? update(key, weeks.get(key), LeaderboardEntry::week,
+                                week -> Optional.of(summaryRepository.findWeekKilometers(key.location(), week)).filter(kilometers -> kilometers > 0),
+                                (rank, score) -> new LeaderboardEntry(rank, null, score.key(), score.value()))
+                        : update(key, runIds.get(key), LeaderboardEntry::runId,
+                                runId -> summaryRepository.findScore(key, runId),
+                                (rank, score) -> new LeaderboardEntry(rank, score.key(), null, score.value()));
+                if (boardChanged) {
+                    changed.add(key);
+                }
+            }
+        });
+        return changed;
+    }
+
+    /**
+     * Rank every board again from the run table.
+     * Catches up with changes whose boards could not be updated, e.g. because
+     * the application stopped between the commit of a run and its boards.
+     */
+    @Scheduled(cron = "${runnerz.leaderboard.rebuild-cron:-}")
+    public void rebuild() {
+        for (Board board : Board.values()) {
+            for (Location location : Location.values()) {
+                BoardKey key = new BoardKey(board, location);
+                transactionTemplate.executeWithoutResult(status -> {
+                    summaryRepository.lock(key);
+                    summaryRepository.replace(key, summaryRepository.rank(key, TOP_PLACES));
+                });
+            }
+        }
+    }
+
+    private <K extends Comparable<? super K>> boolean update(BoardKey key,
+                                                            Set<K> changedKeys,
+                                                            Function<LeaderboardEntry, K> keyOf,
+                                                            Function<K, Optional<Double>> scoreOf,
+                                                            EntryFactory<K> entryOf) {
+        summaryRepository.lock(key);
+        List<Leaderboard.Score<K>> stored = summaryRepository.find(key, TOP_PLACES).stream()
+                .map(entry -> new Leaderboard.Score<>(keyOf.apply(entry), entry.value()))
+                .toList();
+        Leaderboard<K> leaderboard = new Leaderboard<>(key.board().lowerIsBetter(), TOP_PLACES, stored);
+
+        boolean changed = false;
+        for (K changedKey : changedKeys) {
+            Leaderboard.Change change = leaderboard.put(changedKey, scoreOf.apply(changedKey).orElse(null));
+            if (change == Leaderboard.Change.INCOMPLETE) {
+                summaryRepository.replace(key, summaryRepository.rank(key, TOP_PLACES));
+                return true;
+            }
+            changed |= change == Leaderboard.Change.CHANGED;
+        }
+        if (changed) {
+            List<Leaderboard.Score<K>> scores = leaderboard.scores();
+            summaryRepository.replace(key, IntStream.range(0, scores.size())
+                    .mapToObj(i -> entryOf.create(i + 1, scores.get(i)))
+                    .toList());
+        }
+        return changed;
+    }
+
+    @FunctionalInterface
+    private interface EntryFactory<K> {
+        LeaderboardEntry create(int rank, Leaderboard.Score<K> score);
+    }
+}
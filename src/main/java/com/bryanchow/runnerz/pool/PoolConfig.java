@@ -0,0 +1,38 @@
+package com.bryanchow.runnerz.pool;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Adds a second connection pool for the Arrow exports next to the main pool of Spring Boot.
+ *
+ * An export holds its connection for as long as it streams the run table, so a few
+ * concurrent exports could otherwise take all connections and leave the short lookups
+ * of the API waiting. The export pool connects to the same database with the same
+ * credentials (spring.datasource.*), but has only runnerz.pool.export-size connections.
+ *
+ * The pool is not a default candidate, so it is only injected where @Qualifier("export")
+ * asks for it, and Spring Boot still auto-configures the main pool.
+ */
+@Configuration
+public class PoolConfig {
+
+    @Bean(defaultCandidate = false)
+    @Qualifier("export")
+    HikariDataSource exportDataSource(DataSourceProperties dataSourceProperties, PoolProperties properties, MeterRegistry meterRegistry) {
+        HikariDataSource dataSource = dataSourceProperties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        dataSource.setPoolName("runnerz-export");
+        dataSource.setMaximumPoolSize(properties.exportSize());
+        dataSource.setMinimumIdle(0);
+        // Same hikaricp.* metrics as the main pool, tagged pool=runnerz-export
+        dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+        return dataSource;
+    }
+}
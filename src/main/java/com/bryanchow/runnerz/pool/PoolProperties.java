@@ -0,0 +1,29 @@
+package com.bryanchow.runnerz.pool;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the database connection pools, bound from the runnerz.pool.* properties.
+ * The main pool itself is configured with spring.datasource.hikari.*.
+ *
+ * @param minSize    the smallest size PoolSizeController shrinks the main pool to
+ * @param maxSize    the largest size PoolSizeController grows the main pool to
+ * @param targetWait the mean time requests may wait for a connection before the main pool grows
+ * @param maxLatency the mean time a connection may be in use before the main pool stops growing,
+ *                   as more connections only add contention to a database that is already slow
+ * @param interval   how often the size of the main pool is reconsidered
+ * @param exportSize the size of the separate pool of the Arrow exports
+ */
+@ConfigurationProperties(prefix = "runnerz.pool")
+public record PoolProperties(
+        @DefaultValue("5") int minSize,
+        @DefaultValue("30") int maxSize,
+        @DefaultValue("10ms") Duration targetWait,
+        @DefaultValue("250ms") Duration maxLatency,
+        @DefaultValue("15s") Duration interval,
+        @DefaultValue("2") int exportSize
+) {
+}
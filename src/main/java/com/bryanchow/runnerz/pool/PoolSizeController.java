@@ -0,0 +1,88 @@
+package com.bryanchow.runnerz.pool;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resizes the main connection pool while the application runs (see PoolSizePolicy).
+ *
+ * Every runnerz.pool.interval it reads how long requests waited for a connection
+ * (hikaricp.connections.acquire) and how long connections were in use
+ * (hikaricp.connections.usage) since the last run, and sets the maximum size of
+ * the Hikari pool accordingly. The current size is the hikaricp.connections.max metric.
+ */
+@Component
+public class PoolSizeController {
+
+    private static final Logger log = LoggerFactory.getLogger(PoolSizeController.class);
+
+    private final HikariDataSource dataSource;
+    private final MeterRegistry meterRegistry;
+    private final PoolSizePolicy policy;
+
+    // Totals of the acquire and usage timers at the last run, the timers are cumulative
+    private long lastAcquireCount;
+    private double lastAcquireNanos;
+    private long lastUsageCount;
+    private double lastUsageNanos;
+
+    public PoolSizeController(DataSource dataSource, MeterRegistry meterRegistry, PoolProperties properties) {
+        // Only a Hikari pool can be resized, e.g. not the embedded database of some tests
+        this.dataSource = dataSource instanceof HikariDataSource hikari ? hikari : null;
+        this.meterRegistry = meterRegistry;
+        this.policy = new PoolSizePolicy(properties);
+    }
+
+    @Scheduled(fixedDelayString = "${runnerz.pool.interval:15s}")
+    public void resize() {
+        if (dataSource == null || dataSource.getHikariPoolMXBean() == null) {
+            return;
+        }
+        Timer acquire = timer("hikaricp.connections.acquire");
+        Timer usage = timer("hikaricp.connections.usage");
+        if (acquire == null || usage == null) {
+            return;
+        }
+
+        var pool = dataSource.getHikariPoolMXBean();
+        var sample = new PoolSizePolicy.Sample(
+                mean(acquire.count() - lastAcquireCount, acquire.totalTime(TimeUnit.NANOSECONDS) - lastAcquireNanos),
+                mean(usage.count() - lastUsageCount, usage.totalTime(TimeUnit.NANOSECONDS) - lastUsageNanos),
+                pool.getActiveConnections(),
+                pool.getThreadsAwaitingConnection());
+        lastAcquireCount = acquire.count();
+        lastAcquireNanos = acquire.totalTime(TimeUnit.NANOSECONDS);
+        lastUsageCount = usage.count();
+        lastUsageNanos = usage.totalTime(TimeUnit.NANOSECONDS);
+
+        int current = dataSource.getHikariConfigMXBean().getMaximumPoolSize();
+        int next = policy.nextSize(current, sample);
+        if (next != current) {
+            // Hikari requires minimumIdle <= maximumPoolSize
+            if (dataSource.getHikariConfigMXBean().getMinimumIdle() > next) {
+                dataSource.getHikariConfigMXBean().setMinimumIdle(next);
+            }
+            dataSource.getHikariConfigMXBean().setMaximumPoolSize(next);
+            log.info("Resized connection pool {} from {} to {} (mean wait {} ms, mean usage {} ms, {} active, {} waiting)",
+                    dataSource.getPoolName(), current, next,
+                    sample.meanWait().toMillis(), sample.meanUsage().toMillis(), sample.active(), sample.waiting());
+        }
+    }
+
+    private Timer timer(String name) {
+        return meterRegistry.find(name).tag("pool", dataSource.getPoolName()).timer();
+    }
+
+    private static Duration mean(long count, double totalNanos) {
+        return count == 0 ? Duration.ZERO : Duration.ofNanos((long) (totalNanos / count));
+    }
+}
@@ -0,0 +1,55 @@
+package com.bryanchow.runnerz.pool;
+
+import java.time.Duration;
+
+/**
+ * Decides the next size of a connection pool from what it observed since the last decision.
+ *
+ * - The database is slow (connections are in use for longer than maxLatency): shrink by one.
+ *   Waits are then caused by the database, and more connections would only add to its load.
+ * - Requests waited for a connection (longer than targetWait on average, or are waiting now): grow.
+ * - Nobody waited and connections were left idle: shrink by one, slowly giving them back.
+ * - Otherwise the size is right.
+ *
+ * The size always stays between minSize and maxSize.
+ */
+class PoolSizePolicy {
+
+    // Connections added at once, growing is more urgent than shrinking
+    static final int GROW_STEP = 2;
+
+    private final int minSize;
+    private final int maxSize;
+    private final Duration targetWait;
+    private final Duration maxLatency;
+
+    PoolSizePolicy(PoolProperties properties) {
+        this.minSize = properties.minSize();
+        this.maxSize = properties.maxSize();
+        this.targetWait = properties.targetWait();
+        this.maxLatency = properties.maxLatency();
+    }
+
+    /**
+     * What the pool looked like during the last interval.
+     *
+     * @param meanWait  the mean time to acquire a connection
+     * @param meanUsage the mean time a connection was in use, i.e. the latency of the database work
+     * @param active    the connections in use when the sample was taken
+     * @param waiting   the threads waiting for a connection when the sample was taken
+     */
+    record Sample(Duration meanWait, Duration meanUsage, int active, int waiting) {
+    }
+
+    int nextSize(int current, Sample sample) {
+        int next = current;
+        if (sample.meanUsage().compareTo(maxLatency) > 0) {
+            next = current - 1;
+        } else if (sample.meanWait().compareTo(targetWait) > 0 || sample.waiting() > 0) {
+            next = current + GROW_STEP;
+        } else if (sample.meanWait().compareTo(targetWait.dividedBy(10)) < 0 && sample.active() < current - GROW_STEP) {
+            next = current - 1;
+        }
+        return Math.clamp(next, minSize, maxSize);
+    }
+}
@@ -0,0 +1,31 @@
+package com.bryanchow.runnerz.ratelimit;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+// Registers the rate limiting interceptor for all API endpoints
+@Configuration
+public class RateLimitConfig implements WebMvcConfigurer {
+
+    private final RateLimitInterceptor rateLimitInterceptor;
+
+    public RateLimitConfig(RateLimitInterceptor rateLimitInterceptor) {
+        this.rateLimitInterceptor = rateLimitInterceptor;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(rateLimitInterceptor).addPathPatterns("/api/**");
+    }
+
+    // Fails the startup if an endpoint costs more tokens than a bucket holds, as it could never be called
+    @EventListener
+    void checkCosts(ContextRefreshedEvent event) {
+        event.getApplicationContext().getBeansOfType(RequestMappingHandlerMapping.class).values()
+                .forEach(mapping -> rateLimitInterceptor.checkCosts(mapping.getHandlerMethods().values()));
+    }
+}
@@ -0,0 +1,27 @@
+package com.bryanchow.runnerz.ratelimit;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * How many tokens a request to the annotated handler method takes from the
+ * client's bucket. Handler methods without this annotation cost one token.
+ * Expensive endpoints, like full table reads, should cost more.
+ *
+ * Requests also count against the concurrency limit of RateLimitInterceptor, which
+ * follows the size of the main connection pool. Handlers that do not hold a connection
+ * of that pool while they run, like streaming uploads and downloads that use a connection
+ * per chunk, or the export with its own pool, set concurrencyLimited to false. Otherwise a
+ * few slow clients would take up permits without using any connections.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RateLimitCost {
+
+    int value();
+
+    // Whether a request takes one of the permits of the concurrency limit for as long as it runs
+    boolean concurrencyLimited() default true;
+}
@@ -0,0 +1,164 @@
+package com.bryanchow.runnerz.ratelimit;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.sql.DataSource;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+/**
+ * Admission control for the API.
+ *
+ * Every client (by remote address) has a token bucket, and each request takes
+ * as many tokens as the @RateLimitCost of its handler method. A client with an
+ * empty bucket gets 429 Too Many Requests. In addition, only a limited number of
+ * requests are processed at the same time, so that a burst of expensive requests
+ * is answered with 503 Service Unavailable instead of piling up on the database
+ * connection pool. Such requests are shed before any tokens are taken. Handlers that
+ * hold no connection of the main pool for the duration of a request are exempt,
+ * see RateLimitCost#concurrencyLimited.
+ * The limit is the current maximum size of the main connection pool plus
+ * runnerz.rate-limit.queued-requests, so it follows PoolSizeController:
+ * the queued requests wait for a connection, which lets the pool grow, and
+ * once the pool is at runnerz.pool.max-size the requests beyond are shed.
+ * Rejected requests are counted in the runnerz.requests.rejected metric.
+ */
+@Component
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(RateLimitInterceptor.class);
+
+    // Request attribute marking requests holding a concurrency permit
+    private static final String PERMIT = RateLimitInterceptor.class.getName() + ".permit";
+
+    private final RateLimitProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final IntSupplier poolSize;
+    // Requests holding a concurrency permit
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    @Autowired
+    public RateLimitInterceptor(RateLimitProperties properties, ObjectProvider<MeterRegistry> meterRegistry, ObjectProvider<DataSource> dataSource) {
+        // Sliced tests (e.g. @WebMvcTest) have no meter registry, rejections are counted locally there
+        this(properties, meterRegistry.getIfAvailable(SimpleMeterRegistry::new), poolSize(dataSource.getIfAvailable()));
+    }
+
+    RateLimitInterceptor(RateLimitProperties properties, MeterRegistry meterRegistry, IntSupplier poolSize) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.poolSize = poolSize;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!(handler instanceof HandlerMethod handlerMethod)) {
+            return true;
+        }
+        // The permit first, so that requests shed with 503 do not cost the client any tokens
+        boolean permit = concurrencyLimited(handlerMethod);
+        if (permit && !tryAcquirePermit()) {
+            return reject(response, HttpStatus.SERVICE_UNAVAILABLE, 1, handlerMethod);
+        }
+        long now = System.nanoTime();
+        long retryAfter = buckets
+                .computeIfAbsent(request.getRemoteAddr(), client -> new TokenBucket(properties.capacity(), properties.refillPerSecond(), now))
+                .tryConsume(cost(handlerMethod), now);
+        if (retryAfter > 0) {
+            if (permit) {
+                inFlight.decrementAndGet();
+            }
+            return reject(response, HttpStatus.TOO_MANY_REQUESTS, retryAfter, handlerMethod);
+        }
+        if (permit) {
+            request.setAttribute(PERMIT, Boolean.TRUE);
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (request.getAttribute(PERMIT) != null) {
+            request.removeAttribute(PERMIT);
+            inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Check that every handler method can be called with a full bucket.
+     *
+     * @throws IllegalStateException if a @RateLimitCost is above the capacity of the buckets
+     */
+    void checkCosts(Collection<HandlerMethod> handlerMethods) {
+        for (HandlerMethod handlerMethod : handlerMethods) {
+            if (cost(handlerMethod) > properties.capacity()) {
+                throw new IllegalStateException(handlerMethod + " costs " + cost(handlerMethod)
+                        + " tokens, more than runnerz.rate-limit.capacity (" + properties.capacity() + ")");
+            }
+        }
+    }
+
+    // Forget clients whose buckets have filled up again, so the map only holds recently active clients
+    @Scheduled(fixedDelay = 60_000)
+    void evictIdleClients() {
+        long now = System.nanoTime();
+        buckets.values().removeIf(bucket -> bucket.isFull(now));
+    }
+
+    // The limit is read for every request, when the pool shrinks the requests above it finish first
+    private boolean tryAcquirePermit() {
+        int limit = poolSize.getAsInt() + properties.queuedRequests();
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    // The maximum size of the main pool as set by PoolSizeController. Without a Hikari pool
+    // (e.g. sliced tests) nothing is known about the connections, and only the queued requests are admitted.
+    private static IntSupplier poolSize(DataSource dataSource) {
+        return dataSource instanceof HikariDataSource hikari ? () -> hikari.getHikariConfigMXBean().getMaximumPoolSize() : () -> 0;
+    }
+
+    private static int cost(HandlerMethod handlerMethod) {
+        RateLimitCost cost = handlerMethod.getMethodAnnotation(RateLimitCost.class);
+        return cost == null ? 1 : cost.value();
+    }
+
+    private static boolean concurrencyLimited(HandlerMethod handlerMethod) {
+        RateLimitCost cost = handlerMethod.getMethodAnnotation(RateLimitCost.class);
+        return cost == null || cost.concurrencyLimited();
+    }
+
+    private boolean reject(HttpServletResponse response, HttpStatus status, long retryAfterSeconds, HandlerMethod handler) {
+        meterRegistry.counter("runnerz.requests.rejected",
+                "status", String.valueOf(status.value()),
+                "handler", handler.getMethod().getName()).increment();
+        log.debug("Rejected request to {} with {}", handler.getMethod().getName(), status);
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        return false;
+    }
+}
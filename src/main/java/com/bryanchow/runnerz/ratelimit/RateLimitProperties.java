@@ -0,0 +1,22 @@
+package com.bryanchow.runnerz.ratelimit;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Configuration of the API rate limits, bound from the runnerz.rate-limit.* properties.
+ *
+ * @param capacity              the number of tokens a client can spend in a burst
+ * @param refillPerSecond       the number of tokens added back to every client's bucket per second
+ * @param queuedRequests  how many API requests are processed at the same time beyond the current maximum
+ *                        size of the main connection pool. These requests wait for a connection, and their
+ *                        waits are what makes PoolSizeController grow the pool, so the limit of concurrent
+ *                        requests rises and falls with it. Requests beyond the limit get 503.
+ */
+@ConfigurationProperties(prefix = "runnerz.rate-limit")
+public record RateLimitProperties(
+        @DefaultValue("100") int capacity,
+        @DefaultValue("20") int refillPerSecond,
+        @DefaultValue("4") int queuedRequests
+) {
+}
@@ -0,0 +1,49 @@
+package com.bryanchow.runnerz.ratelimit;
+
+/**
+ * A token bucket that is refilled lazily, based on the time passed since the last request.
+ */
+class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final long capacity;
+    private final long refillPerSecond;
+
+    private double tokens;
+    private long lastRefill;
+
+    TokenBucket(long capacity, long refillPerSecond, long now) {
+        this.capacity = capacity;
+        this.refillPerSecond = refillPerSecond;
+        this.tokens = capacity;
+        this.lastRefill = now;
+    }
+
+    /**
+     * Take tokens from the bucket if there are enough.
+     *
+     * @param cost the number of tokens to take
+     * @param now  the current time in nanoseconds
+     * @return 0 if the tokens were taken, otherwise the number of seconds until there are enough
+     */
+    synchronized long tryConsume(int cost, long now) {
+        refill(now);
+        if (tokens >= cost) {
+            tokens -= cost;
+            return 0;
+        }
+        return (long) Math.ceil((cost - tokens) / refillPerSecond);
+    }
+
+    // A bucket that is full again behaves like a new one and can be dropped
+    synchronized boolean isFull(long now) {
+        refill(now);
+        return tokens >= capacity;
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (double) (now - lastRefill) * refillPerSecond / NANOS_PER_SECOND);
+        lastRefill = now;
+    }
+}
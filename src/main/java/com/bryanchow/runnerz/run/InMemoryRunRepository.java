@@ -1,8 +1,10 @@
 package com.bryanchow.runnerz.run;
 
+import com.bryanchow.runnerz.user.Geo;
 import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -15,44 +17,71 @@ public class InMemoryRunRepository {
 
     private static final Logger log = LoggerFactory.getLogger(InMemoryRunRepository.class);
     private final List<Run> runs = new ArrayList<>();
-
-    public List<Run> findAll() {
-        return runs;
+    // Kept in sync with the list on every write, so title searches don't scan all runs
+    private final RunTitleIndex titleIndex = new RunTitleIndex();
+    private final RunGeoIndex geoIndex = new RunGeoIndex();
+    // Runs created without an id are numbered after the highest id so far
+    private long lastId;
+
+    // All access to the list is synchronized so that concurrent writers
+    // see a consistent version when checking for conflicting updates
+    public synchronized List<Run> findAll() {
+        return List.copyOf(runs);
     }
 
-    public Optional<Run> findById(Integer id) {
+    public synchronized Optional<Run> findById(Long id) {
         return Optional.ofNullable(runs.stream()
                 .filter(run -> Objects.equals(run.id(), id))
                 .findFirst()
                 .orElseThrow(RunNotFoundException::new));
     }
 
-    public void create(Run run) {
-        Run newRun = new Run(run.id(),
+    public synchronized void create(Run run) {
+        Run newRun = new Run(run.id() == null ? ++lastId : run.id(),
                 run.title(),
                 run.startedOn(),
                 run.completedOn(),
                 run.kilometers(),
                 run.location(),
-                run.version());
+                run.start(),
+                run.version() == null ? 0 : run.version());
+        lastId = Math.max(lastId, newRun.id());
         runs.add(newRun);
+        titleIndex.add(newRun);
+        geoIndex.add(newRun);
     }
 
-    public void update(Run newRun, Integer id) {
+    public synchronized void update(Run newRun, Long id) {
         Optional<Run> existingRun = findById(id);
         if (existingRun.isPresent()) {
             var r = existingRun.get();
+            // Reject the update if the caller read an older version of the run
+            if (newRun.version() != null && !newRun.version().equals(r.version())) {
+                throw new OptimisticLockingFailureException("Run " + id + " is no longer at version " + newRun.version());
+            }
             log.info("Updating Existing Run: " + existingRun.get());
-            runs.set(runs.indexOf(r), newRun);
+            Run updatedRun = new Run(id,
+                    newRun.title(),
+                    newRun.startedOn(),
+                    newRun.completedOn(),
+                    newRun.kilometers(),
+                    newRun.location(),
+                    newRun.start(),
+                    r.version() == null ? 1 : r.version() + 1);
+            runs.set(runs.indexOf(r), updatedRun);
+            titleIndex.add(updatedRun);
+            geoIndex.add(updatedRun);
         }
     }
 
-    public void delete(Integer id) {
+    public synchronized void delete(Long id) {
         log.info("Deleting Run: " + id);
         runs.removeIf(run -> run.id().equals(id));
+        titleIndex.remove(id);
+        geoIndex.remove(id);
     }
 
-    public int count() {
+    public synchronized int count() {
         return runs.size();
     }
 
@@ -60,27 +89,39 @@ public class InMemoryRunRepository {
         runs.forEach(this::create);
     }
 
-    public List<Run> findAllByLocation(String location) {
+    public synchronized List<Run> findAllByLocation(String location) {
         return runs.stream()
                 .filter(run -> Objects.equals(run.location(), location))
                 .toList();
     }
 
+    public synchronized List<Run> search(String query, int limit, int offset) {
+        return titleIndex.search(query, limit, offset);
+    }
+
+    public synchronized List<Run> findNear(Geo center, double radiusKm, int limit) {
+        return geoIndex.near(center, radiusKm, limit);
+    }
+
+    public synchronized List<Run> findWithin(double south, double west, double north, double east, int limit) {
+        return geoIndex.within(south, west, north, east, limit);
+    }
+
     @PostConstruct
     private void init() {
-        runs.add(new Run(1,
+        create(new Run(null,
                 "Monday Morning Run",
                 LocalDateTime.now(),
                 LocalDateTime.now().plusMinutes(30),
                 3,
-                Location.INDOOR, null));
+                Location.INDOOR, null, null));
 
-        runs.add(new Run(2,
+        create(new Run(null,
                 "Wednesday Evening Run",
                 LocalDateTime.now(),
                 LocalDateTime.now().plusMinutes(60),
                 6,
-                Location.INDOOR, null));
+                Location.INDOOR, null, null));
     }
 
 }
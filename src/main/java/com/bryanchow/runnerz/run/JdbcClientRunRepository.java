@@ -2,10 +2,15 @@ package com.bryanchow.runnerz.run;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.jdbc.core.simple.JdbcClient;
+import com.bryanchow.runnerz.history.RunHistoryRepository;
+import com.bryanchow.runnerz.statement.StatementRecorder;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Repository;
 import org.springframework.util.Assert;
 
+import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,54 +21,104 @@ public class JdbcClientRunRepository {
 
     private static final Logger log = LoggerFactory.getLogger(JdbcClientRunRepository.class);
 
-    // The JdbcClient object is a simple JDBC client that
-    // provides a fluent API for interacting with a database.
-    // It offers methods for setting SQL parameters, executing the SQL
-    // and mapping the results to objects.
-    private final JdbcClient jdbcClient;
+    // The bounds are compared directly against the partition key started_on (no functions
+    // or casts applied to the column), which lets Postgres skip every monthly partition
+    // that cannot contain matching runs.
+    static final String FIND_STARTED_BETWEEN = "SELECT " + RunRowMapper.COLUMNS + " FROM run WHERE started_on >= :from AND started_on < :to ORDER BY started_on";
 
-    public JdbcClientRunRepository(JdbcClient jdbcClient) {
-        this.jdbcClient = jdbcClient;
+    // The StatementRecorder wraps JdbcClient, a simple JDBC client that
+    // provides a fluent API for interacting with a database.
+    // Every statement gets a name, under which its latency, rows and bytes
+    // are recorded, and slow executions are logged (see StatementRecorder).
+    private final StatementRecorder statements;
+    // Runs of the partitions archived by RunPartitionMaintainer
+    private final RunSegmentStore segmentStore;
+
+    public JdbcClientRunRepository(StatementRecorder statements, RunSegmentStore segmentStore) {
+        this.statements = statements;
+        this.segmentStore = segmentStore;
     }
 
     public List<Run> findAll() {
         // Retrieve all runs and map the results to a list of Run objects
-        return jdbcClient.sql("select * from run")
-                .query(Run.class)
-                .list();
+        return statements.sql("run.findAll", "SELECT " + RunRowMapper.COLUMNS + " FROM run")
+                .list(RunRowMapper.INSTANCE);
     }
 
-    public Optional<Run> findById(Integer id) {
-        // Retrieve a run by its ID and map the result to an Optional<Run> object
-        return jdbcClient.sql("SELECT id, title, started_on, completed_on, kilometers, location, version FROM run WHERE id = :id")
+    public Optional<Run> findById(Long id) {
+        // Retrieve a run by its ID and map the result to an Optional<Run> object,
+        // looking in the archived runs if it is not in the run table
+        return statements.sql("run.findById", "SELECT " + RunRowMapper.COLUMNS + " FROM run WHERE id = :id")
                 .param("id", id)
-                .query(Run.class)
-                .optional();
+                .optional(RunRowMapper.INSTANCE)
+                .or(() -> segmentStore.findById(id));
     }
 
+    // Every write below is a data-modifying CTE that also appends the changed row to the run history,
+    // so the change and its history record are one statement. The update count is that of the history insert.
+
     public void create(Run run) {
         // Create a new run entry in the database
-        var updated = jdbcClient.sql("INSERT INTO run (id, title, started_on, completed_on, kilometers, location) VALUES (?, ?, ?, ?, ?, ?)")
-                .params(List.of(run.id(), run.title(), run.startedOn(), run.completedOn(), run.kilometers(), run.location().toString()))
-                .update();
+        // New runs start at version 0, which is what Spring Data JDBC uses for new aggregates
+        var version = run.version() == null ? 0 : run.version();
+        // Runs without an id get the next value of run_id_seq, the default of the id column.
+        // The primary key of the partitioned run table is (id, started_on), so it does not stop
+        // a caller-supplied id from being used twice, with another started_on. Those are checked here.
+        if (run.id() != null && exists(run.id())) {
+            throw new DuplicateKeyException("Run " + run.id() + " already exists");
+        }
+        var updated = run.id() == null
+                ? statements.sql("run.create", "WITH changed AS (INSERT INTO run (title, started_on, completed_on, kilometers, location, start_lat, start_lng, version) VALUES (?, ?, ?, ?, ?, ?, ?, ?) RETURNING *) " + RunHistoryRepository.APPEND_CHANGED)
+                        .params(Arrays.asList(run.title(), run.startedOn(), run.completedOn(), run.kilometers(), run.location().toString(), startLat(run), startLng(run), version))
+                        .update()
+                : statements.sql("run.createWithId", "WITH changed AS (INSERT INTO run (id, title, started_on, completed_on, kilometers, location, start_lat, start_lng, version) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) RETURNING *) " + RunHistoryRepository.APPEND_CHANGED)
+                        .params(Arrays.asList(run.id(), run.title(), run.startedOn(), run.completedOn(), run.kilometers(), run.location().toString(), startLat(run), startLng(run), version))
+                        .update();
 
         // Assert that one row was affected by the insert, otherwise throw an error
         Assert.state(updated == 1, "Failed to create run " + run.title());
     }
 
-    public void update(Run run, Integer id) {
-        // Modify an existing run entry in the database
-        var updated = jdbcClient.sql("UPDATE run SET title = ?, started_on = ?, completed_on = ?, kilometers = ?, location = ? WHERE id = ?")
-                .params(List.of(run.title(), run.startedOn(), run.completedOn(), run.kilometers(), run.location().toString(), id))
+    private boolean exists(Long id) {
+        return statements.sql("run.exists", "SELECT EXISTS (SELECT 1 FROM run WHERE id = :id)")
+                .param("id", id)
+                .optional((rs, rowNum) -> rs.getBoolean(1))
+                .orElseThrow();
+    }
+
+    public void update(Run run, Long id) {
+        // Modify an existing run entry in the database and bump its version.
+        // If the caller passes the version it last read, the row is only changed
+        // when nobody else has updated it in the meantime (optimistic locking).
+        if (run.version() != null) {
+            var updated = statements.sql("run.updateVersion", "WITH changed AS (UPDATE run SET title = ?, started_on = ?, completed_on = ?, kilometers = ?, location = ?, start_lat = ?, start_lng = ?, version = version + 1 WHERE id = ? AND version = ? RETURNING *) " + RunHistoryRepository.APPEND_CHANGED)
+                    .params(Arrays.asList(run.title(), run.startedOn(), run.completedOn(), run.kilometers(), run.location().toString(), startLat(run), startLng(run), id, run.version()))
+                    .update();
+            if (updated == 0) {
+                throw new OptimisticLockingFailureException("Run " + id + " does not exist or is no longer at version " + run.version());
+            }
+            return;
+        }
+        var updated = statements.sql("run.update", "WITH changed AS (UPDATE run SET title = ?, started_on = ?, completed_on = ?, kilometers = ?, location = ?, start_lat = ?, start_lng = ?, version = version + 1 WHERE id = ? RETURNING *) " + RunHistoryRepository.APPEND_CHANGED)
+                .params(Arrays.asList(run.title(), run.startedOn(), run.completedOn(), run.kilometers(), run.location().toString(), startLat(run), startLng(run), id))
                 .update();
 
         // Assert that one row was affected by the update, otherwise throw an error
         Assert.state(updated == 1, "Failed to update run " + run.title());
     }
 
-    public void delete(Integer id) {
+    // The start position is optional, hence Arrays.asList above, which allows nulls unlike List.of
+    private static Double startLat(Run run) {
+        return run.start() == null ? null : run.start().lat();
+    }
+
+    private static Double startLng(Run run) {
+        return run.start() == null ? null : run.start().lng();
+    }
+
+    public void delete(Long id) {
         // Remove a run entry from the database by its ID
-        var updated = jdbcClient.sql("DELETE FROM run WHERE id = :id")
+        var updated = statements.sql("run.delete", "WITH changed AS (DELETE FROM run WHERE id = :id RETURNING *) " + RunHistoryRepository.APPEND_DELETED)
                 .param("id", id)
                 .update();
 
@@ -72,8 +127,8 @@ public class JdbcClientRunRepository {
     }
 
     public int count() {
-        // Count the number of rows in the run table
-        return jdbcClient.sql("SELECT * FROM run").query().listOfRows().size();
+        // Count the number of rows in the run table, without sending them to the application
+        return statements.sql("run.count", "SELECT count(*) FROM run").optional((rs, rowNum) -> rs.getInt(1)).orElseThrow();
     }
 
     public void saveAll(List<Run> runs) {
@@ -83,9 +138,17 @@ public class JdbcClientRunRepository {
 
     public List<Run> findByLocation(String location) {
         // Retrieve runs by location and map the results to a list of Run objects
-        return jdbcClient.sql("SELECT * FROM run WHERE location = :location")
+        return statements.sql("run.findByLocation", "SELECT " + RunRowMapper.COLUMNS + " FROM run WHERE location = :location")
                 .param("location", location)
-                .query(Run.class)
-                .list();
+                .list(RunRowMapper.INSTANCE);
+    }
+
+    public List<Run> findAllStartedBetween(LocalDateTime from, LocalDateTime to) {
+        // Retrieve the runs started in the half-open range [from, to), including the archived ones
+        List<Run> hot = statements.sql("run.findAllStartedBetween", FIND_STARTED_BETWEEN)
+                .param("from", from)
+                .param("to", to)
+                .list(RunRowMapper.INSTANCE);
+        return segmentStore.withArchivedStartedBetween(hot, from, to);
     }
 }
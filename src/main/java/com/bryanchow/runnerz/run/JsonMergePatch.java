@@ -0,0 +1,35 @@
+package com.bryanchow.runnerz.run;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Applies a JSON Merge Patch (RFC 7396) to a JSON document.
+ *
+ * Members present in the patch replace the target's members, members set to
+ * null are removed, and nested objects are merged recursively.
+ */
+final class JsonMergePatch {
+
+    private JsonMergePatch() {
+    }
+
+    static JsonNode apply(JsonNode target, JsonNode patch) {
+        // A patch that is not an object replaces the whole target
+        if (!patch.isObject()) {
+            return patch;
+        }
+        ObjectNode result = target != null && target.isObject()
+                ? ((ObjectNode) target).deepCopy()
+                : JsonNodeFactory.instance.objectNode();
+        patch.properties().forEach(member -> {
+            if (member.getValue().isNull()) {
+                result.remove(member.getKey());
+            } else {
+                result.set(member.getKey(), apply(result.get(member.getKey()), member.getValue()));
+            }
+        });
+        return result;
+    }
+}
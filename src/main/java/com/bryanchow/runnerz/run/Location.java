@@ -1,5 +1,18 @@
 package com.bryanchow.runnerz.run;
 
 public enum Location {
-    INDOOR, OUTDOOR
+    INDOOR, OUTDOOR;
+
+    // values() copies the array on every call, valueOf() looks the name up in a map
+    private static final Location[] LOCATIONS = values();
+
+    // The location with the given name, for the row mappers that read many rows
+    public static Location of(String name) {
+        for (Location location : LOCATIONS) {
+            if (location.name().equals(name)) {
+                return location;
+            }
+        }
+        throw new IllegalArgumentException("Unknown location " + name);
+    }
 }
@@ -1,24 +1,35 @@
 package com.bryanchow.runnerz.run;
 
+import com.bryanchow.runnerz.user.Geo;
 import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Positive;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.Version;
+import org.springframework.data.relational.core.mapping.Embedded;
 
 import java.time.LocalDateTime;
 
 public record Run(
         // Marks this field as the identifier for the entity.
         // It will be used as the primary key in the database.
+        // New runs get their id from the run_id_seq sequence (see RunIdAllocator).
         @Id
-        Integer id,
+        Long id,
         @NotEmpty
         String title,
         LocalDateTime startedOn,
         LocalDateTime completedOn,
+        // Both columns are NOT NULL, so a patch must not clear them
+        @NotNull
         @Positive
         Integer kilometers,
+        @NotNull
         Location location,
+        // Where the run started, stored in the start_lat and start_lng columns.
+        // Null if the position is unknown (both columns are null).
+        @Embedded.Nullable(prefix = "start_")
+        Geo start,
         // Marks this field as the version field for optimistic locking.
         // It will be used to manage concurrent updates to the entity.
         @Version
@@ -32,5 +43,8 @@ public record Run(
         if (!completedOn.isAfter(startedOn)) {
             throw new IllegalArgumentException("Run must be completed after it has started");
         }
+        if (start != null && !Geo.isValid(start.lat(), start.lng())) {
+            throw new IllegalArgumentException("Run must start at a latitude between -90 and 90 and a longitude between -180 and 180");
+        }
     }
 }
@@ -0,0 +1,14 @@
+package com.bryanchow.runnerz.run;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+// Thrown when a run that only exists in the archived runs is updated, patched or deleted,
+// archived runs are read-only (see RunPartitionMaintainer).
+@ResponseStatus(value = HttpStatus.CONFLICT, reason = "Run is archived and read-only")
+public class RunArchivedException extends RuntimeException {
+
+    public RunArchivedException() {
+        super("Run is archived and read-only");
+    }
+}
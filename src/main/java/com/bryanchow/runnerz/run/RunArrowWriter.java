@@ -0,0 +1,151 @@
+package com.bryanchow.runnerz.run;
+
+import org.apache.arrow.compression.CommonsCompressionFactory;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.TimeStampMilliVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.apache.arrow.vector.ipc.ArrowFileWriter;
+import org.apache.arrow.vector.ipc.message.IpcOption;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes runs to an Arrow IPC file, one record batch per chunk of runs.
+ *
+ * Only one chunk is held in memory at a time, so arbitrarily many runs can be
+ * streamed through the writer. Column buffers are compressed with ZSTD.
+ * Timestamps are stored as milliseconds without a time zone, like the
+ * TIMESTAMP columns of the run table.
+ */
+class RunArrowWriter implements AutoCloseable {
+
+    static final Schema SCHEMA = new Schema(List.of(
+            Field.notNullable("id", new ArrowType.Int(64, true)),
+            Field.notNullable("title", ArrowType.Utf8.INSTANCE),
+            Field.notNullable("started_on", new ArrowType.Timestamp(TimeUnit.MILLISECOND, null)),
+            Field.notNullable("completed_on", new ArrowType.Timestamp(TimeUnit.MILLISECOND, null)),
+            Field.notNullable("kilometers", new ArrowType.Int(32, true)),
+            Field.notNullable("location", ArrowType.Utf8.INSTANCE),
+            Field.nullable("start_lat", new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)),
+            Field.nullable("start_lng", new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)),
+            Field.nullable("version", new ArrowType.Int(32, true))));
+
+    private final BufferAllocator allocator;
+    private final VectorSchemaRoot root;
+    private final ArrowFileWriter writer;
+    private final int chunkSize;
+
+    private final BigIntVector id;
+    private final VarCharVector title;
+    private final TimeStampMilliVector startedOn;
+    private final TimeStampMilliVector completedOn;
+    private final IntVector kilometers;
+    private final VarCharVector location;
+    private final Float8Vector startLat;
+    private final Float8Vector startLng;
+    private final IntVector version;
+
+    private int rows;
+    private long totalRows;
+
+    RunArrowWriter(OutputStream out, int chunkSize) {
+        this.allocator = new RootAllocator();
+        this.root = VectorSchemaRoot.create(SCHEMA, allocator);
+        this.chunkSize = chunkSize;
+        this.writer = new ArrowFileWriter(root, null, Channels.newChannel(out), Map.of(), IpcOption.DEFAULT,
+                CommonsCompressionFactory.INSTANCE, CompressionUtil.CodecType.ZSTD);
+        this.id = (BigIntVector) root.getVector("id");
+        this.title = (VarCharVector) root.getVector("title");
+        this.startedOn = (TimeStampMilliVector) root.getVector("started_on");
+        this.completedOn = (TimeStampMilliVector) root.getVector("completed_on");
+        this.kilometers = (IntVector) root.getVector("kilometers");
+        this.location = (VarCharVector) root.getVector("location");
+        this.startLat = (Float8Vector) root.getVector("start_lat");
+        this.startLng = (Float8Vector) root.getVector("start_lng");
+        this.version = (IntVector) root.getVector("version");
+        try {
+            writer.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        root.allocateNew();
+    }
+
+    void write(Run run) {
+        id.setSafe(rows, run.id());
+        title.setSafe(rows, run.title().getBytes(StandardCharsets.UTF_8));
+        startedOn.setSafe(rows, epochMillis(run.startedOn()));
+        completedOn.setSafe(rows, epochMillis(run.completedOn()));
+        kilometers.setSafe(rows, run.kilometers());
+        location.setSafe(rows, run.location().name().getBytes(StandardCharsets.UTF_8));
+        if (run.start() == null) {
+            startLat.setNull(rows);
+            startLng.setNull(rows);
+        } else {
+            startLat.setSafe(rows, run.start().lat());
+            startLng.setSafe(rows, run.start().lng());
+        }
+        if (run.version() == null) {
+            version.setNull(rows);
+        } else {
+            version.setSafe(rows, run.version());
+        }
+        if (++rows == chunkSize) {
+            flush();
+        }
+    }
+
+    long rowCount() {
+        return totalRows + rows;
+    }
+
+    // Writes the buffered runs as one record batch and starts a new chunk
+    private void flush() {
+        root.setRowCount(rows);
+        try {
+            writer.writeBatch();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        totalRows += rows;
+        rows = 0;
+        root.allocateNew();
+    }
+
+    private static long epochMillis(LocalDateTime timestamp) {
+        return timestamp.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (rows > 0) {
+                flush();
+            }
+            writer.end();
+        } finally {
+            writer.close();
+            root.close();
+            allocator.close();
+        }
+    }
+}
@@ -1,11 +1,32 @@
 package com.bryanchow.runnerz.run;
 
+import com.bryanchow.runnerz.idempotency.IdempotencyRecord;
+import com.bryanchow.runnerz.idempotency.IdempotencyStore;
+import com.bryanchow.runnerz.ratelimit.RateLimitCost;
+import com.bryanchow.runnerz.user.Geo;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.validation.ConstraintViolation;
 import jakarta.validation.Valid;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.net.URI;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 // RestController annotation indicates that this class serves as a RESTful web service controller.
 @RestController
@@ -14,22 +35,106 @@ import java.util.Optional;
 @RequestMapping("/api/runs")
 public class RunController {
 
+    private static final Logger log = LoggerFactory.getLogger(RunController.class);
+
+    // How many times a PATCH is re-applied on top of a freshly read run
+    // before giving up because of concurrent writers
+    private static final int MAX_PATCH_ATTEMPTS = 3;
+
+    // Upper bound for the page size of search results
+    private static final int MAX_PAGE_SIZE = 100;
+
+    // Upper bound for the radius of proximity searches, about half the circumference of the earth
+    private static final double MAX_RADIUS_KM = 20_000;
+
+    // Header identifying a request that the client may retry, and the header marking a repeated answer
+    static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+
     // The repository instance to perform CRUD operations on Run entities
     private final RunRepository runRepository;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final IdempotencyStore idempotencyStore;
+    private final TransactionTemplate transactionTemplate;
 
-    public RunController(RunRepository runRepository) {
+    public RunController(RunRepository runRepository, ObjectMapper objectMapper, Validator validator, IdempotencyStore idempotencyStore,
+                         PlatformTransactionManager transactionManager) {
         this.runRepository = runRepository;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.idempotencyStore = idempotencyStore;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     /**
      * @GetMapping("") annotation maps HTTP GET requests to the findAll method.
      * It returns a list of all runs in the repository.
      */
+    @RateLimitCost(20)
     @GetMapping("")
     List<Run> findAll() {
         return runRepository.findAll();
     }
 
+    /**
+     * @GetMapping("/search") annotation maps HTTP GET requests to the search method.
+     * @RequestParam binds the query parameters, e.g. /api/runs/search?q=morning&page=0&size=20
+     * It returns a page of runs whose titles match the query, best matches first.
+     */
+    @RateLimitCost(5)
+    @GetMapping("/search")
+    List<Run> search(@RequestParam String q,
+                     @RequestParam(defaultValue = "0") int page,
+                     @RequestParam(defaultValue = "20") int size) {
+        if (page < 0 || size < 1 || size > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "page must be >= 0 and size between 1 and " + MAX_PAGE_SIZE);
+        }
+        return runRepository.search(q, size, (long) page * size);
+    }
+
+    /**
+     * @GetMapping("/near") annotation maps HTTP GET requests to the findNear method.
+     * @RequestParam binds the position and search radius, e.g. /api/runs/near?lat=52.37&lng=4.89&radiusKm=5&limit=20
+     * It returns the runs that started within the radius, nearest first.
+     */
+    @RateLimitCost(5)
+    @GetMapping("/near")
+    List<Run> findNear(@RequestParam double lat,
+                       @RequestParam double lng,
+                       @RequestParam(defaultValue = "10") double radiusKm,
+                       @RequestParam(defaultValue = "20") int limit) {
+        checkPosition(lat, lng);
+        if (radiusKm <= 0 || radiusKm > MAX_RADIUS_KM) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "radiusKm must be between 0 and " + MAX_RADIUS_KM);
+        }
+        checkLimit(limit);
+        return runRepository.findNear(lat, lng, radiusKm * 1000, limit);
+    }
+
+    /**
+     * @GetMapping("/within") annotation maps HTTP GET requests to the findWithin method.
+     * @RequestParam binds the edges of a bounding box, e.g. /api/runs/within?south=52.3&west=4.8&north=52.4&east=5.0
+     * It returns the runs that started within the box.
+     * Boxes crossing the antimeridian (west > east) are not supported.
+     */
+    @RateLimitCost(5)
+    @GetMapping("/within")
+    List<Run> findWithin(@RequestParam double south,
+                         @RequestParam double west,
+                         @RequestParam double north,
+                         @RequestParam double east,
+                         @RequestParam(defaultValue = "100") int limit) {
+        checkPosition(south, west);
+        checkPosition(north, east);
+        if (south > north || west > east) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "south must not be above north, and west must not be east of east");
+        }
+        checkLimit(limit);
+        return runRepository.findWithin(south, west, north, east, limit);
+    }
+
     /**
      * @GetMapping("/{id}") annotation maps HTTP GET requests to the findById method.
      * @PathVariable annotation binds the method parameter to a URI template variable.
@@ -37,7 +142,7 @@ public class RunController {
      * If the run is not found, it throws a RunNotFoundException.
      */
     @GetMapping("/{id}")
-    Run findById(@PathVariable Integer id) {
+    Run findById(@PathVariable Long id) {
 
         Optional<Run> run = runRepository.findById(id);
         if (run.isEmpty()) {
@@ -47,16 +152,46 @@ public class RunController {
     }
 
     /**
-     * @ResponseStatus(HttpStatus.CREATED) annotation sets the HTTP response status to 201 Created.
      * @PostMapping("") annotation maps HTTP POST requests to the create method.
      * @Valid annotation ensures that the request body is validated.
      * @RequestBody annotation binds the HTTP request body to the method parameter.
-     * It saves a new run to the repository.
+     * @RequestHeader binds the optional Idempotency-Key header.
+     * It saves a new run to the repository and answers with 201 Created and the URL of the run.
+     * The id of a new run is assigned by the server, an id in the request body is ignored.
+     * A retry with the same Idempotency-Key gets the original answer (marked with Idempotent-Replayed)
+     * without saving the run again. While the first request is still being processed, a retry
+     * gets 409 Conflict, and reusing a key for a different run gets 422 Unprocessable Entity.
      */
-    @ResponseStatus(HttpStatus.CREATED)
     @PostMapping("")
-    void create(@Valid @RequestBody Run run) {
-        runRepository.save(run);
+    ResponseEntity<Void> create(@Valid @RequestBody Run run,
+                                @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return ResponseEntity.created(insert(run)).build();
+        }
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, IDEMPOTENCY_KEY + " must have 1 to " + MAX_IDEMPOTENCY_KEY_LENGTH + " characters");
+        }
+
+        String fingerprint = fingerprint(run);
+        Optional<IdempotencyRecord> earlier = idempotencyStore.claim(idempotencyKey, fingerprint);
+        if (earlier.isPresent()) {
+            return replay(earlier.get(), fingerprint);
+        }
+        URI location;
+        try {
+            // The run and the result of the request are committed together, so a retry
+            // never finds a saved run without a result (and saves it a second time)
+            location = transactionTemplate.execute(status -> {
+                URI created = insert(run);
+                idempotencyStore.complete(idempotencyKey, HttpStatus.CREATED.value(), created.toString());
+                return created;
+            });
+        } catch (RuntimeException e) {
+            // Let the client retry a request that failed
+            idempotencyStore.release(idempotencyKey);
+            throw e;
+        }
+        return ResponseEntity.created(location).build();
     }
 
     /**
@@ -65,11 +200,61 @@ public class RunController {
      * @Valid annotation ensures that the request body is validated.
      * @RequestBody annotation binds the HTTP request body to the method parameter.
      * It updates an existing run in the repository.
+     * The update only succeeds if the run still has the version sent by the client,
+     * otherwise a RunVersionConflictException (409 Conflict) is thrown.
+     * A request without a version overwrites whatever version is currently stored.
+     * Archived runs are read-only, updating one throws a RunArchivedException (409 Conflict).
      */
     @ResponseStatus(HttpStatus.NO_CONTENT)
     @PutMapping("/{id}")
-    void update(@Valid @RequestBody Run run, @PathVariable Integer id) {
-        runRepository.save(run);
+    void update(@Valid @RequestBody Run run, @PathVariable Long id) {
+        Integer version = run.version() != null ? run.version() : findById(id).version();
+        save(new Run(id,
+                run.title(),
+                run.startedOn(),
+                run.completedOn(),
+                run.kilometers(),
+                run.location(),
+                run.start(),
+                version));
+    }
+
+    /**
+     * @PatchMapping("/{id}") annotation maps HTTP PATCH requests to the patch method.
+     * The request body is a JSON Merge Patch (RFC 7396) that is applied to the stored run,
+     * and only the columns whose values changed are written to the database.
+     * If the patch contains a version, the run must still have that version (409 Conflict otherwise).
+     * Without a version, the patch is re-applied to the latest run when a concurrent
+     * writer gets in first, so the fields changed by the other writer are kept.
+     * Archived runs are read-only, patching one throws a RunArchivedException (409 Conflict).
+     */
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    @RateLimitCost(2)
+    @PatchMapping(path = "/{id}", consumes = {"application/merge-patch+json", MediaType.APPLICATION_JSON_VALUE})
+    void patch(@RequestBody JsonNode patch, @PathVariable Long id) {
+        // Any other JSON value would replace the run as a whole (RFC 7396), which is never a valid run
+        if (!patch.isObject()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid patch: must be a JSON object");
+        }
+        Integer expectedVersion = expectedVersion(patch);
+        for (int attempt = 1; ; attempt++) {
+            Run current = findById(id);
+            if (expectedVersion != null && !expectedVersion.equals(current.version())) {
+                throw new RunVersionConflictException();
+            }
+            try {
+                runRepository.patch(current, merge(current, patch));
+                return;
+            } catch (OptimisticLockingFailureException e) {
+                if (runRepository.isArchived(id)) {
+                    throw new RunArchivedException();
+                }
+                if (attempt == MAX_PATCH_ATTEMPTS || expectedVersion != null) {
+                    throw new RunVersionConflictException();
+                }
+                log.debug("Run {} changed concurrently, re-applying patch (attempt {})", id, attempt);
+            }
+        }
     }
 
     /**
@@ -77,19 +262,126 @@ public class RunController {
      * @DeleteMapping("/{id}") annotation maps HTTP DELETE requests to the delete method.
      * It deletes a run from the repository by its ID.
      * If the run is not found, it throws a RunNotFoundException.
+     * If the run is updated between reading and deleting it, a RunVersionConflictException (409 Conflict) is thrown.
+     * Archived runs are read-only, deleting one throws a RunArchivedException (409 Conflict).
      */
     @ResponseStatus(HttpStatus.NO_CONTENT)
     @DeleteMapping("/{id}")
-    void delete(@PathVariable Integer id) {
-        runRepository.delete(runRepository.findById(id).get());
+    void delete(@PathVariable Long id) {
+        Run run = findById(id);
+        try {
+            // The DELETE only matches the version that was read (see @Version on Run)
+            runRepository.delete(run);
+        } catch (OptimisticLockingFailureException e) {
+            throw conflictOrNotFound(id);
+        }
     }
 
     /**
      * @GetMapping("/location/{location}") annotation maps HTTP GET requests to the findAllByLocation method.
      * It returns a list of runs filtered by location.
      */
+    @RateLimitCost(10)
     @GetMapping("/location/{location}")
     List<Run> findAllByLocation(@PathVariable String location) {
         return runRepository.findAllByLocation(location);
     }
+
+    private static void checkPosition(double lat, double lng) {
+        if (!Geo.isValid(lat, lng)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "latitude must be between -90 and 90, and longitude between -180 and 180");
+        }
+    }
+
+    private static void checkLimit(int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+    }
+
+    // Saves a new run, leaving the id to RunIdAllocator, and returns its URL
+    private URI insert(Run run) {
+        Run saved = runRepository.save(new Run(null,
+                run.title(),
+                run.startedOn(),
+                run.completedOn(),
+                run.kilometers(),
+                run.location(),
+                run.start(),
+                null));
+        return ServletUriComponentsBuilder.fromCurrentRequestUri().path("/{id}").buildAndExpand(saved.id()).toUri();
+    }
+
+    // Saves a run, translating a failed optimistic lock into a 404 or 409 response
+    private void save(Run run) {
+        try {
+            runRepository.save(run);
+        } catch (OptimisticLockingFailureException e) {
+            throw conflictOrNotFound(run.id());
+        }
+    }
+
+    // A failed optimistic lock means the run is archived (409), or was either deleted (404) or changed (409) by someone else
+    private RuntimeException conflictOrNotFound(Long id) {
+        if (runRepository.isArchived(id)) {
+            return new RunArchivedException();
+        }
+        if (!runRepository.existsById(id)) {
+            return new RunNotFoundException();
+        }
+        return new RunVersionConflictException();
+    }
+
+    // Answers a retried request with the result of the first request with the same key
+    private static ResponseEntity<Void> replay(IdempotencyRecord earlier, String fingerprint) {
+        if (!earlier.fingerprint().equals(fingerprint)) {
+            throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY, IDEMPOTENCY_KEY + " was already used for a different request");
+        }
+        if (!earlier.completed()) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "A request with this " + IDEMPOTENCY_KEY + " is still being processed");
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(earlier.status()).header(IDEMPOTENT_REPLAYED, "true");
+        if (earlier.location() != null) {
+            response.location(URI.create(earlier.location()));
+        }
+        return response.build();
+    }
+
+    private String fingerprint(Run run) {
+        try {
+            return IdempotencyStore.fingerprint(objectMapper.writeValueAsBytes(run));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize run", e);
+        }
+    }
+
+    // The version the patch expects the run to have, or null to patch whatever version is stored
+    private static Integer expectedVersion(JsonNode patch) {
+        JsonNode version = patch.get("version");
+        if (version == null || version.isNull()) {
+            return null;
+        }
+        if (!version.isIntegralNumber() || !version.canConvertToInt()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid patch: version must be an integer");
+        }
+        return version.intValue();
+    }
+
+    // Applies a merge patch to the current state of a run, keeping its id and version
+    private Run merge(Run current, JsonNode patch) {
+        ObjectNode merged = (ObjectNode) JsonMergePatch.apply(objectMapper.valueToTree(current), patch);
+        merged.put("id", current.id());
+        merged.put("version", current.version());
+        Run run;
+        try {
+            run = objectMapper.treeToValue(merged, Run.class);
+        } catch (JsonProcessingException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid patch: " + e.getOriginalMessage());
+        }
+        Set<ConstraintViolation<Run>> violations = validator.validate(run);
+        if (!violations.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid patch: " + violations);
+        }
+        return run;
+    }
 }
@@ -0,0 +1,25 @@
+package com.bryanchow.runnerz.run;
+
+import java.time.LocalDateTime;
+
+/**
+ * Summary of a finished export of runs.
+ *
+ * @param file           the Arrow IPC file that was written
+ * @param since          only runs started at or after this time were exported, null otherwise
+ * @param insertedFrom   for scheduled exports, only runs inserted at or after this time were exported, null for the first one
+ * @param insertedBefore for scheduled exports, only runs inserted before this time were exported, null otherwise
+ * @param rows           the number of exported runs
+ * @param bytes          the size of the file
+ * @param millis         how long the export took
+ */
+public record RunExport(
+        String file,
+        LocalDateTime since,
+        LocalDateTime insertedFrom,
+        LocalDateTime insertedBefore,
+        long rows,
+        long bytes,
+        long millis
+) {
+}
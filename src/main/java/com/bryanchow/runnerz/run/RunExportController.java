@@ -0,0 +1,34 @@
+package com.bryanchow.runnerz.run;
+
+import com.bryanchow.runnerz.ratelimit.RateLimitCost;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+
+// Triggers exports of the run table for the data team
+@RestController
+@RequestMapping("/api/runs/export")
+public class RunExportController {
+
+    private final RunExporter runExporter;
+
+    public RunExportController(RunExporter runExporter) {
+        this.runExporter = runExporter;
+    }
+
+    /**
+     * @PostMapping("") annotation maps HTTP POST requests to the export method.
+     * @RequestParam binds the optional since query parameter, e.g. ?since=2024-03-01T00:00:00
+     * It writes the runs started since that time (or all runs) to an Arrow file
+     * and returns where the file was written and how large it is.
+     * The export reads with a pool of its own, so it is not concurrency limited.
+     */
+    @RateLimitCost(value = 100, concurrencyLimited = false)
+    @ResponseStatus(HttpStatus.CREATED)
+    @PostMapping("")
+    RunExport export(@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since) {
+        return runExporter.export(since);
+    }
+}
@@ -0,0 +1,22 @@
+package com.bryanchow.runnerz.run;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Configuration of the Arrow export of runs, bound from the runnerz.export.* properties.
+ *
+ * @param directory where the export files are written
+ * @param chunkSize how many runs go into one record batch (and are fetched from the database at a time)
+ * @param insertLag runs inserted less than this long ago are left for the next scheduled export
+ */
+@ConfigurationProperties(prefix = "runnerz.export")
+public record RunExportProperties(
+        @DefaultValue("exports") Path directory,
+        @DefaultValue("8192") int chunkSize,
+        @DefaultValue("1m") Duration insertLag
+) {
+}
@@ -0,0 +1,149 @@
+package com.bryanchow.runnerz.run;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.stream.Stream;
+
+/**
+ * Exports the run table to compressed Arrow IPC files for analytics.
+ *
+ * Runs are streamed from the database with a cursor and written chunk by chunk,
+ * so neither the result set nor the file is ever held in memory as a whole.
+ * An export can be restricted to the runs started since a given time, which
+ * only scans the matching monthly partitions. Scheduled exports pick up the
+ * runs inserted since the previous scheduled export instead.
+ */
+@Component
+public class RunExporter {
+
+    private static final Logger log = LoggerFactory.getLogger(RunExporter.class);
+
+    private static final String SELECT = "SELECT " + RunRowMapper.COLUMNS + " FROM run";
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss");
+    // The row of run_export_watermark used by the scheduled export
+    private static final String SCHEDULED = "scheduled";
+
+    private final JdbcClient jdbcClient;
+    private final TransactionTemplate transactionTemplate;
+    private final RunExportProperties properties;
+
+    // Exports use their own connection pool, so they never hold the connections of the API (see PoolConfig)
+    public RunExporter(@Qualifier("export") DataSource dataSource, RunExportProperties properties) {
+        // Postgres only streams rows with a cursor when a fetch size is set and auto-commit is off,
+        // hence the dedicated JdbcTemplate and the read-only transaction around the export
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(properties.chunkSize());
+        this.jdbcClient = JdbcClient.create(jdbcTemplate);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.transactionTemplate.setReadOnly(true);
+        this.properties = properties;
+    }
+
+    /**
+     * Export runs to a new file in the export directory.
+     *
+     * @param since only export runs started at or after this time, or all runs if null
+     * @return a summary of the written file
+     */
+    public RunExport export(LocalDateTime since) {
+        var query = since == null
+                ? jdbcClient.sql(SELECT)
+                : jdbcClient.sql(SELECT + " WHERE started_on >= :since").param("since", since);
+        return export(query, since, null, null);
+    }
+
+    // Disabled unless runnerz.export.cron is set
+    @Scheduled(cron = "${runnerz.export.cron:-}")
+    public void scheduledExport() {
+        exportInserted();
+    }
+
+    /**
+     * Export the runs inserted since the previous call to a new file.
+     *
+     * Runs are picked by when they were inserted (inserted_at), not by when they started,
+     * so a run that is added late with an early start is exported too. How far the exports
+     * have got is kept in the run_export_watermark table, so it survives restarts.
+     * The inserted_at of a run is the start of the transaction that inserted it, so a
+     * transaction still in progress can add runs with an inserted_at in the past. Runs
+     * inserted within the last runnerz.export.insert-lag are therefore left for the next export.
+     *
+     * @return a summary of the written file
+     */
+    RunExport exportInserted() {
+        LocalDateTime from = jdbcClient.sql("SELECT inserted_before FROM run_export_watermark WHERE name = :name")
+                .param("name", SCHEDULED)
+                .query(LocalDateTime.class)
+                .optional()
+                .orElse(null);
+        // The clock of the database, which also sets inserted_at
+        LocalDateTime before = jdbcClient.sql("SELECT CAST(clock_timestamp() AS TIMESTAMP)")
+                .query(LocalDateTime.class)
+                .single()
+                .minus(properties.insertLag());
+
+        var query = from == null
+                ? jdbcClient.sql(SELECT + " WHERE inserted_at < :before").param("before", before)
+                : jdbcClient.sql(SELECT + " WHERE inserted_at >= :from AND inserted_at < :before").param("from", from).param("before", before);
+        RunExport export = export(query, null, from, before);
+
+        // Only moved on once the file is complete, so a failed export is covered by the next one
+        jdbcClient.sql("""
+                        INSERT INTO run_export_watermark (name, inserted_before) VALUES (:name, :before)
+                        ON CONFLICT (name) DO UPDATE SET inserted_before = EXCLUDED.inserted_before
+                        """)
+                .param("name", SCHEDULED)
+                .param("before", before)
+                .update();
+        return export;
+    }
+
+    private RunExport export(JdbcClient.StatementSpec query, LocalDateTime since, LocalDateTime insertedFrom, LocalDateTime insertedBefore) {
+        long start = System.nanoTime();
+        try {
+            Files.createDirectories(properties.directory());
+            Path file = properties.directory().resolve("runs-" + LocalDateTime.now().format(FILE_TIMESTAMP) + ".arrow");
+            Path partial = file.resolveSibling(file.getFileName() + ".part");
+
+            long rows;
+            try (OutputStream out = Files.newOutputStream(partial)) {
+                rows = transactionTemplate.execute(status -> write(query, out));
+            }
+            // Readers never see a half-written file
+            Files.move(partial, file, StandardCopyOption.ATOMIC_MOVE);
+
+            var export = new RunExport(file.toString(), since, insertedFrom, insertedBefore, rows, Files.size(file), (System.nanoTime() - start) / 1_000_000);
+            log.info("Exported {} runs to {} ({} bytes in {} ms)", export.rows(), export.file(), export.bytes(), export.millis());
+            return export;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to export runs", e);
+        }
+    }
+
+    private long write(JdbcClient.StatementSpec query, OutputStream out) {
+        try (RunArrowWriter writer = new RunArrowWriter(out, properties.chunkSize());
+             Stream<Run> runs = query.query(RunRowMapper.INSTANCE).stream()) {
+            runs.forEach(writer::write);
+            return writer.rowCount();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
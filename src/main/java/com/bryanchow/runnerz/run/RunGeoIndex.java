@@ -0,0 +1,130 @@
+package com.bryanchow.runnerz.run;
+
+import com.bryanchow.runnerz.user.Geo;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A spatial index of the start positions of runs, for the in-memory repository.
+ *
+ * The earth is divided into a grid of cells of CELL_DEGREES by CELL_DEGREES, and every
+ * run is kept in the cell of its start position. A query only looks at the cells that
+ * overlap the searched area, and computes exact distances for the runs in those cells.
+ * This plays the role of the GiST indexes on the run table in Postgres.
+ */
+class RunGeoIndex {
+
+    // About 11 km north to south, narrower towards the poles
+    static final double CELL_DEGREES = 0.1;
+    private static final int LAT_CELLS = (int) Math.round(180 / CELL_DEGREES);
+    private static final int LNG_CELLS = (int) Math.round(360 / CELL_DEGREES);
+    private static final double KM_PER_DEGREE_LAT = 2 * Math.PI * 6371 / 360;
+
+    private final Map<Integer, Map<Long, Run>> cells = new HashMap<>();
+    private final Map<Long, Integer> cellOfRun = new HashMap<>();
+
+    void add(Run run) {
+        remove(run.id());
+        if (run.start() != null) {
+            int cell = cell(latCell(run.start().lat()), lngCell(run.start().lng()));
+            cells.computeIfAbsent(cell, c -> new HashMap<>()).put(run.id(), run);
+            cellOfRun.put(run.id(), cell);
+        }
+    }
+
+    void remove(Long id) {
+        Integer cell = cellOfRun.remove(id);
+        if (cell != null) {
+            Map<Long, Run> runs = cells.get(cell);
+            runs.remove(id);
+            if (runs.isEmpty()) {
+                cells.remove(cell);
+            }
+        }
+    }
+
+    /**
+     * The runs starting within a radius around a position, nearest first.
+     */
+    List<Run> near(Geo center, double radiusKm, int limit) {
+        double dLat = radiusKm / KM_PER_DEGREE_LAT;
+        double south = Math.max(-90, center.lat() - dLat);
+        double north = Math.min(90, center.lat() + dLat);
+        // A degree of longitude gets shorter towards the poles, so the box is widest at the latitude nearest to a pole
+        double cos = Math.cos(Math.toRadians(Math.max(Math.abs(south), Math.abs(north))));
+        double dLng = cos < 1e-9 ? 180 : dLat / cos;
+
+        List<Run> found = new ArrayList<>();
+        for (int lat = latCell(south); lat <= latCell(north); lat++) {
+            for (int lng : lngCells(center.lng() - dLng, center.lng() + dLng)) {
+                Map<Long, Run> runs = cells.get(cell(lat, lng));
+                if (runs != null) {
+                    runs.values().stream()
+                            .filter(run -> run.start().kilometersTo(center) <= radiusKm)
+                            .forEach(found::add);
+                }
+            }
+        }
+        return found.stream()
+                .sorted(Comparator.<Run>comparingDouble(run -> run.start().kilometersTo(center)).thenComparing(Run::id))
+                .limit(limit)
+                .toList();
+    }
+
+    /**
+     * The runs starting within a bounding box, by id.
+     * The box must not cross the antimeridian, i.e. west <= east.
+     */
+    List<Run> within(double south, double west, double north, double east, int limit) {
+        List<Run> found = new ArrayList<>();
+        for (int lat = latCell(south); lat <= latCell(north); lat++) {
+            for (int lng = lngCell(west); lng <= lngCell(east); lng++) {
+                Map<Long, Run> runs = cells.get(cell(lat, lng));
+                if (runs != null) {
+                    runs.values().stream()
+                            .filter(run -> run.start().lat() >= south && run.start().lat() <= north
+                                    && run.start().lng() >= west && run.start().lng() <= east)
+                            .forEach(found::add);
+                }
+            }
+        }
+        return found.stream()
+                .sorted(Comparator.comparing(Run::id))
+                .limit(limit)
+                .toList();
+    }
+
+    // The longitude cells from west to east, wrapping around the antimeridian
+    private static int[] lngCells(double west, double east) {
+        if (east - west >= 360) {
+            int[] all = new int[LNG_CELLS];
+            for (int i = 0; i < LNG_CELLS; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        int first = (int) Math.floor((west + 180) / CELL_DEGREES);
+        int last = (int) Math.floor((east + 180) / CELL_DEGREES);
+        int[] range = new int[Math.min(last - first + 1, LNG_CELLS)];
+        for (int i = 0; i < range.length; i++) {
+            range[i] = Math.floorMod(first + i, LNG_CELLS);
+        }
+        return range;
+    }
+
+    private static int latCell(double lat) {
+        return Math.min(LAT_CELLS - 1, (int) Math.floor((lat + 90) / CELL_DEGREES));
+    }
+
+    private static int lngCell(double lng) {
+        return Math.min(LNG_CELLS - 1, (int) Math.floor((lng + 180) / CELL_DEGREES));
+    }
+
+    private static int cell(int latCell, int lngCell) {
+        return latCell * LNG_CELLS + lngCell;
+    }
+}
@@ -0,0 +1,55 @@
+package com.bryanchow.runnerz.run;
+
+import org.springframework.data.relational.core.mapping.event.BeforeConvertCallback;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.stereotype.Component;
+
+/**
+ * Assigns ids to new runs before Spring Data JDBC inserts them.
+ *
+ * The ids come from the run_id_seq sequence, which counts in steps of BLOCK_SIZE.
+ * Every nextval() reserves a block of ids for this instance (hi/lo), so only one
+ * in BLOCK_SIZE inserts needs a round trip to the sequence, and saveAll() can send
+ * its inserts as a batch because all ids are known up front. Other instances and
+ * plain SQL inserts (the column default) reserve their own blocks, so ids never collide.
+ * Ids left in a block when the application stops are skipped.
+ */
+@Component
+public class RunIdAllocator implements BeforeConvertCallback<Run> {
+
+    // Has to match the INCREMENT BY of run_id_seq (see V2__partition_run.sql)
+    static final int BLOCK_SIZE = 50;
+
+    private final JdbcClient jdbcClient;
+    // The next id to hand out, and the end (exclusive) of the reserved block
+    private long next;
+    private long limit;
+
+    public RunIdAllocator(JdbcClient jdbcClient) {
+        this.jdbcClient = jdbcClient;
+    }
+
+    public synchronized long nextId() {
+        if (next == limit) {
+            next = jdbcClient.sql("SELECT nextval('run_id_seq')").query(Long.class).single();
+            limit = next + BLOCK_SIZE;
+        }
+        return next++;
+    }
+
+    // New runs arrive without an id, runs being updated keep theirs
+    @Override
+    public Run onBeforeConvert(Run run) {
+        if (run.id() != null) {
+            return run;
+        }
+        return new Run(nextId(),
+                run.title(),
+                run.startedOn(),
+                run.completedOn(),
+                run.kilometers(),
+                run.location(),
+                run.start(),
+                run.version());
+    }
+}
@@ -0,0 +1,54 @@
+package com.bryanchow.runnerz.run;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+// Registers the binary formats of the runs API, in a scanned class so that slice tests (@JdbcTest) without Jackson skip it
+@Configuration
+public class RunMessageConverterConfig {
+
+    /**
+     * Bean definition for the CBOR message converter.
+     *
+     * Clients sending "Accept: application/cbor" get responses in CBOR, a compact
+     * binary encoding of the same document as the JSON response, and can send
+     * request bodies with "Content-Type: application/cbor".
+     *
+     * @param builder the ObjectMapper builder configured by Spring Boot
+     * @return the CBOR message converter
+     */
+    @Bean
+    MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(binaryObjectMapper(builder, new CBORFactory()));
+    }
+
+    /**
+     * Bean definition for the Smile message converter.
+     *
+     * Smile ("Accept: application/x-jackson-smile") additionally refers back to
+     * field names and short strings it has already written, so repeated names
+     * in a list of runs are only encoded once.
+     *
+     * @param builder the ObjectMapper builder configured by Spring Boot
+     * @return the Smile message converter
+     */
+    @Bean
+    MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(binaryObjectMapper(builder, new SmileFactory()));
+    }
+
+    // Binary formats write timestamps as numbers instead of ISO-8601 strings
+    private static ObjectMapper binaryObjectMapper(Jackson2ObjectMapperBuilder builder, JsonFactory factory) {
+        return builder.factory(factory)
+                .featuresToEnable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+    }
+}
@@ -0,0 +1,296 @@
+package com.bryanchow.runnerz.run;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the monthly partitions of the run table up to date.
+ *
+ * Partitions are created for every month from the retention window up to a few
+ * months ahead, so new runs never land in the default partition. Partitions that
+ * fall out of the retention window are archived as a whole: their runs are written
+ * to segment files (see RunSegmentStore), in batches of runnerz.tiering.segment-size,
+ * and the partition is detached and renamed to run_archived_yYYYYmMM, all in one
+ * transaction. A partition that cannot be archived stays attached, is logged, and is
+ * tried again on the next run.
+ *
+ * Every instance runs the maintenance, so an instance only archives a partition while
+ * it holds a transaction-level advisory lock on it, and the others skip it. The detached
+ * table is kept for runnerz.tiering.keep-detached, and only dropped by an instance that
+ * finds all the segments of the partition in the segment directory, which must be
+ * storage that every instance reads. Until then the runs can be recovered from it.
+ *
+ * Archived runs are read-only. GET /api/runs/{id} and the started_on range queries
+ * still find them, but they disappear from the list, search, near/within, leaderboard
+ * and export endpoints, which only read the run table. Their tracks and history stay
+ * where they are.
+ */
+@Component
+// Runs before RunJsonDataLoader so that the seed data lands in the monthly partitions
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RunPartitionMaintainer implements CommandLineRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(RunPartitionMaintainer.class);
+
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("'y'yyyy'm'MM");
+    private static final Pattern PARTITION_NAME = Pattern.compile("run_y(\\d{4})m(\\d{2})");
+
+    private final JdbcClient jdbcClient;
+    private final RunPartitionProperties properties;
+    private final RunWriteGeneration writeGeneration;
+    private final RunSegmentStore segmentStore;
+    private final RunTieringProperties tieringProperties;
+    private final TransactionTemplate transactionTemplate;
+
+    public RunPartitionMaintainer(JdbcClient jdbcClient,
+                                  RunPartitionProperties properties,
+                                  RunWriteGeneration writeGeneration,
+                                  RunSegmentStore segmentStore,
+                                  RunTieringProperties tieringProperties,
+                                  PlatformTransactionManager transactionManager) {
+        this.jdbcClient = jdbcClient;
+        this.properties = properties;
+        this.writeGeneration = writeGeneration;
+        this.segmentStore = segmentStore;
+        this.tieringProperties = tieringProperties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // Within a caller's transaction, a failed archiving only rolls back to a savepoint
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+    }
+
+    // This method is called when the application starts
+    @Override
+    public void run(String... args) {
+        advanceIdSequence();
+        maintain();
+    }
+
+    // The ids of archived runs must never be handed out again, even if run_id_seq was
+    // reset, e.g. when the database was restored from a backup older than the segments
+    void advanceIdSequence() {
+        long maxArchivedId = segmentStore.maxId();
+        if (maxArchivedId > 0) {
+            jdbcClient.sql("SELECT setval('run_id_seq', :id) FROM run_id_seq WHERE last_value < :id")
+                    .param("id", maxArchivedId)
+                    .query(Long.class)
+                    .list();
+        }
+    }
+
+    // Re-checks the partitions every night, by default at 03:00
+    @Scheduled(cron = "${runnerz.partitions.cron:0 0 3 * * *}")
+    public void maintain() {
+        maintain(YearMonth.now());
+    }
+
+    void maintain(YearMonth currentMonth) {
+        YearMonth oldest = currentMonth.minusMonths(properties.retentionMonths());
+        Set<String> existing = Set.copyOf(partitionNames());
+
+        for (YearMonth month = oldest; !month.isAfter(currentMonth.plusMonths(properties.monthsAhead())); month = month.plusMonths(1)) {
+            if (!existing.contains(partitionName(month))) {
+                createPartition(month);
+            }
+        }
+
+        for (String name : existing) {
+            Matcher matcher = PARTITION_NAME.matcher(name);
+            if (matcher.matches()) {
+                YearMonth month = YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+                if (month.isBefore(oldest)) {
+                    archivePartition(name, month);
+                }
+            }
+        }
+
+        dropDetachedPartitions();
+    }
+
+    List<String> partitionNames() {
+        // Lists the tables currently attached as partitions of the run table
+        return jdbcClient.sql("SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid WHERE i.inhparent = 'run'::regclass")
+                .query(String.class)
+                .list();
+    }
+
+    static String partitionName(YearMonth month) {
+        return "run_" + month.format(PARTITION_SUFFIX);
+    }
+
+    private void createPartition(YearMonth month) {
+        // Partition bounds cannot be bind parameters, but they are generated from a YearMonth and never from user input
+        String sql = "CREATE TABLE " + partitionName(month) + " PARTITION OF run FOR VALUES FROM ('"
+                + month.atDay(1).atStartOfDay() + "') TO ('" + month.plusMonths(1).atDay(1).atStartOfDay() + "')";
+        try {
+            jdbcClient.sql(sql).update();
+            log.info("Created run partition {}", partitionName(month));
+        } catch (DataAccessException e) {
+            // Fails if the default partition already holds runs for that month, they stay where they are
+            log.warn("Could not create run partition {}: {}", partitionName(month), e.getMostSpecificCause().getMessage());
+        }
+    }
+
+    void archivePartition(String name, YearMonth month) {
+        Integer segments;
+        try {
+            // DDL is transactional in Postgres, so if writing the segments or detaching the partition
+            // fails, the detach is rolled back and the partition stays attached with all its runs
+            segments = transactionTemplate.execute(status -> {
+                if (!tryLock(name)) {
+                    log.debug("Run partition {} is being archived by another instance", name);
+                    return null;
+                }
+                // Another instance may have archived it since the partitions were listed
+                if (!partitionNames().contains(name)) {
+                    return null;
+                }
+                try {
+                    // Writes to the runs of the partition wait until it is gone, reads carry on
+                    jdbcClient.sql("LOCK TABLE " + name + " IN SHARE MODE").update();
+                    int written = writeSegments(name, month);
+                    jdbcClient.sql("ALTER TABLE run DETACH PARTITION " + name).update();
+                    // Kept until every instance can read the segments, see dropDetachedPartitions
+                    jdbcClient.sql("ALTER TABLE " + name + " RENAME TO " + detachedName(name)).update();
+                    jdbcClient.sql("""
+                                    INSERT INTO run_archive (partition, segments) VALUES (:partition, :segments)
+                                    ON CONFLICT (partition) DO UPDATE SET segments = EXCLUDED.segments, archived_at = LOCALTIMESTAMP, dropped = FALSE""")
+                            .param("partition", name)
+                            .param("segments", written)
+                            .update();
+                    return written;
+                } catch (DataAccessException | UncheckedIOException e) {
+                    // Still holding the lock, so no other instance is writing segments of this partition
+                    removeSegments(name);
+                    throw e;
+                }
+            });
+        } catch (DataAccessException e) {
+            // Must not stop the application from starting, the partition is tried again on the next run
+            log.warn("Could not archive run partition {}: {}", name, e.getMostSpecificCause().getMessage());
+            return;
+        } catch (UncheckedIOException e) {
+            log.warn("Could not archive run partition {}: {}", name, e.getMessage());
+            return;
+        }
+        if (segments == null) {
+            return;
+        }
+        // The runs of the partition disappear from the API, so cached responses are stale
+        writeGeneration.bump();
+        log.info("Archived run partition {} to {} segments", name, segments);
+    }
+
+    // Drops the partitions detached longer than runnerz.tiering.keep-detached ago, but only once
+    // all their segments are in the segment directory as this instance sees it
+    void dropDetachedPartitions() {
+        List<ArchivedPartition> detached = jdbcClient.sql("""
+                        SELECT partition, segments FROM run_archive
+                        WHERE NOT dropped AND archived_at <= LOCALTIMESTAMP - :keep * INTERVAL '1 second'""")
+                .param("keep", tieringProperties.keepDetached().toSeconds())
+                .query((rs, rowNum) -> new ArchivedPartition(rs.getString("partition"), rs.getInt("segments")))
+                .list();
+        if (detached.isEmpty()) {
+            return;
+        }
+        // Picks up the segments written by other instances since the last refresh
+        segmentStore.refreshSegments();
+        for (ArchivedPartition partition : detached) {
+            int found = segmentStore.segmentCount(partition.name());
+            if (found != partition.segments()) {
+                log.warn("Keeping detached run partition {}: found {} of its {} segments in {}",
+                        detachedName(partition.name()), found, partition.segments(), tieringProperties.directory());
+                continue;
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    if (tryLock(partition.name())) {
+                        jdbcClient.sql("DROP TABLE IF EXISTS " + detachedName(partition.name())).update();
+                        jdbcClient.sql("UPDATE run_archive SET dropped = TRUE WHERE partition = :partition")
+                                .param("partition", partition.name())
+                                .update();
+                        log.info("Dropped detached run partition {}", detachedName(partition.name()));
+                    }
+                });
+            } catch (DataAccessException e) {
+                log.warn("Could not drop detached run partition {}: {}", detachedName(partition.name()), e.getMostSpecificCause().getMessage());
+            }
+        }
+    }
+
+    // Held until the end of the transaction, also released when the connection of an instance that dies is closed
+    private boolean tryLock(String partition) {
+        return jdbcClient.sql("SELECT pg_try_advisory_xact_lock(hashtext('run_archive/' || :partition))")
+                .param("partition", partition)
+                .query(Boolean.class)
+                .single();
+    }
+
+    private void removeSegments(String name) {
+        try {
+            segmentStore.remove(name);
+        } catch (IOException e) {
+            // The next attempt replaces them, and they are not counted for a partition that is still attached
+            log.warn("Could not remove the segments of run partition {}: {}", name, e.getMessage());
+        }
+    }
+
+    static String detachedName(String partition) {
+        return "run_archived_" + partition.substring("run_".length());
+    }
+
+    private record ArchivedPartition(String name, int segments) {
+    }
+
+    // Writes the runs of a partition to segments, by started_on and id
+    private int writeSegments(String name, YearMonth month) {
+        String select = "SELECT " + RunRowMapper.COLUMNS + " FROM " + name
+                + " WHERE (started_on, id) > (:startedOn, :id) ORDER BY started_on, id LIMIT :limit";
+        try {
+            // Segments left by an earlier attempt that rolled back are replaced
+            segmentStore.remove(name);
+            // The partition only holds runs started within the month, so every one of them comes after this
+            LocalDateTime startedOn = month.minusMonths(1).atDay(1).atStartOfDay();
+            long id = 0;
+            int part = 0;
+            List<Run> runs;
+            do {
+                runs = jdbcClient.sql(select)
+                        .param("startedOn", startedOn)
+                        .param("id", id)
+                        .param("limit", tieringProperties.segmentSize())
+                        .query(RunRowMapper.INSTANCE)
+                        .list();
+                if (!runs.isEmpty()) {
+                    Path file = segmentStore.add(name, ++part, runs);
+                    log.debug("Archived {} runs of {} to {}", runs.size(), name, file);
+                    startedOn = runs.getLast().startedOn();
+                    id = runs.getLast().id();
+                }
+            } while (runs.size() == tieringProperties.segmentSize());
+            return part;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write the segments of " + name, e);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.bryanchow.runnerz.run;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Configuration of the monthly partitions of the run table,
+ * bound from the runnerz.partitions.* properties.
+ *
+ * @param monthsAhead     how many future months get a partition ahead of time
+ * @param retentionMonths how many past months stay attached to the run table
+ */
+@ConfigurationProperties(prefix = "runnerz.partitions")
+public record RunPartitionProperties(
+        @DefaultValue("3") int monthsAhead,
+        @DefaultValue("36") int retentionMonths
+) {
+}
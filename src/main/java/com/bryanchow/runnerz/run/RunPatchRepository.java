@@ -0,0 +1,21 @@
+package com.bryanchow.runnerz.run;
+
+/**
+ * Custom repository fragment for partial updates of Run entities.
+ * RunRepository extends this interface, and Spring Data picks up the
+ * implementation from RunPatchRepositoryImpl by naming convention.
+ */
+public interface RunPatchRepository {
+
+    /**
+     * Write the fields of a run that differ from its current state.
+     * Only the changed columns appear in the generated UPDATE statement,
+     * and the version of the current run is used for optimistic locking.
+     *
+     * @param current the run as it was read from the database
+     * @param patched the run with the changes applied
+     * @return true if a row was written, false if nothing had changed
+     * @throws org.springframework.dao.OptimisticLockingFailureException if the run is no longer at the current version
+     */
+    boolean patch(Run current, Run patched);
+}
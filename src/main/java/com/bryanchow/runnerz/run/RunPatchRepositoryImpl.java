@@ -0,0 +1,82 @@
+package com.bryanchow.runnerz.run;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.relational.core.conversion.MutableAggregateChange;
+import org.springframework.data.relational.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.relational.core.mapping.event.BeforeSaveEvent;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+// Implementation of the RunPatchRepository fragment, mixed into RunRepository by Spring Data
+class RunPatchRepositoryImpl implements RunPatchRepository {
+
+    // The columns that can be patched, with the accessor reading the value from a run
+    private static final Map<String, Function<Run, Object>> COLUMNS = new LinkedHashMap<>();
+
+    static {
+        COLUMNS.put("title", Run::title);
+        COLUMNS.put("started_on", Run::startedOn);
+        COLUMNS.put("completed_on", Run::completedOn);
+        COLUMNS.put("kilometers", Run::kilometers);
+        COLUMNS.put("location", run -> run.location() == null ? null : run.location().toString());
+        COLUMNS.put("start_lat", run -> run.start() == null ? null : run.start().lat());
+        COLUMNS.put("start_lng", run -> run.start() == null ? null : run.start().lng());
+    }
+
+    private final JdbcClient jdbcClient;
+    private final ApplicationEventPublisher eventPublisher;
+
+    RunPatchRepositoryImpl(JdbcClient jdbcClient, ApplicationEventPublisher eventPublisher) {
+        this.jdbcClient = jdbcClient;
+        this.eventPublisher = eventPublisher;
+    }
+
+    // Listeners (history, leaderboards) rely on the transaction of the write, like for saves through Spring Data
+    @Override
+    @Transactional
+    public boolean patch(Run current, Run patched) {
+        // Build "SET column = ?" only for the values that actually changed
+        List<String> assignments = new ArrayList<>();
+        List<Object> params = new ArrayList<>();
+        COLUMNS.forEach((column, value) -> {
+            Object newValue = value.apply(patched);
+            if (!Objects.equals(value.apply(current), newValue)) {
+                assignments.add(column + " = ?");
+                params.add(newValue);
+            }
+        });
+        if (assignments.isEmpty()) {
+            return false;
+        }
+        params.add(current.id());
+        params.add(current.version());
+
+        // Publish the same events as a save through Spring Data, so listeners also see patched runs
+        Run saved = new Run(current.id(),
+                patched.title(),
+                patched.startedOn(),
+                patched.completedOn(),
+                patched.kilometers(),
+                patched.location(),
+                patched.start(),
+                current.version() + 1);
+        eventPublisher.publishEvent(new BeforeSaveEvent<>(saved, MutableAggregateChange.forSave(saved)));
+
+        var updated = jdbcClient.sql("UPDATE run SET " + String.join(", ", assignments) + ", version = version + 1 WHERE id = ? AND version = ?")
+                .params(params)
+                .update();
+        if (updated == 0) {
+            throw new OptimisticLockingFailureException("Run " + current.id() + " does not exist or is no longer at version " + current.version());
+        }
+        eventPublisher.publishEvent(new AfterSaveEvent<>(saved, MutableAggregateChange.forSave(saved)));
+        return true;
+    }
+}
@@ -1,15 +1,26 @@
 package com.bryanchow.runnerz.run;
 
+import org.springframework.data.jdbc.repository.query.Query;
 import org.springframework.data.repository.ListCrudRepository;
 
 import java.util.List;
+import java.util.Optional;
 
 /**
  * RunRepository interface for performing CRUD operations on Run entities.
  * Extends Spring Data's ListCrudRepository to utilise automatic implementation
- * of standard CRUD methods.
+ * of standard CRUD methods, RunPatchRepository for partial updates, and
+ * RunTierRepository for lookups that include the archived runs.
  */
-public interface RunRepository extends ListCrudRepository<Run, Integer> {
+public interface RunRepository extends ListCrudRepository<Run, Long>, RunPatchRepository, RunTierRepository {
+
+    /**
+     * Find a run by id, including the archived runs (see RunTierRepository).
+     * Declared again here because both ListCrudRepository and RunTierRepository
+     * declare it, and Spring Data calls the fragment implementation.
+     */
+    @Override
+    Optional<Run> findById(Long id);
 
     /**
      * Find all runs by location.
@@ -18,4 +29,66 @@ public interface RunRepository extends ListCrudRepository<Run, Integer> {
      * @return a list of runs with the specified location
      */
     List<Run> findAllByLocation(String location);
+
+    /**
+     * Search runs by title, best matches first.
+     * A run matches if its title contains the query words (full-text search, so
+     * "mornings" also finds "Morning Run"), or a word similar to the query
+     * (trigram similarity, so "mornign" finds it too). Both conditions are
+     * answered from the GIN indexes on the title column.
+     *
+     * @param query  the search text
+     * @param limit  the maximum number of runs to return
+     * @param offset the number of best matches to skip
+     * @return a page of matching runs ordered by relevance
+     */
+    @Query("""
+            SELECT id, title, started_on, completed_on, kilometers, location, start_lat, start_lng, version
+            FROM run
+            WHERE to_tsvector('english', title) @@ websearch_to_tsquery('english', :query)
+               OR :query <% title
+            ORDER BY greatest(ts_rank(to_tsvector('english', title), websearch_to_tsquery('english', :query)),
+                              word_similarity(:query, title)) DESC, id
+            LIMIT :limit OFFSET :offset
+            """)
+    List<Run> search(String query, int limit, long offset);
+
+    /**
+     * Find the runs that started nearest to a position.
+     * earth_box() narrows the candidates down with the GiST index on the start position,
+     * and the same index returns them nearest first (k-nearest neighbour search with <->),
+     * so only about limit rows are read no matter how many runs there are.
+     *
+     * @param lat          latitude of the position
+     * @param lng          longitude of the position
+     * @param radiusMeters the maximum distance from the position
+     * @param limit        the maximum number of runs to return
+     * @return the runs within the radius, nearest first
+     */
+    @Query("""
+            SELECT id, title, started_on, completed_on, kilometers, location, start_lat, start_lng, version
+            FROM run
+            WHERE start_lat IS NOT NULL
+              AND earth_box(ll_to_earth(:lat, :lng), :radiusMeters) @> ll_to_earth(start_lat, start_lng)
+              AND earth_distance(ll_to_earth(:lat, :lng), ll_to_earth(start_lat, start_lng)) <= :radiusMeters
+            ORDER BY ll_to_earth(start_lat, start_lng) <-> ll_to_earth(:lat, :lng)
+            LIMIT :limit
+            """)
+    List<Run> findNear(double lat, double lng, double radiusMeters, int limit);
+
+    /**
+     * Find the runs that started within a latitude/longitude box,
+     * answered from the GiST index on the start position.
+     *
+     * @return the runs within the box, by id
+     */
+    @Query("""
+            SELECT id, title, started_on, completed_on, kilometers, location, start_lat, start_lng, version
+            FROM run
+            WHERE start_lat IS NOT NULL
+              AND point(start_lng, start_lat) <@ box(point(:west, :south), point(:east, :north))
+            ORDER BY id
+            LIMIT :limit
+            """)
+    List<Run> findWithin(double south, double west, double north, double east, int limit);
 }
@@ -0,0 +1,26 @@
+package com.bryanchow.runnerz.run;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.web.servlet.HandlerMapping;
+
+// Registers the response cache for the run list endpoints only
+@Configuration
+public class RunResponseCacheConfig {
+
+    // The handler mapping is injected lazily, as filters are created before the MVC infrastructure
+    @Bean
+    FilterRegistrationBean<RunResponseCacheFilter> runResponseCacheFilter(RunWriteGeneration writeGeneration,
+                                                                         @Lazy @Qualifier("requestMappingHandlerMapping") HandlerMapping handlerMapping,
+                                                                         RunResponseCacheProperties properties,
+                                                                         MeterRegistry meterRegistry) {
+        FilterRegistrationBean<RunResponseCacheFilter> registration =
+                new FilterRegistrationBean<>(new RunResponseCacheFilter(writeGeneration, handlerMapping, properties, meterRegistry));
+        registration.addUrlPatterns("/api/runs", "/api/runs/location/*");
+        return registration;
+    }
+}
@@ -0,0 +1,177 @@
+package com.bryanchow.runnerz.run;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerExecutionChain;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.ServletRequestPathUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Caches the serialized responses of the run list endpoints.
+ *
+ * The first GET of a URL is handled as usual, and the response body is kept both as
+ * written by Jackson and gzip-compressed, keyed by URL and Accept header (JSON, CBOR
+ * and Smile bodies differ). Later requests for the same key are answered from memory
+ * without a database query or serialization, as long as no run was written since the
+ * response was cached (see RunWriteGeneration). Hits and misses are counted in the
+ * runnerz.response.cache metric.
+ *
+ * Cached responses are only served once the interceptors of the handler (e.g. the
+ * rate limiter) have let the request through, as they would for a request that
+ * reaches the controller.
+ *
+ * Registered for the list endpoints only, see RunResponseCacheConfig.
+ */
+public class RunResponseCacheFilter extends OncePerRequestFilter {
+
+    // Responses differ by format and compression, so shared caches have to keep them apart too
+    private static final String VARY = HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING;
+
+    private final RunWriteGeneration writeGeneration;
+    private final HandlerMapping handlerMapping;
+    private final RunResponseCacheProperties properties;
+    private final Map<String, CachedResponse> responses = new ConcurrentHashMap<>();
+    private final Counter hits;
+    private final Counter misses;
+
+    public RunResponseCacheFilter(RunWriteGeneration writeGeneration, HandlerMapping handlerMapping, RunResponseCacheProperties properties, MeterRegistry meterRegistry) {
+        this.writeGeneration = writeGeneration;
+        this.handlerMapping = handlerMapping;
+        this.properties = properties;
+        this.hits = meterRegistry.counter("runnerz.response.cache", "result", "hit");
+        this.misses = meterRegistry.counter("runnerz.response.cache", "result", "miss");
+    }
+
+    // A response body with the generation of the run table it was computed from
+    private record CachedResponse(long generation, String contentType, byte[] body, byte[] gzipped) {
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !HttpMethod.GET.matches(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+        String key = key(request);
+        response.setHeader(HttpHeaders.VARY, VARY);
+        // Read before the runs are queried, so a write during the request makes the result stale
+        long generation = writeGeneration.current();
+
+        CachedResponse cached = responses.get(key);
+        if (cached != null && cached.generation() == generation) {
+            hits.increment();
+            writeIfAdmitted(cached, request, response);
+            return;
+        }
+
+        misses.increment();
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        chain.doFilter(request, wrapper);
+        byte[] body = wrapper.getContentAsByteArray();
+        // Errors (e.g. 429 from the rate limiter) and oversized lists are not cached
+        if (wrapper.getStatus() == HttpServletResponse.SC_OK && body.length <= properties.maxResponseSize().toBytes()) {
+            store(key, new CachedResponse(generation, wrapper.getContentType(), body, gzip(body)));
+        }
+        wrapper.copyBodyToResponse();
+    }
+
+    // Runs the interceptors of the handler around a cached response, like DispatcherServlet does around the handler
+    private void writeIfAdmitted(CachedResponse cached, HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        if (!ServletRequestPathUtils.hasParsedRequestPath(request)) {
+            ServletRequestPathUtils.parseAndCache(request);
+        }
+        HandlerExecutionChain chain;
+        try {
+            chain = handlerMapping.getHandler(request);
+        } catch (Exception e) {
+            throw new ServletException(e);
+        }
+        List<HandlerInterceptor> interceptors = chain == null ? List.of() : chain.getInterceptorList();
+        int admitted = 0;
+        Exception failure = null;
+        try {
+            while (admitted < interceptors.size()) {
+                if (!interceptors.get(admitted).preHandle(request, response, chain.getHandler())) {
+                    return;
+                }
+                admitted++;
+            }
+            write(cached, request, response);
+        } catch (IOException | ServletException | RuntimeException e) {
+            failure = e;
+            throw e;
+        } catch (Exception e) {
+            failure = e;
+            throw new ServletException(e);
+        } finally {
+            // Only the interceptors that let the request through are completed, in reverse order
+            for (int i = admitted - 1; i >= 0; i--) {
+                try {
+                    interceptors.get(i).afterCompletion(request, response, chain.getHandler(), failure);
+                } catch (Exception e) {
+                    logger.warn("Interceptor afterCompletion failed", e);
+                }
+            }
+        }
+    }
+
+    private static String key(HttpServletRequest request) {
+        String query = request.getQueryString();
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        return request.getRequestURI() + (query == null ? "" : "?" + query) + " " + (accept == null ? "" : accept);
+    }
+
+    private void store(String key, CachedResponse response) {
+        if (responses.size() >= properties.maxEntries() && !responses.containsKey(key)) {
+            // Make room by dropping responses that are stale anyway, otherwise keep what is cached
+            responses.values().removeIf(cached -> cached.generation() != writeGeneration.current());
+            if (responses.size() >= properties.maxEntries()) {
+                return;
+            }
+        }
+        responses.put(key, response);
+    }
+
+    private static void write(CachedResponse cached, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip") && cached.gzipped().length < cached.body().length;
+        byte[] body = gzip ? cached.gzipped() : cached.body();
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(cached.contentType());
+        if (gzip) {
+            // The servlet container leaves responses alone that already have a Content-Encoding
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,18 @@
+package com.bryanchow.runnerz.run;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Configuration of the cache of serialized run lists, bound from the runnerz.response-cache.* properties.
+ *
+ * @param maxEntries how many responses (per URL and Accept header) are kept at most
+ * @param maxResponseSize responses larger than this are not cached
+ */
+@ConfigurationProperties(prefix = "runnerz.response-cache")
+public record RunResponseCacheProperties(
+        @DefaultValue("256") int maxEntries,
+        @DefaultValue("16MB") DataSize maxResponseSize
+) {
+}
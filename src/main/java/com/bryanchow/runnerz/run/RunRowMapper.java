@@ -0,0 +1,45 @@
+package com.bryanchow.runnerz.run;
+
+import com.bryanchow.runnerz.user.Geo;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+
+/**
+ * Maps a row of the run table to a Run, for the queries written with JdbcClient.
+ * The start position is spread over the start_lat and start_lng columns,
+ * which Spring's DataClassRowMapper cannot put together into a Geo.
+ *
+ * The queries select exactly COLUMNS, in that order, so the columns are read by
+ * position: no lookup of column names for every row, and no reflection. Numbers
+ * are read as primitives and checked with wasNull(), so the only objects created
+ * for a row are its strings, timestamps, start position and the Run itself.
+ */
+final class RunRowMapper implements RowMapper<Run> {
+
+    static final RunRowMapper INSTANCE = new RunRowMapper();
+
+    // The projection every query mapped by this class has to use
+    static final String COLUMNS = "id, title, started_on, completed_on, kilometers, location, start_lat, start_lng, version";
+
+    private RunRowMapper() {
+    }
+
+    @Override
+    public Run mapRow(ResultSet rs, int rowNum) throws SQLException {
+        double lat = rs.getDouble(7);
+        Geo start = rs.wasNull() ? null : new Geo(lat, rs.getDouble(8));
+        int version = rs.getInt(9);
+        boolean unversioned = rs.wasNull();
+        return new Run(rs.getLong(1),
+                rs.getString(2),
+                rs.getObject(3, LocalDateTime.class),
+                rs.getObject(4, LocalDateTime.class),
+                rs.getInt(5),
+                Location.of(rs.getString(6)),
+                start,
+                unversioned ? null : version);
+    }
+}
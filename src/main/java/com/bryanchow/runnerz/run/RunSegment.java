@@ -0,0 +1,357 @@
+package com.bryanchow.runnerz.run;
+
+import com.bryanchow.runnerz.user.Geo;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * An immutable file of archived runs (see RunPartitionMaintainer).
+ *
+ * The runs are sorted by started_on and id, and stored in blocks of blockSize runs,
+ * each compressed with Deflate. After the blocks come the ids of the runs, sorted,
+ * each with the block holding the run, compressed in groups of ID_GROUP_SIZE. The end
+ * of the file holds a sparse index with one entry per block: its position, and the
+ * lowest and highest started_on in it, and one entry per group of ids: its position
+ * and its lowest id.
+ *
+ * | block 0 | block 1 | ... | ids 0 | ids 1 | ... | index: (offset, length, minStartedOn, maxStartedOn) per block |
+ * | id index: (offset, length, firstId) per group of ids | footer |
+ *
+ * The footer holds the position of the index, the number of blocks and groups of ids,
+ * the highest id, the FORMAT_VERSION the file was written with, and MAGIC. Locations
+ * are stored by name, so that adding or reordering the constants of Location never
+ * changes what an archived run reads as.
+ *
+ * The file is memory-mapped and only the index is read up front. A lookup by started_on
+ * range decompresses only the blocks whose index entry overlaps. A lookup by id rejects
+ * ids outside of the segment right away. Otherwise it finds the group of ids that can
+ * hold the id by binary search, and decompresses that group and then at most the one
+ * block holding the run, however much the id ranges of the blocks overlap (runs added
+ * late to the run table have higher ids than the runs started around the same time).
+ * Segments are limited to 2GB, far more than runnerz.tiering.segment-size runs take.
+ */
+final class RunSegment {
+
+    private static final int MAGIC = 0x52554E53; // "RUNS"
+    // Raised whenever the layout of the blocks or the index changes, files of other versions are not read
+    static final int FORMAT_VERSION = 3;
+    private static final int FOOTER_BYTES = Long.BYTES + 2 * Integer.BYTES + Long.BYTES + 2 * Integer.BYTES;
+    private static final int INDEX_ENTRY_BYTES = Long.BYTES + Integer.BYTES + 2 * Long.BYTES;
+    private static final int ID_INDEX_ENTRY_BYTES = Long.BYTES + Integer.BYTES + Long.BYTES;
+    // The ids compressed together, the unit a lookup by id decompresses before the block
+    private static final int ID_GROUP_SIZE = 256;
+
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    // The sparse index, one element per block
+    private final long[] offsets;
+    private final int[] lengths;
+    private final long[] minStartedOn;
+    private final long[] maxStartedOn;
+    // The id index, one element per group of ids
+    private final long[] idOffsets;
+    private final int[] idLengths;
+    private final long[] firstIds;
+    private final long maxId;
+
+    private RunSegment(Path file, MappedByteBuffer buffer, int blocks, int idGroups, long maxId) {
+        this.file = file;
+        this.buffer = buffer;
+        this.offsets = new long[blocks];
+        this.lengths = new int[blocks];
+        this.minStartedOn = new long[blocks];
+        this.maxStartedOn = new long[blocks];
+        this.idOffsets = new long[idGroups];
+        this.idLengths = new int[idGroups];
+        this.firstIds = new long[idGroups];
+        this.maxId = maxId;
+    }
+
+    /**
+     * Writes runs to a new segment file. The file only appears under its name once
+     * it is complete and on disk, so a crash never leaves a partial segment behind.
+     */
+    static void write(Path file, List<Run> runs, int blockSize) throws IOException {
+        List<Run> sorted = runs.stream()
+                .sorted(Comparator.comparing(Run::startedOn).thenComparing(Run::id))
+                .toList();
+        Path partial = file.resolveSibling(file.getFileName() + ".part");
+
+        try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            ByteArrayOutputStream index = new ByteArrayOutputStream();
+            DataOutputStream indexOut = new DataOutputStream(index);
+            long offset = 0;
+            int blocks = 0;
+            for (int from = 0; from < sorted.size(); from += blockSize) {
+                List<Run> block = sorted.subList(from, Math.min(from + blockSize, sorted.size()));
+                byte[] compressed = compress(block);
+                out.write(compressed);
+
+                indexOut.writeLong(offset);
+                indexOut.writeInt(compressed.length);
+                indexOut.writeLong(epochSecond(block.getFirst().startedOn()));
+                indexOut.writeLong(epochSecond(block.getLast().startedOn()));
+                offset += compressed.length;
+                blocks++;
+            }
+            // The positions of the runs in sorted, by id. The run at position i is in block i / blockSize.
+            int[] byId = IntStream.range(0, sorted.size())
+                    .boxed()
+                    .sorted(Comparator.comparingLong(i -> sorted.get(i).id()))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            int idGroups = 0;
+            for (int from = 0; from < byId.length; from += ID_GROUP_SIZE) {
+                byte[] compressed = compressIds(sorted, byId, from, Math.min(from + ID_GROUP_SIZE, byId.length), blockSize);
+                out.write(compressed);
+
+                indexOut.writeLong(offset);
+                indexOut.writeInt(compressed.length);
+                indexOut.writeLong(sorted.get(byId[from]).id());
+                offset += compressed.length;
+                idGroups++;
+            }
+            out.write(index.toByteArray());
+            out.writeLong(offset);
+            out.writeInt(blocks);
+            out.writeInt(idGroups);
+            out.writeLong(byId.length == 0 ? 0 : sorted.get(byId[byId.length - 1]).id());
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(MAGIC);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(partial, file, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Maps a segment file and reads its index.
+     */
+    static RunSegment open(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        // The version and MAGIC end the file in every format version
+        int end = buffer.capacity();
+        if (end < 2 * Integer.BYTES || buffer.getInt(end - Integer.BYTES) != MAGIC) {
+            throw new IOException("Not a run segment: " + file);
+        }
+        int version = buffer.getInt(end - 2 * Integer.BYTES);
+        if (version != FORMAT_VERSION || end < FOOTER_BYTES) {
+            throw new IOException("Run segment " + file + " has format version " + version + ", expected " + FORMAT_VERSION);
+        }
+        int footer = end - FOOTER_BYTES;
+        long indexOffset = buffer.getLong(footer);
+        int blocks = buffer.getInt(footer + Long.BYTES);
+        int idGroups = buffer.getInt(footer + Long.BYTES + Integer.BYTES);
+        long maxId = buffer.getLong(footer + Long.BYTES + 2 * Integer.BYTES);
+
+        RunSegment segment = new RunSegment(file, buffer, blocks, idGroups, maxId);
+        ByteBuffer index = buffer.slice((int) indexOffset, blocks * INDEX_ENTRY_BYTES + idGroups * ID_INDEX_ENTRY_BYTES);
+        for (int block = 0; block < blocks; block++) {
+            segment.offsets[block] = index.getLong();
+            segment.lengths[block] = index.getInt();
+            segment.minStartedOn[block] = index.getLong();
+            segment.maxStartedOn[block] = index.getLong();
+        }
+        for (int group = 0; group < idGroups; group++) {
+            segment.idOffsets[group] = index.getLong();
+            segment.idLengths[group] = index.getInt();
+            segment.firstIds[group] = index.getLong();
+        }
+        return segment;
+    }
+
+    Path file() {
+        return file;
+    }
+
+    boolean isEmpty() {
+        return offsets.length == 0;
+    }
+
+    // The highest id in the segment, 0 if it is empty
+    long maxId() {
+        return maxId;
+    }
+
+    Optional<Run> findById(long id) {
+        if (firstIds.length == 0 || id < firstIds[0] || id > maxId) {
+            return Optional.empty();
+        }
+        // The group with the highest first id not above id
+        int group = Arrays.binarySearch(firstIds, id);
+        if (group < 0) {
+            group = -group - 2;
+        }
+        int block = blockOf(group, id);
+        if (block < 0) {
+            return Optional.empty();
+        }
+        return read(block).stream().filter(run -> run.id() == id).findFirst();
+    }
+
+    // The block holding the run with the id, -1 if the group of ids does not have it
+    private int blockOf(int group, long id) {
+        byte[] bytes = decompress(buffer.slice((int) idOffsets[group], idLengths[group]));
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            int count = in.readInt();
+            long current = firstIds[group];
+            for (int i = 0; i < count; i++) {
+                current += in.readLong();
+                int block = in.readInt();
+                if (current >= id) {
+                    return current == id ? block : -1;
+                }
+            }
+            return -1;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupt ids " + group + " in " + file, e);
+        }
+    }
+
+    /**
+     * The runs started in the half-open range [from, to), by started_on and id.
+     */
+    List<Run> findStartedBetween(LocalDateTime from, LocalDateTime to) {
+        // The index is in whole seconds, rounded down, which can only include a block too many
+        long fromSecond = epochSecond(from);
+        long toSecond = epochSecond(to);
+        List<Run> found = new ArrayList<>();
+        for (int block = 0; block < offsets.length; block++) {
+            if (maxStartedOn[block] >= fromSecond && minStartedOn[block] <= toSecond) {
+                for (Run run : read(block)) {
+                    if (!run.startedOn().isBefore(from) && run.startedOn().isBefore(to)) {
+                        found.add(run);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    private List<Run> read(int block) {
+        byte[] bytes = decompress(buffer.slice((int) offsets[block], lengths[block]));
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            int count = in.readInt();
+            List<Run> runs = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long id = in.readLong();
+                String title = in.readUTF();
+                LocalDateTime startedOn = LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+                LocalDateTime completedOn = LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+                int kilometers = in.readInt();
+                Location location = Location.of(in.readUTF());
+                Geo start = in.readBoolean() ? new Geo(in.readDouble(), in.readDouble()) : null;
+                int version = in.readInt();
+                runs.add(new Run(id, title, startedOn, completedOn, kilometers, location, start, version));
+            }
+            return runs;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupt block " + block + " in " + file, e);
+        }
+    }
+
+    private static byte[] compress(List<Run> runs) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+            out.writeInt(runs.size());
+            for (Run run : runs) {
+                out.writeLong(run.id());
+                out.writeUTF(run.title());
+                writeTimestamp(out, run.startedOn());
+                writeTimestamp(out, run.completedOn());
+                out.writeInt(run.kilometers());
+                out.writeUTF(run.location().name());
+                out.writeBoolean(run.start() != null);
+                if (run.start() != null) {
+                    out.writeDouble(run.start().lat());
+                    out.writeDouble(run.start().lng());
+                }
+                out.writeInt(run.version() == null ? 0 : run.version());
+            }
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    // The ids of the runs at positions from to to of byId, each as the difference to the id
+    // before it, which is mostly small and compresses well, with the block holding the run
+    private static byte[] compressIds(List<Run> sorted, int[] byId, int from, int to, int blockSize) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+            out.writeInt(to - from);
+            long previous = sorted.get(byId[from]).id();
+            for (int i = from; i < to; i++) {
+                long id = sorted.get(byId[i]).id();
+                out.writeLong(id - previous);
+                out.writeInt(byId[i] / blockSize);
+                previous = id;
+            }
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] decompress(ByteBuffer compressed) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.remaining() * 4);
+            byte[] chunk = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(chunk);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Truncated block");
+                }
+                out.write(chunk, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new UncheckedIOException(new IOException("Corrupt block", e));
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void writeTimestamp(DataOutputStream out, LocalDateTime time) throws IOException {
+        out.writeLong(epochSecond(time));
+        out.writeInt(time.getNano());
+    }
+
+    private static long epochSecond(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,172 @@
+package com.bryanchow.runnerz.run;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * The segment files of archived runs in runnerz.tiering.directory, the cold tier behind the run table.
+ *
+ * The directory must be storage that every instance reads (a shared volume), because
+ * an archived partition is dropped from the database for all of them. All segments are
+ * mapped into memory when the application starts, segments this instance writes are
+ * added right away, and the ones written by other instances are picked up every
+ * runnerz.tiering.refresh-interval. The segments of a partition are named after it
+ * (run_y2024m01-0001.seg, ...). The repositories look here for runs that are not in the
+ * run table (anymore).
+ */
+@Component
+public class RunSegmentStore {
+
+    private static final Logger log = LoggerFactory.getLogger(RunSegmentStore.class);
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("(run_y\\d{4}m\\d{2})-\\d{4}\\.seg");
+
+    private final RunTieringProperties properties;
+    // Oldest first, lookups go through the newest first. Replaced as a whole under the lock,
+    // so lookups read a consistent list without taking it
+    private volatile List<RunSegment> segments = List.of();
+
+    public RunSegmentStore(RunTieringProperties properties) {
+        this.properties = properties;
+        try {
+            refresh();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open the run segments in " + properties.directory(), e);
+        }
+        log.info("Opened {} run segments in {}", segments.size(), properties.directory());
+    }
+
+    // Picks up the segments other instances wrote to the shared directory, and forgets deleted ones
+    @Scheduled(fixedDelayString = "${runnerz.tiering.refresh-interval:1m}")
+    public void refreshSegments() {
+        try {
+            refresh();
+        } catch (IOException | UncheckedIOException e) {
+            // The segments opened so far stay available, the next refresh tries again
+            log.warn("Could not refresh the run segments in {}: {}", properties.directory(), e.getMessage());
+        }
+    }
+
+    synchronized void refresh() throws IOException {
+        if (!Files.isDirectory(properties.directory())) {
+            return;
+        }
+        Map<Path, RunSegment> opened = new HashMap<>();
+        segments.forEach(segment -> opened.put(segment.file(), segment));
+        List<RunSegment> current = new ArrayList<>();
+        // Segments are written to a temporary file and moved into place, so every file listed here is complete
+        for (Path file : segmentFiles()) {
+            RunSegment segment = opened.get(file);
+            current.add(segment != null ? segment : RunSegment.open(file));
+        }
+        segments = List.copyOf(current);
+    }
+
+    /**
+     * Writes runs of a partition to a segment and makes them available to lookups.
+     *
+     * @param partition the partition the runs were archived from
+     * @param part      the number of the segment within the partition, from 1
+     * @return the segment file
+     */
+    synchronized Path add(String partition, int part, List<Run> runs) throws IOException {
+        Files.createDirectories(properties.directory());
+        // Zero-padded, so the files sort by month and then in the order they were written
+        Path file = properties.directory().resolve("%s-%04d.seg".formatted(partition, part));
+        RunSegment.write(file, runs, properties.blockSize());
+        List<RunSegment> current = new ArrayList<>(segments);
+        current.removeIf(segment -> segment.file().equals(file));
+        current.add(RunSegment.open(file));
+        current.sort(Comparator.comparing(RunSegment::file));
+        segments = List.copyOf(current);
+        return file;
+    }
+
+    /**
+     * Deletes the segments of a partition, left by an archiving that did not commit.
+     * The runs of the partition are still in the run table then, and are written again.
+     * Also deletes the ones this instance never opened, e.g. left by another instance.
+     */
+    synchronized void remove(String partition) throws IOException {
+        if (!Files.isDirectory(properties.directory())) {
+            return;
+        }
+        for (Path file : segmentFiles()) {
+            if (partitionOf(file).equals(partition)) {
+                Files.deleteIfExists(file);
+            }
+        }
+        segments = segments.stream().filter(segment -> !partitionOf(segment.file()).equals(partition)).toList();
+    }
+
+    // The number of segments of a partition that this instance can read
+    int segmentCount(String partition) {
+        return (int) segments.stream().filter(segment -> partitionOf(segment.file()).equals(partition)).count();
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(properties.directory())) {
+            return files.filter(f -> SEGMENT_NAME.matcher(f.getFileName().toString()).matches()).sorted().toList();
+        }
+    }
+
+    private static String partitionOf(Path file) {
+        Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+        return matcher.matches() ? matcher.group(1) : "";
+    }
+
+    // The highest id of an archived run, 0 if there are none
+    public long maxId() {
+        return segments.stream().mapToLong(RunSegment::maxId).max().orElse(0);
+    }
+
+    public Optional<Run> findById(Long id) {
+        List<RunSegment> current = segments;
+        for (int i = current.size() - 1; i >= 0; i--) {
+            Optional<Run> run = current.get(i).findById(id);
+            if (run.isPresent()) {
+                return run;
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Adds the archived runs started in [from, to) to the runs found in the run table.
+     * A run in both (archived, but its delete not committed) is taken from the run table.
+     *
+     * @return all runs started in the range, by started_on and id
+     */
+    public List<Run> withArchivedStartedBetween(List<Run> hot, LocalDateTime from, LocalDateTime to) {
+        List<RunSegment> current = segments;
+        if (current.isEmpty()) {
+            return hot;
+        }
+        Map<Long, Run> runs = new LinkedHashMap<>();
+        for (RunSegment segment : current) {
+            segment.findStartedBetween(from, to).forEach(run -> runs.put(run.id(), run));
+        }
+        hot.forEach(run -> runs.put(run.id(), run));
+        List<Run> all = new ArrayList<>(runs.values());
+        all.sort(Comparator.comparing(Run::startedOn).thenComparing(Run::id));
+        return all;
+    }
+}
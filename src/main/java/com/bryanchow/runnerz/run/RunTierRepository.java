@@ -0,0 +1,41 @@
+package com.bryanchow.runnerz.run;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Custom repository fragment for reading runs from both tiers: the run table,
+ * and the segment files of archived runs (see RunPartitionMaintainer).
+ * RunRepository extends this interface, and Spring Data picks up the
+ * implementation from RunTierRepositoryImpl by naming convention.
+ */
+public interface RunTierRepository {
+
+    /**
+     * Find a run by id, in the run table or else in the archived runs.
+     * Replaces findById of ListCrudRepository, as fragments take precedence over it.
+     *
+     * @param id the id of the run
+     * @return the run, or empty if it exists in neither tier
+     */
+    Optional<Run> findById(Long id);
+
+    /**
+     * Find the runs started in the half-open range [from, to), in both tiers.
+     * The bounds are compared directly against the partition key started_on,
+     * which lets Postgres skip the monthly partitions that cannot contain matching runs.
+     *
+     * @return the runs by started_on and id
+     */
+    List<Run> findAllStartedBetween(LocalDateTime from, LocalDateTime to);
+
+    /**
+     * Whether a run is only found in the archived runs. Archived runs are read-only,
+     * so updating or deleting one matches no row of the run table.
+     *
+     * @param id the id of the run
+     * @return true if the run is archived and no longer in the run table
+     */
+    boolean isArchived(Long id);
+}
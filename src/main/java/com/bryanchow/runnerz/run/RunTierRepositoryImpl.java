@@ -0,0 +1,50 @@
+package com.bryanchow.runnerz.run;
+
+import org.springframework.jdbc.core.simple.JdbcClient;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+// Implementation of the RunTierRepository fragment, mixed into RunRepository by Spring Data
+class RunTierRepositoryImpl implements RunTierRepository {
+
+    private final JdbcClient jdbcClient;
+    private final RunSegmentStore segmentStore;
+
+    RunTierRepositoryImpl(JdbcClient jdbcClient, RunSegmentStore segmentStore) {
+        this.jdbcClient = jdbcClient;
+        this.segmentStore = segmentStore;
+    }
+
+    @Override
+    public Optional<Run> findById(Long id) {
+        // The run table first, most lookups are for recent runs
+        return jdbcClient.sql("SELECT " + RunRowMapper.COLUMNS + " FROM run WHERE id = :id")
+                .param("id", id)
+                .query(RunRowMapper.INSTANCE)
+                .optional()
+                .or(() -> segmentStore.findById(id));
+    }
+
+    @Override
+    public List<Run> findAllStartedBetween(LocalDateTime from, LocalDateTime to) {
+        List<Run> hot = jdbcClient.sql(JdbcClientRunRepository.FIND_STARTED_BETWEEN)
+                .param("from", from)
+                .param("to", to)
+                .query(RunRowMapper.INSTANCE)
+                .list();
+        return segmentStore.withArchivedStartedBetween(hot, from, to);
+    }
+
+    @Override
+    public boolean isArchived(Long id) {
+        // The segments first, they are in memory and usually do not have the run.
+        // A run in both (archived, but its partition not dropped yet) is still in the run table.
+        return segmentStore.findById(id).isPresent()
+                && !jdbcClient.sql("SELECT EXISTS (SELECT 1 FROM run WHERE id = :id)")
+                        .param("id", id)
+                        .query(Boolean.class)
+                        .single();
+    }
+}
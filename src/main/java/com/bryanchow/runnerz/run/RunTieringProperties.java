@@ -0,0 +1,25 @@
+package com.bryanchow.runnerz.run;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Configuration of the segment files that partitions are archived to (see RunPartitionMaintainer),
+ * bound from the runnerz.tiering.* properties.
+ *
+ * @param directory    where the segment files are kept, storage that every instance reads
+ * @param segmentSize  the most runs written to one segment file
+ * @param blockSize    the runs compressed together, the unit a lookup decompresses
+ * @param keepDetached how long an archived partition is kept as a detached table before it is dropped
+ */
+@ConfigurationProperties(prefix = "runnerz.tiering")
+public record RunTieringProperties(
+        @DefaultValue("segments") Path directory,
+        @DefaultValue("100000") int segmentSize,
+        @DefaultValue("256") int blockSize,
+        @DefaultValue("7d") Duration keepDetached
+) {
+}
@@ -0,0 +1,148 @@
+package com.bryanchow.runnerz.run;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * In-memory inverted index over run titles, the counterpart of the
+ * full-text and trigram indexes that Postgres keeps on the run table.
+ *
+ * Titles are split into lower-case words, and each word points to the runs
+ * containing it. To tolerate typos, every distinct word is also indexed by its
+ * trigrams (like pg_trgm), so a misspelled query word is matched against the
+ * handful of known words sharing a trigram with it instead of against every run.
+ */
+class RunTitleIndex {
+
+    // Same default as pg_trgm's similarity threshold
+    static final double SIMILARITY_THRESHOLD = 0.3;
+
+    // Best matches first: highest score, then lowest id
+    private static final Comparator<Map.Entry<Long, Double>> RANKING =
+            Map.Entry.<Long, Double>comparingByValue(Comparator.reverseOrder()).thenComparing(Map.Entry.comparingByKey());
+
+    private final Map<Long, Run> runs = new HashMap<>();
+    private final Map<String, Set<Long>> runsByWord = new HashMap<>();
+    private final Map<String, Set<String>> wordsByTrigram = new HashMap<>();
+
+    void add(Run run) {
+        remove(run.id());
+        runs.put(run.id(), run);
+        for (String word : words(run.title())) {
+            Set<Long> ids = runsByWord.computeIfAbsent(word, w -> new HashSet<>());
+            if (ids.isEmpty()) {
+                trigrams(word).forEach(trigram -> wordsByTrigram.computeIfAbsent(trigram, t -> new HashSet<>()).add(word));
+            }
+            ids.add(run.id());
+        }
+    }
+
+    void remove(Long id) {
+        Run run = runs.remove(id);
+        if (run == null) {
+            return;
+        }
+        for (String word : words(run.title())) {
+            Set<Long> ids = runsByWord.get(word);
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                // Drop words that no longer occur in any title
+                runsByWord.remove(word);
+                trigrams(word).forEach(trigram -> {
+                    Set<String> words = wordsByTrigram.get(trigram);
+                    words.remove(word);
+                    if (words.isEmpty()) {
+                        wordsByTrigram.remove(trigram);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Find the runs whose titles best match the query.
+     * Each query word contributes the similarity of the closest indexed word
+     * (1.0 for an exact match), and runs are ranked by the sum of those scores.
+     */
+    List<Run> search(String query, int limit, int offset) {
+        Map<Long, Double> scores = new HashMap<>();
+        for (String word : words(query)) {
+            // The best similarity each run reaches for this query word
+            Map<Long, Double> best = new HashMap<>();
+            similarWords(word).forEach((match, similarity) ->
+                    runsByWord.get(match).forEach(id -> best.merge(id, similarity, Math::max)));
+            best.forEach((id, similarity) -> scores.merge(id, similarity, Double::sum));
+        }
+        if (limit <= 0 || offset >= scores.size()) {
+            return List.of();
+        }
+
+        // Only the best offset + limit matches are kept, in a heap with the worst of them on top,
+        // so a common word matching most runs costs O(m log k) instead of sorting all m matches
+        int wanted = (int) Math.min((long) offset + limit, scores.size());
+        PriorityQueue<Map.Entry<Long, Double>> best = new PriorityQueue<>(wanted, RANKING.reversed());
+        for (Map.Entry<Long, Double> entry : scores.entrySet()) {
+            if (best.size() < wanted) {
+                best.add(entry);
+            } else if (RANKING.compare(entry, best.peek()) < 0) {
+                best.poll();
+                best.add(entry);
+            }
+        }
+        return best.stream()
+                .sorted(RANKING)
+                .skip(offset)
+                .map(entry -> runs.get(entry.getKey()))
+                .toList();
+    }
+
+    // Indexed words that are equal or similar enough to the given word, with their similarity
+    private Map<String, Double> similarWords(String word) {
+        Map<String, Double> matches = new HashMap<>();
+        if (runsByWord.containsKey(word)) {
+            matches.put(word, 1.0);
+        }
+        Set<String> trigrams = trigrams(word);
+        Map<String, Integer> shared = new HashMap<>();
+        for (String trigram : trigrams) {
+            for (String candidate : wordsByTrigram.getOrDefault(trigram, Set.of())) {
+                shared.merge(candidate, 1, Integer::sum);
+            }
+        }
+        shared.forEach((candidate, common) -> {
+            // Jaccard similarity of the trigram sets, as computed by pg_trgm
+            double similarity = (double) common / (trigrams.size() + trigrams(candidate).size() - common);
+            if (similarity >= SIMILARITY_THRESHOLD) {
+                matches.merge(candidate, similarity, Math::max);
+            }
+        });
+        return matches;
+    }
+
+    static Set<String> words(String text) {
+        Set<String> words = new LinkedHashSet<>();
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    static Set<String> trigrams(String word) {
+        // Pad like pg_trgm: two spaces in front and one at the end of each word
+        String padded = "  " + word + " ";
+        Set<String> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+}
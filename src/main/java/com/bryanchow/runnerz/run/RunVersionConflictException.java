@@ -0,0 +1,14 @@
+package com.bryanchow.runnerz.run;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+// Thrown when a write was based on a stale version of a run,
+// i.e. somebody else modified the run after the client last read it.
+@ResponseStatus(HttpStatus.CONFLICT)
+public class RunVersionConflictException extends RuntimeException {
+
+    public RunVersionConflictException() {
+        super("Run was modified by another request");
+    }
+}
@@ -0,0 +1,93 @@
+package com.bryanchow.runnerz.run;
+
+import org.springframework.data.relational.core.mapping.event.AbstractRelationalEventListener;
+import org.springframework.data.relational.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.relational.core.mapping.event.AfterSaveEvent;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A counter that changes every time the run table is written to.
+ *
+ * Anything derived from the runs (e.g. the cached responses of RunResponseCacheFilter)
+ * remembers the generation it was computed at and is stale once the generation moved on.
+ *
+ * The counter is bumped after each save and delete through RunRepository, and once
+ * more when the surrounding transaction completes. Otherwise a reader could fetch the
+ * old rows between the write and the commit and store them under the new generation.
+ *
+ * Writes by other instances of the application are seen through the run_write_seq
+ * sequence. Each runnerz.response-cache.sync-interval, every instance takes a value
+ * from it if it committed writes since the last time, and reads its last value.
+ * A write on another instance therefore moves the generation on within two intervals.
+ * The value is not taken right after the commit: the connection of the write is still
+ * held then, and taking a second one per write can use up the connection pool.
+ */
+@Component
+public class RunWriteGeneration extends AbstractRelationalEventListener<Run> {
+
+    private final AtomicLong generation = new AtomicLong();
+    // Whether writes were committed that the other instances have not been told about yet
+    private final AtomicBoolean unpublished = new AtomicBoolean();
+    private final JdbcClient jdbcClient;
+    // The last value of run_write_seq seen, counted into the generation
+    private volatile long shared;
+
+    public RunWriteGeneration(JdbcClient jdbcClient) {
+        this.jdbcClient = jdbcClient;
+    }
+
+    public long current() {
+        return generation.get() + shared;
+    }
+
+    public void bump() {
+        generation.incrementAndGet();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    unpublished.set(true);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    generation.incrementAndGet();
+                }
+            });
+        } else {
+            unpublished.set(true);
+        }
+    }
+
+    // Tells the other instances about the writes committed since the last sync, and picks up theirs.
+    // If this fails, the scheduler logs it and the writes are published with the next sync.
+    @Scheduled(fixedDelayString = "${runnerz.response-cache.sync-interval:1s}")
+    void sync() {
+        if (unpublished.getAndSet(false)) {
+            try {
+                jdbcClient.sql("SELECT nextval('run_write_seq')").query(Long.class).single();
+            } catch (RuntimeException e) {
+                unpublished.set(true);
+                throw e;
+            }
+        }
+        shared = jdbcClient.sql("SELECT last_value FROM run_write_seq").query(Long.class).single();
+    }
+
+    @Override
+    protected void onAfterSave(AfterSaveEvent<Run> event) {
+        bump();
+    }
+
+    @Override
+    protected void onAfterDelete(AfterDeleteEvent<Run> event) {
+        bump();
+    }
+}
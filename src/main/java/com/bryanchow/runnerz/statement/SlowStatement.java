@@ -0,0 +1,18 @@
+package com.bryanchow.runnerz.statement;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * A statement execution that took longer than runnerz.statements.slow-threshold.
+ *
+ * @param name       the name the repository gave the statement, e.g. run.findAll
+ * @param sql        the SQL text
+ * @param parameters the bind parameters with their values redacted, e.g. {id=Long}
+ * @param duration   how long the statement took, including mapping the rows
+ * @param rows       the rows returned, or changed for updates
+ * @param bytes      the bytes read from the result set
+ * @param at         when the statement finished
+ */
+public record SlowStatement(String name, String sql, String parameters, Duration duration, long rows, long bytes, Instant at) {
+}
@@ -0,0 +1,27 @@
+package com.bryanchow.runnerz.statement;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Lists the slowest SQL statements since startup at /actuator/statements.
+ * The metrics of all statements are under /actuator/metrics/runnerz.sql.statements.
+ */
+@Component
+@Endpoint(id = "statements")
+public class StatementEndpoint {
+
+    private final StatementRecorder recorder;
+
+    public StatementEndpoint(StatementRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    @ReadOperation
+    public List<SlowStatement> slowest() {
+        return recorder.slowest();
+    }
+}
@@ -0,0 +1,25 @@
+package com.bryanchow.runnerz.statement;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the statement timing, bound from the runnerz.statements.* properties.
+ *
+ * @param slowThreshold statements taking longer than this are logged and kept for /actuator/statements
+ * @param slowestKept   the number of slowest statements kept for /actuator/statements
+ * @param countBytes    whether the bytes read from result sets are counted in runnerz.sql.bytes,
+ *                      which reads every column of every row a second time
+ * @param histograms    whether the runnerz.sql.statements timers publish a percentile histogram,
+ *                      a set of buckets per statement name, for percentiles aggregated across instances
+ */
+@ConfigurationProperties(prefix = "runnerz.statements")
+public record StatementProperties(
+        @DefaultValue("200ms") Duration slowThreshold,
+        @DefaultValue("20") int slowestKept,
+        @DefaultValue("false") boolean countBytes,
+        @DefaultValue("false") boolean histograms
+) {
+}
@@ -0,0 +1,153 @@
+package com.bryanchow.runnerz.statement;
+
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.simple.JdbcClient;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A named SQL statement whose executions are timed by StatementRecorder.
+ *
+ * Mirrors the part of the JdbcClient API the repositories use:
+ * statements.sql("run.findById", "SELECT ... WHERE id = :id").param("id", id).optional(RunRowMapper.INSTANCE)
+ *
+ * The bind parameters are only kept as references, and turned into their redacted
+ * description when the statement turns out to be slow.
+ */
+public class TimedStatement {
+
+    private final StatementRecorder recorder;
+    private final String name;
+    private final String sql;
+    private final JdbcClient.StatementSpec spec;
+    private Map<String, Object> namedParams;
+    private List<?> positionalParams;
+
+    TimedStatement(StatementRecorder recorder, JdbcClient jdbcClient, String name, String sql) {
+        this.recorder = recorder;
+        this.name = name;
+        this.sql = sql;
+        this.spec = jdbcClient.sql(sql);
+    }
+
+    public TimedStatement param(String name, Object value) {
+        if (namedParams == null) {
+            namedParams = new LinkedHashMap<>();
+        }
+        namedParams.put(name, value);
+        spec.param(name, value);
+        return this;
+    }
+
+    public TimedStatement params(List<?> values) {
+        positionalParams = values;
+        spec.params(values);
+        return this;
+    }
+
+    public <T> List<T> list(RowMapper<T> rowMapper) {
+        CountingRowMapper<T> counting = new CountingRowMapper<>(rowMapper, recorder.countsBytes());
+        long start = System.nanoTime();
+        try {
+            return spec.query(counting).list();
+        } finally {
+            recorder.record(this, System.nanoTime() - start, counting.rows, counting.bytes);
+        }
+    }
+
+    public <T> Optional<T> optional(RowMapper<T> rowMapper) {
+        CountingRowMapper<T> counting = new CountingRowMapper<>(rowMapper, recorder.countsBytes());
+        long start = System.nanoTime();
+        try {
+            return spec.query(counting).optional();
+        } finally {
+            recorder.record(this, System.nanoTime() - start, counting.rows, counting.bytes);
+        }
+    }
+
+    public int update() {
+        int updated = 0;
+        long start = System.nanoTime();
+        try {
+            updated = spec.update();
+            return updated;
+        } finally {
+            recorder.record(this, System.nanoTime() - start, updated, 0);
+        }
+    }
+
+    String name() {
+        return name;
+    }
+
+    String sql() {
+        return sql;
+    }
+
+    // The parameter names and types, never their values, which may contain personal data
+    String redactedParameters() {
+        if (namedParams != null) {
+            StringBuilder description = new StringBuilder("{");
+            namedParams.forEach((param, value) -> {
+                if (description.length() > 1) {
+                    description.append(", ");
+                }
+                description.append(param).append('=').append(typeOf(value));
+            });
+            return description.append('}').toString();
+        }
+        if (positionalParams != null) {
+            return positionalParams.stream().map(TimedStatement::typeOf).toList().toString();
+        }
+        return "[]";
+    }
+
+    private static String typeOf(Object value) {
+        return value == null ? "null" : value.getClass().getSimpleName();
+    }
+
+    /**
+     * Counts the rows, and with runnerz.statements.count-bytes the bytes read, while mapping them.
+     *
+     * The bytes are the lengths of the column values as getBytes() returns them. The Postgres
+     * driver hands out the buffers it received from the server for all but bytea columns, so
+     * this is close to what came over the wire, without copying or converting anything.
+     */
+    private static final class CountingRowMapper<T> implements RowMapper<T> {
+
+        private final RowMapper<T> delegate;
+        private final boolean countBytes;
+        private int columns;
+        long rows;
+        long bytes;
+
+        CountingRowMapper(RowMapper<T> delegate, boolean countBytes) {
+            this.delegate = delegate;
+            this.countBytes = countBytes;
+        }
+
+        @Override
+        public T mapRow(ResultSet rs, int rowNum) throws SQLException {
+            if (!countBytes) {
+                rows++;
+                return delegate.mapRow(rs, rowNum);
+            }
+            if (rows == 0) {
+                columns = rs.getMetaData().getColumnCount();
+            }
+            for (int column = 1; column <= columns; column++) {
+                byte[] value = rs.getBytes(column);
+                if (value != null) {
+                    bytes += value.length;
+                }
+            }
+            rows++;
+            return delegate.mapRow(rs, rowNum);
+        }
+    }
+}
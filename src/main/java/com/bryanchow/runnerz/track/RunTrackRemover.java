@@ -0,0 +1,22 @@
+package com.bryanchow.runnerz.track;
+
+import com.bryanchow.runnerz.run.Run;
+import org.springframework.data.relational.core.mapping.event.AbstractRelationalEventListener;
+import org.springframework.data.relational.core.mapping.event.AfterDeleteEvent;
+import org.springframework.stereotype.Component;
+
+// Deletes the track of a run together with the run, in the same transaction
+@Component
+public class RunTrackRemover extends AbstractRelationalEventListener<Run> {
+
+    private final TrackRepository trackRepository;
+
+    public RunTrackRemover(TrackRepository trackRepository) {
+        this.trackRepository = trackRepository;
+    }
+
+    @Override
+    protected void onAfterDelete(AfterDeleteEvent<Run> event) {
+        trackRepository.delete((Long) event.getId().getValue());
+    }
+}
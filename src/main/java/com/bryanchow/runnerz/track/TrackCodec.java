@@ -0,0 +1,99 @@
+package com.bryanchow.runnerz.track;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The binary format of a chunk of track points.
+ *
+ * Coordinates are stored as fixed point numbers (1e-7 degrees, about 1 cm, and
+ * decimeters of elevation) and times as epoch milliseconds. The first point of a
+ * chunk is stored as is, every following point as the difference to the previous
+ * one. Consecutive GPS samples are close to each other, so the differences are
+ * small numbers, which are written as zigzag varints: a sample taken one second
+ * after the previous one, a few meters away, takes about 7 bytes instead of 32.
+ *
+ * Every chunk starts from absolute values, so chunks can be decoded independently.
+ */
+final class TrackCodec {
+
+    static final double COORDINATE_SCALE = 1e7;
+    static final double ELEVATION_SCALE = 10;
+
+    private TrackCodec() {
+    }
+
+    static byte[] encode(List<TrackPoint> points) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(points.size() * 8 + 5);
+        writeVarint(out, points.size());
+        long time = 0, latitude = 0, longitude = 0, elevation = 0;
+        for (TrackPoint point : points) {
+            long t = point.time().toInstant(ZoneOffset.UTC).toEpochMilli();
+            long lat = Math.round(point.latitude() * COORDINATE_SCALE);
+            long lon = Math.round(point.longitude() * COORDINATE_SCALE);
+            long ele = Math.round(point.elevation() * ELEVATION_SCALE);
+            writeVarint(out, zigzag(t - time));
+            writeVarint(out, zigzag(lat - latitude));
+            writeVarint(out, zigzag(lon - longitude));
+            writeVarint(out, zigzag(ele - elevation));
+            time = t;
+            latitude = lat;
+            longitude = lon;
+            elevation = ele;
+        }
+        return out.toByteArray();
+    }
+
+    static List<TrackPoint> decode(byte[] data) {
+        ByteBuffer in = ByteBuffer.wrap(data);
+        int count = (int) readVarint(in);
+        List<TrackPoint> points = new ArrayList<>(count);
+        long time = 0, latitude = 0, longitude = 0, elevation = 0;
+        for (int i = 0; i < count; i++) {
+            time += unzigzag(readVarint(in));
+            latitude += unzigzag(readVarint(in));
+            longitude += unzigzag(readVarint(in));
+            elevation += unzigzag(readVarint(in));
+            points.add(new TrackPoint(
+                    LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneOffset.UTC),
+                    latitude / COORDINATE_SCALE,
+                    longitude / COORDINATE_SCALE,
+                    elevation / ELEVATION_SCALE));
+        }
+        return points;
+    }
+
+    // Maps signed to unsigned numbers so that small negative differences stay small: 0, -1, 1, -2, ... -> 0, 1, 2, 3, ...
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    // Writes 7 bits per byte, the high bit marks that more bytes follow
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.bryanchow.runnerz.track;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+// Thrown when another upload appended to the same track while a chunk was being written,
+// the chunks committed before that are kept and the upload can be continued from them.
+@ResponseStatus(HttpStatus.CONFLICT)
+public class TrackConflictException extends RuntimeException {
+
+    public TrackConflictException() {
+        super("Track was appended to by another upload");
+    }
+}
@@ -0,0 +1,81 @@
+package com.bryanchow.runnerz.track;
+
+import com.bryanchow.runnerz.ratelimit.RateLimitCost;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+
+// Uploads and downloads the GPS track of a run as newline delimited JSON, one point per line
+@RestController
+@RequestMapping("/api/runs/{id}/track")
+public class TrackController {
+
+    static final String NDJSON = "application/x-ndjson";
+
+    private final TrackRecorder trackRecorder;
+    private final TrackRepository trackRepository;
+    private final ObjectMapper objectMapper;
+
+    public TrackController(TrackRecorder trackRecorder, TrackRepository trackRepository, ObjectMapper objectMapper) {
+        this.trackRecorder = trackRecorder;
+        this.trackRepository = trackRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * @PostMapping annotation maps HTTP POST requests with an NDJSON body to the upload method.
+     * The points are parsed from the request body while it is being received and appended
+     * to the track of the run, e.g. {"time":"2024-02-20T06:05:00","latitude":52.37,"longitude":4.89,"elevation":2.5}
+     * The kilometers of the run are updated to the distance of the track.
+     * Every chunk is written with a connection of its own, so the upload is not concurrency limited.
+     */
+    @RateLimitCost(value = 10, concurrencyLimited = false)
+    @PostMapping(consumes = NDJSON)
+    TrackSummary upload(@PathVariable Long id, InputStream body) throws IOException {
+        try (MappingIterator<TrackPoint> points = objectMapper.readerFor(TrackPoint.class).readValues(body)) {
+            return trackRecorder.append(id, points);
+        } catch (JsonProcessingException | RuntimeJsonMappingException | IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid track: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @GetMapping annotation maps HTTP GET requests to the download method.
+     * @RequestParam binds the resolution in seconds, e.g. ?resolution=10 returns at most one point per 10 seconds.
+     * The points are streamed to the client one chunk at a time, without holding a connection
+     * while they are sent, so the download is not concurrency limited.
+     */
+    @RateLimitCost(value = 5, concurrencyLimited = false)
+    @GetMapping(produces = NDJSON)
+    void download(@PathVariable Long id, @RequestParam(defaultValue = "1") int resolution, HttpServletResponse response) throws IOException {
+        if (resolution < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "resolution must be at least 1 second");
+        }
+        if (!trackRepository.exists(id)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Run " + id + " has no track");
+        }
+        response.setContentType(NDJSON);
+        try (SequenceWriter writer = objectMapper.writerFor(TrackPoint.class).withRootValueSeparator("\n").writeValues(response.getOutputStream())) {
+            TrackDownsampler downsampler = new TrackDownsampler(Duration.ofSeconds(resolution), point -> {
+                try {
+                    writer.write(point);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            trackRepository.forEachPoint(id, downsampler::accept);
+            downsampler.finish();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.bryanchow.runnerz.track;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
+
+/**
+ * Thins out a stream of track points to at most one point per resolution interval.
+ *
+ * The first point of every interval is kept, and the last point of the track is
+ * always kept, so the downsampled track starts and ends where the run did.
+ */
+class TrackDownsampler {
+
+    private final Duration resolution;
+    private final Consumer<TrackPoint> downstream;
+    private LocalDateTime nextTime;
+    private TrackPoint skipped;
+
+    TrackDownsampler(Duration resolution, Consumer<TrackPoint> downstream) {
+        this.resolution = resolution;
+        this.downstream = downstream;
+    }
+
+    void accept(TrackPoint point) {
+        if (nextTime == null || !point.time().isBefore(nextTime)) {
+            downstream.accept(point);
+            nextTime = point.time().plus(resolution);
+            skipped = null;
+        } else {
+            skipped = point;
+        }
+    }
+
+    // Passes on the last point of the track, if it was skipped
+    void finish() {
+        if (skipped != null) {
+            downstream.accept(skipped);
+            skipped = null;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.bryanchow.runnerz.track;
+
+import com.bryanchow.runnerz.user.Geo;
+
+import java.time.LocalDateTime;
+
+/**
+ * A GPS sample of a run, as recorded by the watch (usually one per second).
+ *
+ * @param time      when the sample was taken
+ * @param latitude  in degrees, -90 to 90
+ * @param longitude in degrees, -180 to 180
+ * @param elevation in meters above sea level
+ */
+public record TrackPoint(LocalDateTime time, double latitude, double longitude, double elevation) {
+
+    /**
+     * The distance to another point along the surface of the earth, in meters.
+     * Elevation is ignored, as it hardly changes the distance of a run.
+     */
+    public double metersTo(TrackPoint other) {
+        return Geo.kilometersBetween(latitude, longitude, other.latitude, other.longitude) * 1000;
+    }
+}
@@ -0,0 +1,16 @@
+package com.bryanchow.runnerz.track;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Configuration of the GPS track storage, bound from the runnerz.track.* properties.
+ *
+ * @param chunkSize how many points are stored per row of the run_track_chunk table
+ *                  (600 is ten minutes of a watch recording once per second)
+ */
+@ConfigurationProperties(prefix = "runnerz.track")
+public record TrackProperties(
+        @DefaultValue("600") int chunkSize
+) {
+}
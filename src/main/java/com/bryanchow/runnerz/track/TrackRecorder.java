@@ -0,0 +1,154 @@
+package com.bryanchow.runnerz.track;
+
+import com.bryanchow.runnerz.run.Run;
+import com.bryanchow.runnerz.run.RunNotFoundException;
+import com.bryanchow.runnerz.run.RunRepository;
+import com.bryanchow.runnerz.user.Geo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Appends uploaded GPS points to the track of a run.
+ *
+ * The points are read one at a time and written in chunks of runnerz.track.chunk-size
+ * points, so an upload never holds more than one chunk in memory. Every chunk is
+ * committed on its own, so an interrupted upload keeps the chunks written so far and
+ * can be continued with the remaining points. Afterwards the kilometers of the run are
+ * set to the distance of the track, and a run without a start position starts where its track does.
+ *
+ * Each chunk is written under a lock of the run row, after checking that no other
+ * upload appended to the track since this one read or wrote its last chunk. Of two
+ * concurrent uploads to the same run, the one that falls behind fails with
+ * TrackConflictException (409 Conflict) and can be continued from the stored chunks.
+ */
+@Component
+public class TrackRecorder {
+
+    private static final Logger log = LoggerFactory.getLogger(TrackRecorder.class);
+
+    // How many times the kilometers are re-applied when the run is changed at the same time
+    private static final int MAX_UPDATE_ATTEMPTS = 3;
+
+    private final TrackRepository trackRepository;
+    private final RunRepository runRepository;
+    private final TrackProperties properties;
+    private final TransactionTemplate transactionTemplate;
+
+    public TrackRecorder(TrackRepository trackRepository, RunRepository runRepository, TrackProperties properties,
+                         PlatformTransactionManager transactionManager) {
+        this.trackRepository = trackRepository;
+        this.runRepository = runRepository;
+        this.properties = properties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Appends points to the track of a run.
+     *
+     * @throws IllegalArgumentException if a point is out of range or older than the point before it
+     */
+    public TrackSummary append(Long runId, Iterator<TrackPoint> points) {
+        if (!runRepository.existsById(runId)) {
+            throw new RunNotFoundException();
+        }
+        var last = trackRepository.findLastChunk(runId);
+        int seq = last.map(chunk -> chunk.seq() + 1).orElse(0);
+        TrackPoint previous = last.map(TrackRepository.LastChunk::lastPoint).orElse(null);
+        TrackPoint first = null;
+
+        List<TrackPoint> chunk = new ArrayList<>(properties.chunkSize());
+        double meters = 0;
+        long count = 0;
+        int chunks = 0;
+        while (points.hasNext()) {
+            TrackPoint point = points.next();
+            validate(point, previous);
+            if (previous != null) {
+                meters += previous.metersTo(point);
+            }
+            if (seq == 0 && first == null) {
+                first = point;
+            }
+            chunk.add(point);
+            previous = point;
+            count++;
+            if (chunk.size() == properties.chunkSize()) {
+                insert(runId, seq++, chunk, meters);
+                chunks++;
+                chunk.clear();
+                meters = 0;
+            }
+        }
+        if (!chunk.isEmpty()) {
+            insert(runId, seq, chunk, meters);
+            chunks++;
+        }
+
+        double kilometers = trackRepository.meters(runId) / 1000;
+        updateRun(runId, (int) Math.round(kilometers), first);
+        log.debug("Appended {} points in {} chunks to the track of run {}", count, chunks, runId);
+        return new TrackSummary(count, chunks, kilometers);
+    }
+
+    // Stores a chunk in a transaction of its own, unless another upload got there first
+    private void insert(Long runId, int seq, List<TrackPoint> chunk, double meters) {
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!trackRepository.lockRun(runId)) {
+                throw new RunNotFoundException();
+            }
+            if (trackRepository.nextSeq(runId) != seq) {
+                throw new TrackConflictException();
+            }
+            trackRepository.insert(runId, seq, chunk, meters);
+        });
+    }
+
+    private static void validate(TrackPoint point, TrackPoint previous) {
+        if (point.time() == null || !Geo.isValid(point.latitude(), point.longitude())) {
+            throw new IllegalArgumentException("Invalid track point " + point);
+        }
+        if (previous != null && point.time().isBefore(previous.time())) {
+            throw new IllegalArgumentException("Track point " + point + " is older than the point before it");
+        }
+    }
+
+    /**
+     * Sets the kilometers of a run to the distance of its track, and its start position
+     * to the first point of the track if the position is unknown. The kilometers of a run
+     * are whole numbers, tracks shorter than half a kilometer leave them as they are.
+     */
+    private void updateRun(Long runId, int trackKilometers, TrackPoint first) {
+        for (int attempt = 1; ; attempt++) {
+            Run current = runRepository.findById(runId).orElseThrow(RunNotFoundException::new);
+            int kilometers = trackKilometers < 1 ? current.kilometers() : trackKilometers;
+            Geo start = current.start() == null && first != null ? new Geo(first.latitude(), first.longitude()) : current.start();
+            if (kilometers == current.kilometers() && Objects.equals(start, current.start())) {
+                return;
+            }
+            try {
+                runRepository.patch(current, new Run(current.id(),
+                        current.title(),
+                        current.startedOn(),
+                        current.completedOn(),
+                        kilometers,
+                        current.location(),
+                        start,
+                        current.version()));
+                return;
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt == MAX_UPDATE_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+}
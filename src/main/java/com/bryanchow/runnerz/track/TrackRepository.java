@@ -0,0 +1,119 @@
+package com.bryanchow.runnerz.track;
+
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+// Stores the GPS tracks of runs in the run_track_chunk table, in chunks encoded with TrackCodec
+@Repository
+public class TrackRepository {
+
+    // A stored chunk of a track, still encoded
+    private record Chunk(int seq, byte[] data) {
+    }
+
+    // The last stored chunk of a track, which new points are appended after
+    record LastChunk(int seq, TrackPoint lastPoint) {
+    }
+
+    // How many chunks are read from the database at a time when a track is read
+    private static final int PAGE_SIZE = 8;
+
+    private final JdbcClient jdbcClient;
+
+    public TrackRepository(JdbcClient jdbcClient) {
+        this.jdbcClient = jdbcClient;
+    }
+
+    // Locks the row of the run until the end of the transaction, false if there is no such run
+    boolean lockRun(Long runId) {
+        return jdbcClient.sql("SELECT id FROM run WHERE id = :runId FOR UPDATE")
+                .param("runId", runId)
+                .query(Long.class)
+                .optional()
+                .isPresent();
+    }
+
+    // The seq of the chunk that comes after the stored ones
+    int nextSeq(Long runId) {
+        return jdbcClient.sql("SELECT coalesce(max(seq) + 1, 0) FROM run_track_chunk WHERE run_id = :runId")
+                .param("runId", runId)
+                .query(Integer.class)
+                .single();
+    }
+
+    Optional<LastChunk> findLastChunk(Long runId) {
+        return jdbcClient.sql("SELECT seq, data FROM run_track_chunk WHERE run_id = :runId ORDER BY seq DESC LIMIT 1")
+                .param("runId", runId)
+                .query((rs, rowNum) -> new LastChunk(rs.getInt("seq"), TrackCodec.decode(rs.getBytes("data")).getLast()))
+                .optional();
+    }
+
+    /**
+     * Stores a chunk of points.
+     *
+     * @param meters the distance covered by the points, including the way from the last point of the previous chunk
+     */
+    void insert(Long runId, int seq, List<TrackPoint> points, double meters) {
+        jdbcClient.sql("""
+                        INSERT INTO run_track_chunk (run_id, seq, first_time, last_time, points, meters, data)
+                        VALUES (?, ?, ?, ?, ?, ?, ?)""")
+                .params(runId, seq, points.getFirst().time(), points.getLast().time(), points.size(), meters, TrackCodec.encode(points))
+                .update();
+    }
+
+    // The distance of the whole track, summed up from the chunks without decoding them
+    double meters(Long runId) {
+        return jdbcClient.sql("SELECT coalesce(sum(meters), 0) FROM run_track_chunk WHERE run_id = :runId")
+                .param("runId", runId)
+                .query(Double.class)
+                .single();
+    }
+
+    /**
+     * Passes every point of a track to the consumer, decoding one chunk at a time.
+     *
+     * The chunks are read in pages of PAGE_SIZE chunks, and the connection is given back
+     * to the pool before the points of a page are passed on. A download to a slow client
+     * therefore holds a connection only while a page is read, not while it is sent.
+     * Chunks appended during the download are included, as they come after the ones read.
+     */
+    void forEachPoint(Long runId, Consumer<TrackPoint> consumer) {
+        int after = -1;
+        while (true) {
+            List<Chunk> page = jdbcClient.sql("""
+                            SELECT seq, data FROM run_track_chunk
+                            WHERE run_id = :runId AND seq > :after
+                            ORDER BY seq
+                            LIMIT :limit""")
+                    .param("runId", runId)
+                    .param("after", after)
+                    .param("limit", PAGE_SIZE)
+                    .query((rs, rowNum) -> new Chunk(rs.getInt("seq"), rs.getBytes("data")))
+                    .list();
+            for (Chunk chunk : page) {
+                TrackCodec.decode(chunk.data()).forEach(consumer);
+            }
+            if (page.size() < PAGE_SIZE) {
+                return;
+            }
+            after = page.getLast().seq();
+        }
+    }
+
+    boolean exists(Long runId) {
+        return jdbcClient.sql("SELECT count(*) > 0 FROM run_track_chunk WHERE run_id = :runId")
+                .param("runId", runId)
+                .query(Boolean.class)
+                .single();
+    }
+
+    public void delete(Long runId) {
+        jdbcClient.sql("DELETE FROM run_track_chunk WHERE run_id = :runId")
+                .param("runId", runId)
+                .update();
+    }
+}
@@ -0,0 +1,11 @@
+package com.bryanchow.runnerz.track;
+
+/**
+ * The result of a track upload.
+ *
+ * @param points     the number of points appended by the upload
+ * @param chunks     the number of chunks the points were stored in
+ * @param kilometers the distance of the whole track so far
+ */
+public record TrackSummary(long points, int chunks, double kilometers) {
+}
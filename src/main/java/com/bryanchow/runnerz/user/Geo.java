@@ -4,4 +4,28 @@ public record Geo(
         double lat,
         double lng
 ) {
-}
\ No newline at end of file
+
+    // Mean radius of the earth in kilometers
+    private static final double EARTH_RADIUS_KM = 6371;
+
+    // The distance to another position along the surface of the earth
+    public double kilometersTo(Geo other) {
+        return kilometersBetween(lat, lng, other.lat, other.lng);
+    }
+
+    // The distance between two positions along the surface of the earth (haversine formula)
+    public static double kilometersBetween(double lat1, double lng1, double lat2, double lng2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double sinLat = Math.sin((phi2 - phi1) / 2);
+        double sinLng = Math.sin(Math.toRadians(lng2 - lng1) / 2);
+        double a = sinLat * sinLat + Math.cos(phi1) * Math.cos(phi2) * sinLng * sinLng;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    // Whether a latitude is between -90 and 90 and a longitude between -180 and 180.
+    // NaN fails every comparison, so it is never valid, and neither are the infinities.
+    public static boolean isValid(double lat, double lng) {
+        return Math.abs(lat) <= 90 && Math.abs(lng) <= 180;
+    }
+}
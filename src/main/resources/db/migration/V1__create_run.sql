@@ -1,6 +1,6 @@
-DROP TABLE IF EXISTS Run;
-
-CREATE TABLE IF NOT EXISTS Run (
+-- The run table of the first release. Databases created by that release already have it,
+-- and are taken as being at this version (spring.flyway.baseline-on-migrate).
+CREATE TABLE Run (
     id INT NOT NULL,
     title VARCHAR(250) NOT NULL,
     started_on TIMESTAMP NOT NULL,
@@ -9,4 +9,4 @@ CREATE TABLE IF NOT EXISTS Run (
     location VARCHAR(10) NOT NULL,
     version INT,
     PRIMARY KEY (id)
-);
\ No newline at end of file
+);
@@ -0,0 +1,71 @@
+-- Converts the run table to 64 bit ids and monthly partitions, keeping the runs.
+
+-- Trigram matching for typo-tolerant title search
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+-- Distances on the surface of the earth, for the start positions of runs
+CREATE EXTENSION IF NOT EXISTS cube;
+CREATE EXTENSION IF NOT EXISTS earthdistance;
+
+-- Run ids are 64 bit and come from this sequence. It counts in steps of 50, so that
+-- every nextval() reserves a block of 50 ids for the application (see RunIdAllocator).
+-- An id is never handed out twice, so it identifies a run in the history for good.
+CREATE SEQUENCE run_id_seq AS BIGINT INCREMENT BY 50;
+
+ALTER TABLE Run RENAME TO Run_v1;
+ALTER TABLE Run_v1 RENAME CONSTRAINT run_pkey TO run_v1_pkey;
+
+-- Runs are range partitioned by month of started_on so that queries for recent runs
+-- only touch the partitions that can contain them. The monthly partitions are created
+-- (and old ones archived) by RunPartitionMaintainer. The partition key has to be part
+-- of the primary key of a partitioned table, so the primary key alone does not make ids unique.
+-- They are unique because every id comes from run_id_seq (the column default, or blocks
+-- reserved by RunIdAllocator), the API never accepts an id from the client, and
+-- JdbcClientRunRepository checks the ids its callers supply (not safe against concurrent
+-- inserts of the same id, which only happen when seeding data).
+CREATE TABLE Run (
+    id BIGINT NOT NULL DEFAULT nextval('run_id_seq'),
+    title VARCHAR(250) NOT NULL,
+    started_on TIMESTAMP NOT NULL,
+    completed_on TIMESTAMP NOT NULL,
+    kilometers INT NOT NULL,
+    location VARCHAR(10) NOT NULL,
+    start_lat DOUBLE PRECISION,
+    start_lng DOUBLE PRECISION,
+    version INT NOT NULL DEFAULT 0,
+    -- When the run was added, so scheduled exports also pick up runs added late (see RunExporter)
+    inserted_at TIMESTAMP NOT NULL DEFAULT LOCALTIMESTAMP,
+    PRIMARY KEY (id, started_on)
+) PARTITION BY RANGE (started_on);
+-- Catches runs that fall outside of the monthly partitions
+CREATE TABLE Run_default PARTITION OF Run DEFAULT;
+
+-- The existing runs go to monthly partitions named like those of RunPartitionMaintainer,
+-- which cannot create a partition for a month once the default partition holds runs of it
+DO $$
+DECLARE
+    month TIMESTAMP;
+BEGIN
+    FOR month IN SELECT DISTINCT date_trunc('month', started_on) FROM Run_v1 LOOP
+        EXECUTE format('CREATE TABLE %I PARTITION OF Run FOR VALUES FROM (%L) TO (%L)',
+                'run_' || to_char(month, '"y"YYYY"m"MM'), month, month + INTERVAL '1 month');
+    END LOOP;
+END $$;
+
+-- Runs without a version were never updated
+INSERT INTO Run (id, title, started_on, completed_on, kilometers, location, version)
+SELECT id, title, started_on, completed_on, kilometers, location, coalesce(version, 0)
+FROM Run_v1;
+-- New ids come after the existing ones
+SELECT setval('run_id_seq', max(id)) FROM Run_v1 HAVING max(id) > 0;
+DROP TABLE Run_v1;
+
+-- Indexes for GET /api/runs/search: full-text search on the title words,
+-- and trigram search to also find titles with a misspelled word
+CREATE INDEX run_title_fts_idx ON Run USING GIN (to_tsvector('english', title));
+CREATE INDEX run_title_trgm_idx ON Run USING GIN (title gin_trgm_ops);
+-- Indexes for the start positions: GET /api/runs/near finds the nearest runs by walking the
+-- GiST index on the position as a point on the earth (cube), and GET /api/runs/within
+-- finds the runs in a latitude/longitude box with the GiST index on the position as a point
+CREATE INDEX run_start_earth_idx ON Run USING GIST (ll_to_earth(start_lat, start_lng)) WHERE start_lat IS NOT NULL;
+CREATE INDEX run_start_point_idx ON Run USING GIST (point(start_lng, start_lat)) WHERE start_lat IS NOT NULL;
+CREATE INDEX run_inserted_at_idx ON Run (inserted_at);
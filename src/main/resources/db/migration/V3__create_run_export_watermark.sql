@@ -0,0 +1,5 @@
+-- How far the scheduled Arrow export has got: the runs inserted before inserted_before are exported
+CREATE TABLE Run_Export_Watermark (
+    name VARCHAR(40) NOT NULL PRIMARY KEY,
+    inserted_before TIMESTAMP NOT NULL
+);
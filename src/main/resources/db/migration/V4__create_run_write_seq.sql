@@ -0,0 +1,3 @@
+-- Takes a value for every committed write to the run table, so that every instance
+-- of the application knows when its cached responses are stale (see RunWriteGeneration)
+CREATE SEQUENCE run_write_seq;
@@ -0,0 +1,11 @@
+-- The first places of every leaderboard (see RunLeaderboards). Kept in step with the run table,
+-- as a board that is not full is taken to hold every run of its location.
+CREATE TABLE Run_Leaderboard (
+    board VARCHAR(40) NOT NULL,
+    location VARCHAR(10) NOT NULL,
+    rank INT NOT NULL,
+    run_id BIGINT,
+    week DATE,
+    value DOUBLE PRECISION NOT NULL,
+    PRIMARY KEY (board, location, rank)
+);
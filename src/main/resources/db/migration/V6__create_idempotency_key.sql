@@ -0,0 +1,10 @@
+-- Idempotency keys of POST requests, used when runnerz.idempotency.store=jdbc (see JdbcIdempotencyStore).
+-- The status stays NULL while the first request with the key is being processed.
+CREATE TABLE Idempotency_Key (
+    idempotency_key VARCHAR(255) NOT NULL PRIMARY KEY,
+    fingerprint CHAR(44) NOT NULL,
+    status SMALLINT,
+    location VARCHAR(255),
+    expires_at TIMESTAMP NOT NULL
+);
+CREATE INDEX idempotency_key_expires_at_idx ON Idempotency_Key (expires_at);
@@ -0,0 +1,13 @@
+-- GPS tracks of runs, in chunks of points encoded by TrackCodec (see TrackRecorder).
+-- There is no foreign key to run, as the primary key of the partitioned run table includes
+-- started_on. Tracks are deleted together with their run by RunTrackRemover.
+CREATE TABLE Run_Track_Chunk (
+    run_id BIGINT NOT NULL,
+    seq INT NOT NULL,
+    first_time TIMESTAMP NOT NULL,
+    last_time TIMESTAMP NOT NULL,
+    points INT NOT NULL,
+    meters DOUBLE PRECISION NOT NULL,
+    data BYTEA NOT NULL,
+    PRIMARY KEY (run_id, seq)
+);
@@ -0,0 +1,18 @@
+-- Every version of every run, appended on each insert, update and delete (see RunHistoryRepository).
+-- A deletion is one more version with deleted set. Changes older than runnerz.history.retention
+-- are compacted to the last version before the cutoff by RunHistoryCompactor.
+CREATE TABLE Run_History (
+    run_id BIGINT NOT NULL,
+    version INT NOT NULL,
+    title VARCHAR(250) NOT NULL,
+    started_on TIMESTAMP NOT NULL,
+    completed_on TIMESTAMP NOT NULL,
+    kilometers INT NOT NULL,
+    location VARCHAR(10) NOT NULL,
+    start_lat DOUBLE PRECISION,
+    start_lng DOUBLE PRECISION,
+    deleted BOOLEAN NOT NULL,
+    changed_at TIMESTAMP NOT NULL DEFAULT LOCALTIMESTAMP,
+    PRIMARY KEY (run_id, version)
+);
+CREATE INDEX run_history_changed_at_idx ON Run_History (changed_at);
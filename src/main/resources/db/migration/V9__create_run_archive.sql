@@ -0,0 +1,9 @@
+-- The partitions of the run table that were archived to segment files (see RunPartitionMaintainer).
+-- The detached partition is kept as run_archived_yYYYYmMM for runnerz.tiering.keep-detached,
+-- and only dropped once the instance dropping it finds all the segments in the segment directory.
+CREATE TABLE Run_Archive (
+    partition VARCHAR(40) NOT NULL PRIMARY KEY,
+    segments INT NOT NULL,
+    archived_at TIMESTAMP NOT NULL DEFAULT LOCALTIMESTAMP,
+    dropped BOOLEAN NOT NULL DEFAULT FALSE
+);
@@ -0,0 +1,101 @@
+package com.bryanchow.runnerz;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.output.MigrateResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Migrates a database of its own next to the one of the other tests, on the same Postgres server
+@JdbcTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+// CREATE DATABASE cannot run in a transaction
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class MigrationTest {
+
+    static final String DATABASE = "runnerz_migration_test";
+
+    @Autowired
+    JdbcClient jdbcClient;
+
+    @Autowired
+    DataSourceProperties dataSourceProperties;
+
+    DataSource dataSource;
+    JdbcClient migrated;
+
+    @BeforeEach
+    void setup() {
+        jdbcClient.sql("DROP DATABASE IF EXISTS " + DATABASE + " WITH (FORCE)").update();
+        jdbcClient.sql("CREATE DATABASE " + DATABASE).update();
+        String url = dataSourceProperties.getUrl().substring(0, dataSourceProperties.getUrl().lastIndexOf('/') + 1) + DATABASE;
+        dataSource = new DriverManagerDataSource(url, dataSourceProperties.getUsername(), dataSourceProperties.getPassword());
+        migrated = JdbcClient.create(dataSource);
+    }
+
+    @AfterEach
+    void dropDatabase() {
+        jdbcClient.sql("DROP DATABASE IF EXISTS " + DATABASE + " WITH (FORCE)").update();
+    }
+
+    // Verifies that the run table of the first release is converted to 64 bit ids and monthly partitions, keeping its runs
+    @Test
+    void shouldMigrateDatabaseOfFirstRelease() throws IOException {
+        migrated.sql(new ClassPathResource("db/migration/V1__create_run.sql").getContentAsString(StandardCharsets.UTF_8)).update();
+        migrated.sql("""
+                        INSERT INTO run (id, title, started_on, completed_on, kilometers, location, version) VALUES
+                        (1, 'Monday Morning Run', '2024-01-29 06:05:20', '2024-01-29 06:35:20', 5, 'INDOOR', NULL),
+                        (2, 'Wednesday Evening Run', '2024-01-31 18:00:00', '2024-01-31 19:00:00', 10, 'OUTDOOR', 3),
+                        (7, 'Thursday Morning Run', '2024-02-01 06:00:00', '2024-02-01 06:30:00', 5, 'INDOOR', 1)""")
+                .update();
+
+        MigrateResult result = migrate();
+
+        assertEquals("1", result.initialSchemaVersion);
+        assertEquals(8, result.migrationsExecuted);
+        assertEquals("bigint", migrated.sql("SELECT data_type FROM information_schema.columns WHERE table_name = 'run' AND column_name = 'id'")
+                .query(String.class).single());
+        assertEquals(List.of("run_y2024m01", "run_y2024m01", "run_y2024m02"), migrated.sql("SELECT tableoid::regclass::text FROM run ORDER BY id")
+                .query(String.class).list());
+        assertEquals(List.of(0, 3, 1), migrated.sql("SELECT version FROM run ORDER BY id").query(Integer.class).list());
+        // New runs get ids after the existing ones
+        assertTrue(migrated.sql("SELECT nextval('run_id_seq')").query(Long.class).single() > 7);
+    }
+
+    // Verifies that an empty database gets every migration
+    @Test
+    void shouldMigrateEmptyDatabase() {
+        MigrateResult result = migrate();
+
+        assertNull(result.initialSchemaVersion);
+        assertEquals(9, result.migrationsExecuted);
+        assertEquals(1, migrated.sql("SELECT nextval('run_id_seq')").query(Long.class).single());
+    }
+
+    // As application.properties configures Flyway, without the callback that empties the database of the other tests
+    private MigrateResult migrate() {
+        return Flyway.configure()
+                .dataSource(dataSource)
+                .baselineOnMigrate(true)
+                .baselineVersion("1")
+                .skipDefaultCallbacks(true)
+                .load()
+                .migrate();
+    }
+}
@@ -0,0 +1,42 @@
+package com.bryanchow.runnerz;
+
+import com.bryanchow.runnerz.run.Run;
+import com.bryanchow.runnerz.run.Runs;
+import com.bryanchow.runnerz.user.Geo;
+import com.bryanchow.runnerz.user.User;
+import com.bryanchow.runnerz.user.UserHttpClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RunnerzRuntimeHintsTest {
+
+    RuntimeHints hints;
+
+    @BeforeEach
+    void setup() {
+        hints = new RuntimeHints();
+        new RunnerzRuntimeHints().registerHints(hints, getClass().getClassLoader());
+    }
+
+    // Verifies that the records read and written outside of controllers can be bound reflectively
+    @Test
+    void shouldRegisterRecordsForBinding() throws Exception {
+        assertTrue(RuntimeHintsPredicates.reflection().onType(Runs.class).withMemberCategory(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(Run.class.getMethod("title")).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onType(Geo.class).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onType(User.class).test(hints));
+    }
+
+    // Verifies that the HTTP interface client can be proxied and the seed data is included
+    @Test
+    void shouldRegisterUserHttpClientProxyAndSeedData() {
+        assertTrue(RuntimeHintsPredicates.proxies().forInterfaces(AopProxyUtils.completeJdkProxyInterfaces(UserHttpClient.class)).test(hints));
+        assertTrue(RuntimeHintsPredicates.resource().forResource("data/runs.json").test(hints));
+    }
+}
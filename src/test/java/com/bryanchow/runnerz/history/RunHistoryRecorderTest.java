@@ -0,0 +1,92 @@
+package com.bryanchow.runnerz.history;
+
+import com.bryanchow.runnerz.run.Location;
+import com.bryanchow.runnerz.run.Run;
+import com.bryanchow.runnerz.run.RunRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.RestClient;
+
+import java.net.URI;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs against the actual Postgres database with the full application, so every write
+// commits, and the history has to be appended by the listeners of RunRepository
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class RunHistoryRecorderTest {
+
+    static final LocalDateTime MONDAY = LocalDateTime.of(2024, 2, 19, 8, 0);
+
+    @LocalServerPort
+    int randomServerPort;
+
+    @Autowired
+    RunRepository runRepository;
+
+    @Autowired
+    RunHistoryRepository historyRepository;
+
+    RestClient restClient;
+
+    @BeforeEach
+    void setup() {
+        restClient = RestClient.create("http://localhost:" + randomServerPort);
+    }
+
+    // Verifies that saves, patches and deletes through RunRepository each append a version
+    @Test
+    void shouldAppendHistoryForRepositoryWrites() {
+        Run created = runRepository.save(new Run(null, "Tempo Run", MONDAY, MONDAY.plusMinutes(40), 8, Location.OUTDOOR, null, null));
+        Run renamed = runRepository.save(new Run(created.id(), "Long Tempo Run", MONDAY, MONDAY.plusMinutes(40), 8, Location.OUTDOOR, null, created.version()));
+        Run patched = new Run(renamed.id(), renamed.title(), MONDAY, MONDAY.plusMinutes(40), 9, Location.OUTDOOR, null, renamed.version());
+        runRepository.patch(renamed, patched);
+        runRepository.delete(runRepository.findById(created.id()).orElseThrow());
+
+        List<RunRevision> revisions = historyRepository.findByRunId(created.id());
+        assertEquals(List.of(0, 1, 2, 3), revisions.stream().map(revision -> revision.run().version()).toList());
+        assertEquals("Long Tempo Run", revisions.get(1).run().title());
+        assertEquals(9, revisions.get(2).run().kilometers());
+        assertEquals(List.of(false, false, false, true), revisions.stream().map(RunRevision::deleted).toList());
+    }
+
+    // Verifies the same for POST, PUT, PATCH and DELETE on the API
+    @Test
+    void shouldAppendHistoryForApiWrites() {
+        URI location = restClient.post()
+                .uri("/api/runs")
+                .body(new Run(null, "Evening Run", MONDAY, MONDAY.plusMinutes(50), 10, Location.OUTDOOR, null, null))
+                .retrieve()
+                .toBodilessEntity()
+                .getHeaders()
+                .getLocation();
+        restClient.put()
+                .uri(location)
+                .body(new Run(null, "Easy Evening Run", MONDAY, MONDAY.plusMinutes(50), 10, Location.OUTDOOR, null, null))
+                .retrieve()
+                .toBodilessEntity();
+        restClient.patch()
+                .uri(location)
+                .contentType(MediaType.valueOf("application/merge-patch+json"))
+                .body("{\"kilometers\": 12}")
+                .retrieve()
+                .toBodilessEntity();
+        restClient.delete()
+                .uri(location)
+                .retrieve()
+                .toBodilessEntity();
+
+        Long id = Long.valueOf(location.getPath().substring(location.getPath().lastIndexOf('/') + 1));
+        List<RunRevision> revisions = historyRepository.findByRunId(id);
+        assertEquals(List.of(0, 1, 2, 3), revisions.stream().map(revision -> revision.run().version()).toList());
+        assertEquals("Easy Evening Run", revisions.get(1).run().title());
+        assertEquals(12, revisions.get(2).run().kilometers());
+        assertTrue(revisions.get(3).deleted());
+    }
+}
@@ -0,0 +1,97 @@
+package com.bryanchow.runnerz.history;
+
+import com.bryanchow.runnerz.run.Location;
+import com.bryanchow.runnerz.run.Run;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.simple.JdbcClient;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs against the actual Postgres database, like the other repository tests
+@JdbcTest
+@Import(RunHistoryRepository.class)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class RunHistoryRepositoryTest {
+
+    static final LocalDateTime MONDAY = LocalDateTime.of(2024, 2, 19, 8, 0);
+
+    @Autowired
+    RunHistoryRepository repository;
+
+    @Autowired
+    JdbcClient jdbcClient;
+
+    // Run 1 was created on Monday, renamed on Wednesday and deleted on Friday
+    @BeforeEach
+    void setup() {
+        append(1L, 0, "Morning Run", false, MONDAY);
+        append(1L, 1, "Long Morning Run", false, MONDAY.plusDays(2));
+        append(1L, 2, "Long Morning Run", true, MONDAY.plusDays(4));
+        append(2L, 0, "Evening Run", false, MONDAY.plusDays(1));
+    }
+
+    // Verifies that all versions of a run are returned, oldest first
+    @Test
+    void shouldFindAllVersionsOfRun() {
+        List<RunRevision> revisions = repository.findByRunId(1L);
+
+        assertEquals(List.of(0, 1, 2), revisions.stream().map(revision -> revision.run().version()).toList());
+        assertTrue(revisions.get(2).deleted());
+    }
+
+    // Verifies that a run is read as it was at a point in time
+    @Test
+    void shouldFindRunAsOfTime() {
+        assertTrue(repository.findAsOf(1L, MONDAY.minusHours(1)).isEmpty());
+        assertEquals("Morning Run", repository.findAsOf(1L, MONDAY.plusDays(1)).get().title());
+        assertEquals("Long Morning Run", repository.findAsOf(1L, MONDAY.plusDays(3)).get().title());
+        assertTrue(repository.findAsOf(1L, MONDAY.plusDays(5)).isEmpty());
+    }
+
+    // Verifies that a deletion is recorded from the state of the run in the run table
+    @Test
+    void shouldAppendDeletionAsNextVersion() {
+        Run run = new Run(null, "Tempo Run", MONDAY, MONDAY.plusMinutes(40), 8, Location.OUTDOOR, null, null);
+        // An id of its own, the first value of run_id_seq is the id of run 1 in the history above
+        Long id = jdbcClient.sql("INSERT INTO run (id, title, started_on, completed_on, kilometers, location, version) VALUES (100, ?, ?, ?, ?, ?, 3) RETURNING id")
+                .params(run.title(), run.startedOn(), run.completedOn(), run.kilometers(), run.location().toString())
+                .query(Long.class)
+                .single();
+
+        repository.appendDeleted(id);
+
+        RunRevision deletion = repository.findByRunId(id).getFirst();
+        assertTrue(deletion.deleted());
+        assertEquals(4, deletion.run().version());
+        assertEquals("Tempo Run", deletion.run().title());
+    }
+
+    // Verifies that compaction keeps the state at the cutoff and drops runs deleted before it
+    @Test
+    void shouldCompactChangesBeforeCutoff() {
+        assertEquals(1, repository.compact(MONDAY.plusDays(3)));
+        assertEquals(List.of(1, 2), repository.findByRunId(1L).stream().map(revision -> revision.run().version()).toList());
+        assertEquals("Long Morning Run", repository.findAsOf(1L, MONDAY.plusDays(3)).get().title());
+
+        assertEquals(2, repository.compact(MONDAY.plusDays(5)));
+        assertTrue(repository.findByRunId(1L).isEmpty());
+        assertEquals(1, repository.findByRunId(2L).size());
+    }
+
+    private void append(Long id, int version, String title, boolean deleted, LocalDateTime changedAt) {
+        jdbcClient.sql("""
+                        INSERT INTO run_history (run_id, version, title, started_on, completed_on, kilometers, location, deleted, changed_at)
+                        VALUES (?, ?, ?, ?, ?, 5, 'OUTDOOR', ?, ?)
+                        """)
+                .params(id, version, title, MONDAY, MONDAY.plusMinutes(30), deleted, changedAt)
+                .update();
+    }
+}
@@ -0,0 +1,108 @@
+package com.bryanchow.runnerz.idempotency;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryIdempotencyStoreTest {
+
+    Instant now;
+    InMemoryIdempotencyStore store;
+
+    @BeforeEach
+    void setup() {
+        now = Instant.parse("2024-01-01T10:00:00Z");
+        // A clock that reads the field, so that tests can move the time forward
+        Clock clock = new Clock() {
+            @Override
+            public ZoneOffset getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(java.time.ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return now;
+            }
+        };
+        store = new InMemoryIdempotencyStore(new IdempotencyProperties("memory", Duration.ofHours(24), Duration.ofSeconds(30)), clock);
+    }
+
+    // Verifies that a retry sees the request in progress, and then its result
+    @Test
+    void shouldReturnEarlierRequestForClaimedKey() {
+        assertTrue(store.claim("key", "fingerprint").isEmpty());
+
+        assertEquals(Optional.of(new IdempotencyRecord("fingerprint", null, null)), store.claim("key", "fingerprint"));
+
+        store.complete("key", 201, "/api/runs/1");
+        assertEquals(Optional.of(new IdempotencyRecord("fingerprint", 201, "/api/runs/1")), store.claim("key", "fingerprint"));
+    }
+
+    // Verifies that a released key and an expired key can be claimed again
+    @Test
+    void shouldClaimReleasedAndExpiredKeys() {
+        store.claim("failed", "fingerprint");
+        store.release("failed");
+        assertTrue(store.claim("failed", "fingerprint").isEmpty());
+
+        store.claim("done", "fingerprint");
+        store.complete("done", 201, "/api/runs/2");
+        now = now.plus(Duration.ofHours(25));
+        assertTrue(store.claim("done", "fingerprint").isEmpty());
+    }
+
+    // Verifies that only one of many concurrent requests with the same key claims it
+    @Test
+    void shouldLetOnlyOneConcurrentRequestClaimKey() throws Exception {
+        List<Callable<Boolean>> requests = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            requests.add(() -> store.claim("key", "fingerprint").isEmpty());
+        }
+
+        int claimed = 0;
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (Future<Boolean> result : executor.invokeAll(requests)) {
+                claimed += result.get() ? 1 : 0;
+            }
+        }
+
+        assertEquals(1, claimed);
+    }
+
+    // Verifies that the result of a request in a transaction is only stored once the transaction has committed
+    @Test
+    void shouldCompleteAfterCommit() {
+        store.claim("key", "fingerprint");
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            store.complete("key", 201, "/api/runs/1");
+            assertEquals(Optional.of(new IdempotencyRecord("fingerprint", null, null)), store.claim("key", "fingerprint"));
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertEquals(Optional.of(new IdempotencyRecord("fingerprint", 201, "/api/runs/1")), store.claim("key", "fingerprint"));
+    }
+}
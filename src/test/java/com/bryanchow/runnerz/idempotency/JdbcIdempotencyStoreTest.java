@@ -0,0 +1,89 @@
+package com.bryanchow.runnerz.idempotency;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs against the actual Postgres database, the keys are kept in idempotency_key
+@JdbcTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class JdbcIdempotencyStoreTest {
+
+    // A real fingerprint, it fills the CHAR(44) column exactly so it is read back without padding
+    static final String FINGERPRINT = IdempotencyStore.fingerprint("{\"title\":\"Morning Run\"}".getBytes());
+
+    @Autowired
+    JdbcClient jdbcClient;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    JdbcIdempotencyStore store;
+
+    @BeforeEach
+    void setup() {
+        store = new JdbcIdempotencyStore(jdbcClient, new IdempotencyProperties("jdbc", Duration.ofHours(24), Duration.ofSeconds(30)));
+    }
+
+    // Verifies that a completed request is replayed for a retry with the same key
+    @Test
+    void shouldReplayCompletedRequest() {
+        assertTrue(store.claim("key", FINGERPRINT).isEmpty());
+        store.complete("key", 201, "/api/runs/42");
+
+        assertEquals(Optional.of(new IdempotencyRecord(FINGERPRINT, 201, "/api/runs/42")), store.claim("key", FINGERPRINT));
+    }
+
+    // Verifies that a request in progress is reported, without a status yet
+    @Test
+    void shouldReportRequestInProgress() {
+        assertTrue(store.claim("key", FINGERPRINT).isEmpty());
+
+        assertEquals(Optional.of(new IdempotencyRecord(FINGERPRINT, null, null)), store.claim("key", FINGERPRINT));
+    }
+
+    // Verifies that a released key can be claimed again
+    @Test
+    void shouldClaimReleasedKey() {
+        store.claim("key", FINGERPRINT);
+        store.release("key");
+
+        assertTrue(store.claim("key", FINGERPRINT).isEmpty());
+    }
+
+    // Verifies that a key whose request never completed is taken over after the lock timeout
+    @Test
+    void shouldTakeOverExpiredClaim() {
+        JdbcIdempotencyStore expiring = new JdbcIdempotencyStore(jdbcClient, new IdempotencyProperties("jdbc", Duration.ofHours(24), Duration.ofSeconds(-1)));
+        expiring.claim("key", FINGERPRINT);
+
+        assertTrue(store.claim("key", "other fingerprint").isEmpty());
+    }
+
+    // Verifies that the result of a request is rolled back together with its writes,
+    // so that a retry after the lock timeout performs the request again instead of finding a result without a run
+    @Test
+    void shouldRollBackResultWithTransaction() {
+        store.claim("key", FINGERPRINT);
+
+        TransactionTemplate nested = new TransactionTemplate(transactionManager);
+        nested.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+        nested.executeWithoutResult(status -> {
+            store.complete("key", 201, "/api/runs/42");
+            status.setRollbackOnly();
+        });
+
+        assertEquals(Optional.of(new IdempotencyRecord(FINGERPRINT, null, null)), store.claim("key", FINGERPRINT));
+    }
+}
@@ -0,0 +1,75 @@
+package com.bryanchow.runnerz.leaderboard;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LeaderboardTest {
+
+    // The first three places of a board with more runs behind them
+    Leaderboard<Long> leaderboard;
+
+    @BeforeEach
+    void setup() {
+        leaderboard = new Leaderboard<>(false, 3, List.of(
+                new Leaderboard.Score<>(1L, 10),
+                new Leaderboard.Score<>(2L, 20),
+                new Leaderboard.Score<>(3L, 30)));
+    }
+
+    // Verifies that the stored places are ordered by score
+    @Test
+    void shouldOrderByScore() {
+        assertEquals(List.of(3L, 2L, 1L), keys(leaderboard));
+    }
+
+    // Verifies that a new key ahead of the last place pushes it off the board
+    @Test
+    void shouldKeepOnlyCapacityPlaces() {
+        assertEquals(Leaderboard.Change.CHANGED, leaderboard.put(4L, 25.0));
+
+        assertEquals(List.of(3L, 4L, 2L), keys(leaderboard));
+    }
+
+    // Verifies that a new key behind the last place of a full board changes nothing
+    @Test
+    void shouldIgnoreKeyBehindLastPlace() {
+        assertEquals(Leaderboard.Change.NONE, leaderboard.put(4L, 5.0));
+        assertEquals(Leaderboard.Change.NONE, leaderboard.put(3L, 30.0));
+
+        assertEquals(List.of(3L, 2L, 1L), keys(leaderboard));
+    }
+
+    // Verifies that a key can move within the places it already holds
+    @Test
+    void shouldMoveKeyWithinPlaces() {
+        assertEquals(Leaderboard.Change.CHANGED, leaderboard.put(1L, 40.0));
+
+        assertEquals(List.of(1L, 3L, 2L), keys(leaderboard));
+    }
+
+    // Verifies that the board has to be ranked again when a key leaves a full board, or falls behind its last place
+    @Test
+    void shouldReportIncompleteBoard() {
+        assertEquals(Leaderboard.Change.INCOMPLETE, leaderboard.put(2L, null));
+        setup();
+        assertEquals(Leaderboard.Change.INCOMPLETE, leaderboard.put(3L, 5.0));
+    }
+
+    // Verifies that a board that is not full holds every key, so a key can leave it without ranking it again
+    @Test
+    void shouldRemoveKeyFromBoardThatIsNotFull() {
+        Leaderboard<Long> notFull = new Leaderboard<>(true, 3, List.of(new Leaderboard.Score<>(1L, 5.5)));
+
+        assertEquals(Leaderboard.Change.CHANGED, notFull.put(2L, 6.0));
+        assertEquals(Leaderboard.Change.CHANGED, notFull.put(1L, null));
+        assertEquals(List.of(2L), keys(notFull));
+    }
+
+    private static List<Long> keys(Leaderboard<Long> leaderboard) {
+        return leaderboard.scores().stream().map(Leaderboard.Score::key).toList();
+    }
+}
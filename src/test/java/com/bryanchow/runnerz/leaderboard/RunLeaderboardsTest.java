@@ -0,0 +1,151 @@
+package com.bryanchow.runnerz.leaderboard;
+
+import com.bryanchow.runnerz.run.Location;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.simple.JdbcClient;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs against the actual Postgres database, the boards are kept in run_leaderboard and updated from the run table
+@JdbcTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({RunLeaderboards.class, LeaderboardSummaryRepository.class})
+class RunLeaderboardsTest {
+
+    static final RunLeaderboards.BoardKey LONGEST_OUTDOOR = new RunLeaderboards.BoardKey(Board.LONGEST_RUN, Location.OUTDOOR);
+    static final RunLeaderboards.BoardKey WEEKLY_OUTDOOR = new RunLeaderboards.BoardKey(Board.MOST_WEEKLY_KILOMETERS, Location.OUTDOOR);
+    static final RunLeaderboards.BoardKey FASTEST_5K_TO_10K_OUTDOOR = new RunLeaderboards.BoardKey(Board.FASTEST_PACE_5K_TO_10K, Location.OUTDOOR);
+
+    @Autowired
+    RunLeaderboards leaderboards;
+
+    @Autowired
+    JdbcClient jdbcClient;
+
+    @BeforeEach
+    void setup() {
+        // Monday 4 March 2024
+        insert(1, LocalDateTime.of(2024, 3, 4, 7, 0), 50, 8);
+        insert(2, LocalDateTime.of(2024, 3, 6, 7, 0), 36, 6);
+        insert(3, LocalDateTime.of(2024, 3, 12, 7, 0), 100, 21);
+        leaderboards.update(List.of(ranked(1, LocalDateTime.of(2024, 3, 4, 7, 0), 8),
+                ranked(2, LocalDateTime.of(2024, 3, 6, 7, 0), 6),
+                ranked(3, LocalDateTime.of(2024, 3, 12, 7, 0), 21)));
+    }
+
+    // Verifies that the longest runs are ranked first
+    @Test
+    void shouldRankLongestRuns() {
+        assertEquals(List.of(3L, 1L, 2L), runIds(leaderboards.top(LONGEST_OUTDOOR, 10)));
+        assertEquals(List.of(3L), runIds(leaderboards.top(LONGEST_OUTDOOR, 1)));
+    }
+
+    // Verifies that runs are ranked by pace within their distance band
+    @Test
+    void shouldRankFastestPaceWithinDistanceBand() {
+        List<LeaderboardEntry> fastest = leaderboards.top(FASTEST_5K_TO_10K_OUTDOOR, 10);
+        // 36 minutes for 6 km beats 50 minutes for 8 km, the half marathon is in another band
+        assertEquals(List.of(2L, 1L), runIds(fastest));
+        assertEquals(6.0, fastest.getFirst().value());
+    }
+
+    // Verifies that the kilometers of a week are added up
+    @Test
+    void shouldRankWeeksByKilometers() {
+        List<LeaderboardEntry> weeks = leaderboards.top(WEEKLY_OUTDOOR, 10);
+        assertEquals(LocalDate.of(2024, 3, 11), weeks.get(0).week());
+        assertEquals(21.0, weeks.get(0).value());
+        assertEquals(LocalDate.of(2024, 3, 4), weeks.get(1).week());
+        assertEquals(14.0, weeks.get(1).value());
+    }
+
+    // Verifies that an updated run is moved on every board it was and is on
+    @Test
+    void shouldMoveUpdatedRun() {
+        RankedRun before = ranked(2, LocalDateTime.of(2024, 3, 6, 7, 0), 6);
+        jdbcClient.sql("UPDATE run SET kilometers = 30, completed_on = started_on + INTERVAL '150 minutes' WHERE id = 2").update();
+        var changed = leaderboards.update(List.of(before, ranked(2, LocalDateTime.of(2024, 3, 6, 7, 0), 30)));
+
+        assertTrue(changed.contains(LONGEST_OUTDOOR));
+        assertEquals(List.of(2L, 3L, 1L), runIds(leaderboards.top(LONGEST_OUTDOOR, 10)));
+        assertEquals(List.of(1L), runIds(leaderboards.top(FASTEST_5K_TO_10K_OUTDOOR, 10)));
+        assertEquals(38.0, leaderboards.top(WEEKLY_OUTDOOR, 1).getFirst().value());
+    }
+
+    // Verifies that only the places that changed are written again
+    @Test
+    void shouldOnlyRewriteMovedPlaces() {
+        List<String> before = rowLocations(LONGEST_OUTDOOR);
+        RankedRun run1 = ranked(1, LocalDateTime.of(2024, 3, 4, 7, 0), 8);
+        jdbcClient.sql("UPDATE run SET kilometers = 25 WHERE id = 1").update();
+        leaderboards.update(List.of(run1, ranked(1, LocalDateTime.of(2024, 3, 4, 7, 0), 25)));
+
+        // Run 1 moves from the second to the first place, run 2 stays third
+        List<String> after = rowLocations(LONGEST_OUTDOOR);
+        assertEquals(List.of(1L, 3L, 2L), runIds(leaderboards.top(LONGEST_OUTDOOR, 10)));
+        assertNotEquals(before.get(0), after.get(0));
+        assertNotEquals(before.get(1), after.get(1));
+        assertEquals(before.get(2), after.get(2));
+    }
+
+    // Verifies that a deleted run is taken off the boards and its kilometers off its week
+    @Test
+    void shouldRemoveDeletedRun() {
+        jdbcClient.sql("DELETE FROM run WHERE id = 3").update();
+        leaderboards.update(List.of(ranked(3, LocalDateTime.of(2024, 3, 12, 7, 0), 21)));
+
+        assertEquals(List.of(1L, 2L), runIds(leaderboards.top(LONGEST_OUTDOOR, 10)));
+        assertEquals(1, leaderboards.top(WEEKLY_OUTDOOR, 10).size());
+    }
+
+    // Verifies that boards whose places stay the same are not reported as changed
+    @Test
+    void shouldOnlyReportChangedBoards() {
+        assertTrue(leaderboards.update(List.of(ranked(1, LocalDateTime.of(2024, 3, 4, 7, 0), 8))).isEmpty());
+    }
+
+    // Verifies that ranking the boards from the run table gives the same places as the updates
+    @Test
+    void shouldRebuildSamePlaces() {
+        List<LeaderboardEntry> longest = leaderboards.top(LONGEST_OUTDOOR, 10);
+        List<LeaderboardEntry> weeks = leaderboards.top(WEEKLY_OUTDOOR, 10);
+        List<LeaderboardEntry> fastest = leaderboards.top(FASTEST_5K_TO_10K_OUTDOOR, 10);
+
+        leaderboards.rebuild();
+
+        assertEquals(longest, leaderboards.top(LONGEST_OUTDOOR, 10));
+        assertEquals(weeks, leaderboards.top(WEEKLY_OUTDOOR, 10));
+        assertEquals(fastest, leaderboards.top(FASTEST_5K_TO_10K_OUTDOOR, 10));
+    }
+
+    private void insert(long id, LocalDateTime startedOn, int minutes, int kilometers) {
+        jdbcClient.sql("INSERT INTO run (id, title, started_on, completed_on, kilometers, location) VALUES (?, ?, ?, ?, ?, 'OUTDOOR')")
+                .params(id, "Run " + id, startedOn, startedOn.plusMinutes(minutes), kilometers)
+                .update();
+    }
+
+    // Where each place of a board is stored, an updated row is written to a new location
+    private List<String> rowLocations(RunLeaderboards.BoardKey key) {
+        return jdbcClient.sql("SELECT CAST(ctid AS TEXT) FROM run_leaderboard WHERE board = ? AND location = ? ORDER BY rank")
+                .params(key.board().name(), key.location().name())
+                .query(String.class)
+                .list();
+    }
+
+    private static RankedRun ranked(long id, LocalDateTime startedOn, int kilometers) {
+        return new RankedRun(id, startedOn, kilometers, Location.OUTDOOR);
+    }
+
+    private static List<Long> runIds(List<LeaderboardEntry> entries) {
+        return entries.stream().map(LeaderboardEntry::runId).toList();
+    }
+}
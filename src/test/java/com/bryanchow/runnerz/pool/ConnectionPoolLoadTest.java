@@ -0,0 +1,106 @@
+package com.bryanchow.runnerz.pool;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.web.client.RestClient;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Puts the connection pools under load against the actual Postgres database: exports and
+ * searches (long scans) run next to lookups by id, while PoolSizeController resizes the main pool.
+ * Checks that no lookup fails and the slowest lookups stay well below the connection timeout,
+ * that the main pool grew beyond its initial size, and that the exports stayed in their own pool.
+ *
+ * Only runs when asked for:
+ * ./mvnw test -Dtest=ConnectionPoolLoadTest -Drunnerz.loadtest=true
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "runnerz.rate-limit.capacity=1000000",
+        "runnerz.rate-limit.refill-per-second=1000000",
+        "runnerz.rate-limit.queued-requests=200",
+        "runnerz.pool.interval=2s",
+        "runnerz.export.directory=target/load-test-exports"
+})
+@EnabledIfSystemProperty(named = "runnerz.loadtest", matches = "true")
+class ConnectionPoolLoadTest {
+
+    static final Duration DURATION = Duration.ofSeconds(60);
+    static final int LOOKUP_CLIENTS = 32;
+    static final int SEARCH_CLIENTS = 16;
+    static final int EXPORT_CLIENTS = 4;
+    // spring.datasource.hikari.maximum-pool-size and runnerz.pool.export-size
+    static final int INITIAL_POOL_SIZE = 10;
+    static final int EXPORT_POOL_SIZE = 2;
+    // A fifth of spring.datasource.hikari.connection-timeout
+    static final long MAX_LOOKUP_P99_MILLIS = 1000;
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Test
+    void lookupsKeepGettingConnectionsUnderLoad() throws Exception {
+        RestClient restClient = RestClient.create("http://localhost:" + port);
+        List<Long> lookupMillis = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger failedLookups = new AtomicInteger();
+        long end = System.nanoTime() + DURATION.toNanos();
+
+        ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor();
+        for (int i = 0; i < LOOKUP_CLIENTS; i++) {
+            clients.submit(() -> {
+                while (System.nanoTime() < end) {
+                    long start = System.nanoTime();
+                    try {
+                        restClient.get().uri("/api/runs/{id}", 1 + (int) (Math.random() * 10)).retrieve().toBodilessEntity();
+                        lookupMillis.add((System.nanoTime() - start) / 1_000_000);
+                    } catch (Exception e) {
+                        failedLookups.incrementAndGet();
+                    }
+                }
+            });
+        }
+        for (int i = 0; i < SEARCH_CLIENTS; i++) {
+            clients.submit(() -> {
+                while (System.nanoTime() < end) {
+                    restClient.get().uri("/api/runs/search?q=run").retrieve().toBodilessEntity();
+                }
+            });
+        }
+        for (int i = 0; i < EXPORT_CLIENTS; i++) {
+            clients.submit(() -> {
+                while (System.nanoTime() < end) {
+                    restClient.post().uri("/api/runs/export").retrieve().toBodilessEntity();
+                }
+            });
+        }
+        clients.shutdown();
+        assertTrue(clients.awaitTermination(DURATION.toSeconds() + 60, TimeUnit.SECONDS));
+
+        List<Long> sorted = lookupMillis.stream().sorted().toList();
+        long p99 = sorted.get(sorted.size() * 99 / 100);
+        assertEquals(0, failedLookups.get(), "failed lookups");
+        assertTrue(p99 < MAX_LOOKUP_P99_MILLIS, sorted.size() + " lookups, p50 " + sorted.get(sorted.size() / 2) + " ms, p99 " + p99 + " ms");
+        assertTrue(poolSize("runnerz") > INITIAL_POOL_SIZE, "main pool at " + poolSize("runnerz") + " connections");
+        assertEquals(EXPORT_POOL_SIZE, poolSize("runnerz-export"));
+    }
+
+    private int poolSize(String pool) {
+        return (int) meterRegistry.get("hikaricp.connections.max").tag("pool", pool).gauge().value();
+    }
+}
@@ -0,0 +1,45 @@
+package com.bryanchow.runnerz.pool;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PoolSizePolicyTest {
+
+    PoolSizePolicy policy = new PoolSizePolicy(new PoolProperties(5, 12, Duration.ofMillis(10), Duration.ofMillis(250), Duration.ofSeconds(15), 2));
+
+    // Verifies that the pool grows while requests wait for connections, up to the maximum size
+    @Test
+    void shouldGrowWhenRequestsWait() {
+        assertEquals(12, policy.nextSize(10, sample(50, 20, 10, 0)));
+        assertEquals(12, policy.nextSize(12, sample(50, 20, 12, 0)));
+        assertEquals(8, policy.nextSize(6, sample(1, 20, 6, 3)));
+    }
+
+    // Verifies that the pool does not grow, but shrinks, when the database itself is slow
+    @Test
+    void shouldShrinkWhenDatabaseIsSlow() {
+        assertEquals(9, policy.nextSize(10, sample(500, 800, 10, 20)));
+        assertEquals(5, policy.nextSize(5, sample(500, 800, 5, 20)));
+    }
+
+    // Verifies that idle connections are given back one at a time, down to the minimum size
+    @Test
+    void shouldShrinkSlowlyWhenIdle() {
+        assertEquals(9, policy.nextSize(10, sample(0, 20, 2, 0)));
+        assertEquals(5, policy.nextSize(5, sample(0, 20, 0, 0)));
+    }
+
+    // Verifies that a pool without waits that is mostly in use keeps its size
+    @Test
+    void shouldKeepSizeWhenBusyWithoutWaits() {
+        assertEquals(10, policy.nextSize(10, sample(0, 20, 9, 0)));
+        assertEquals(10, policy.nextSize(10, sample(5, 20, 2, 0)));
+    }
+
+    private static PoolSizePolicy.Sample sample(long waitMillis, long usageMillis, int active, int waiting) {
+        return new PoolSizePolicy.Sample(Duration.ofMillis(waitMillis), Duration.ofMillis(usageMillis), active, waiting);
+    }
+}
@@ -0,0 +1,175 @@
+package com.bryanchow.runnerz.ratelimit;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitInterceptorTest {
+
+    // Handler methods with different costs
+    static class Handlers {
+
+        @RateLimitCost(10)
+        void expensive() {
+        }
+
+        @RateLimitCost(50)
+        void tooExpensive() {
+        }
+
+        void cheap() {
+        }
+
+        @RateLimitCost(value = 10, concurrencyLimited = false)
+        void streaming() {
+        }
+    }
+
+    MeterRegistry meterRegistry;
+    // The maximum size of the connection pool, as PoolSizeController would set it
+    AtomicInteger poolSize;
+    RateLimitInterceptor interceptor;
+
+    @BeforeEach
+    void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        poolSize = new AtomicInteger(1);
+        // A burst of 20 tokens, refilled by 1 per second, and 2 requests at a time (one connection and one queued request)
+        interceptor = new RateLimitInterceptor(new RateLimitProperties(20, 1, 1), meterRegistry, poolSize::get);
+    }
+
+    // Verifies that a client is limited by the cost of the endpoints it calls
+    @Test
+    void shouldRejectClientOnceBucketIsEmpty() throws Exception {
+        assertTrue(handleAndComplete("10.0.0.1", "expensive").allowed());
+        assertTrue(handleAndComplete("10.0.0.1", "expensive").allowed());
+
+        Result rejected = handleAndComplete("10.0.0.1", "expensive");
+        assertFalse(rejected.allowed());
+        assertEquals(429, rejected.response().getStatus());
+        assertEquals("10", rejected.response().getHeader("Retry-After"));
+        assertEquals(1, meterRegistry.counter("runnerz.requests.rejected", "status", "429", "handler", "expensive").count());
+
+        // Other clients have their own bucket
+        assertTrue(handleAndComplete("10.0.0.2", "cheap").allowed());
+    }
+
+    // Verifies that requests are shed once too many are in flight, and admitted again afterwards
+    @Test
+    void shouldShedRequestsAboveConcurrencyLimit() throws Exception {
+        Result first = handle("10.0.0.1", "cheap");
+        Result second = handle("10.0.0.2", "cheap");
+
+        Result shed = handle("10.0.0.3", "cheap");
+        assertFalse(shed.allowed());
+        assertEquals(503, shed.response().getStatus());
+
+        interceptor.afterCompletion(first.request(), first.response(), handler("cheap"), null);
+        assertTrue(handle("10.0.0.3", "cheap").allowed());
+        interceptor.afterCompletion(second.request(), second.response(), handler("cheap"), null);
+    }
+
+    // Verifies that the concurrency limit grows and shrinks with the connection pool
+    @Test
+    void shouldFollowPoolSize() throws Exception {
+        poolSize.set(3);
+        List<Result> admitted = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            admitted.add(handle("10.0.0." + i, "cheap"));
+        }
+        assertTrue(admitted.stream().allMatch(Result::allowed));
+        assertEquals(503, handle("10.0.0.9", "cheap").response().getStatus());
+
+        // After shrinking, requests are only admitted again once the ones in flight are below the new limit
+        poolSize.set(1);
+        for (Result result : admitted.subList(0, 2)) {
+            interceptor.afterCompletion(result.request(), result.response(), handler("cheap"), null);
+        }
+        assertEquals(503, handle("10.0.0.9", "cheap").response().getStatus());
+        interceptor.afterCompletion(admitted.get(2).request(), admitted.get(2).response(), handler("cheap"), null);
+        assertTrue(handle("10.0.0.9", "cheap").allowed());
+    }
+
+    // Verifies that requests shed with 503 do not take tokens from the client's bucket
+    @Test
+    void shouldNotTakeTokensFromShedRequests() throws Exception {
+        Result first = handle("10.0.0.1", "cheap");
+        Result second = handle("10.0.0.1", "cheap");
+        for (int i = 0; i < 5; i++) {
+            assertEquals(503, handle("10.0.0.2", "expensive").response().getStatus());
+        }
+        interceptor.afterCompletion(first.request(), first.response(), handler("cheap"), null);
+        interceptor.afterCompletion(second.request(), second.response(), handler("cheap"), null);
+
+        // The whole burst of 20 tokens is still there
+        assertTrue(handleAndComplete("10.0.0.2", "expensive").allowed());
+        assertTrue(handleAndComplete("10.0.0.2", "expensive").allowed());
+    }
+
+    // Verifies that a request rejected with 429 gives its concurrency permit back
+    @Test
+    void shouldReleasePermitOfRejectedRequest() throws Exception {
+        handleAndComplete("10.0.0.1", "expensive");
+        handleAndComplete("10.0.0.1", "expensive");
+        for (int i = 0; i < 3; i++) {
+            assertEquals(429, handle("10.0.0.1", "expensive").response().getStatus());
+        }
+
+        assertTrue(handle("10.0.0.2", "cheap").allowed());
+        assertTrue(handle("10.0.0.3", "cheap").allowed());
+    }
+
+    // Verifies that handlers exempt from the concurrency limit are admitted while all permits are taken, but still take tokens
+    @Test
+    void shouldAdmitHandlerWithoutConcurrencyLimit() throws Exception {
+        Result first = handle("10.0.0.1", "cheap");
+        Result second = handle("10.0.0.2", "cheap");
+
+        assertTrue(handleAndComplete("10.0.0.3", "streaming").allowed());
+        assertTrue(handleAndComplete("10.0.0.3", "streaming").allowed());
+        assertEquals(429, handle("10.0.0.3", "streaming").response().getStatus());
+        // Completing them gave back no permits they did not take
+        assertEquals(503, handle("10.0.0.4", "cheap").response().getStatus());
+
+        interceptor.afterCompletion(first.request(), first.response(), handler("cheap"), null);
+        interceptor.afterCompletion(second.request(), second.response(), handler("cheap"), null);
+    }
+
+    // Verifies that an endpoint costing more than the capacity of a bucket is refused at startup
+    @Test
+    void shouldRejectCostAboveCapacity() throws Exception {
+        interceptor.checkCosts(List.of(handler("cheap"), handler("expensive")));
+
+        assertThrows(IllegalStateException.class, () -> interceptor.checkCosts(List.of(handler("tooExpensive"))));
+    }
+
+    record Result(MockHttpServletRequest request, MockHttpServletResponse response, boolean allowed) {
+    }
+
+    private Result handle(String client, String method) throws Exception {
+        var request = new MockHttpServletRequest();
+        request.setRemoteAddr(client);
+        var response = new MockHttpServletResponse();
+        return new Result(request, response, interceptor.preHandle(request, response, handler(method)));
+    }
+
+    private Result handleAndComplete(String client, String method) throws Exception {
+        Result result = handle(client, method);
+        interceptor.afterCompletion(result.request(), result.response(), handler(method), null);
+        return result;
+    }
+
+    private static HandlerMethod handler(String method) throws NoSuchMethodException {
+        return new HandlerMethod(new Handlers(), Handlers.class.getDeclaredMethod(method));
+    }
+}
@@ -2,9 +2,15 @@ package com.bryanchow.runnerz.run;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -18,8 +24,8 @@ class InMemoryRunRepositoryTest {
     @BeforeEach
     void setup() {
         repository = new InMemoryRunRepository();
-        repository.create(new Run(1, "Morning Run", LocalDateTime.now(), LocalDateTime.now().plusMinutes(30), 10, Location.OUTDOOR, null));
-        repository.create(new Run(2, "Evening Run", LocalDateTime.now(), LocalDateTime.now().plusMinutes(45), 15, Location.INDOOR, null));
+        repository.create(new Run(1L, "Morning Run", LocalDateTime.now(), LocalDateTime.now().plusMinutes(30), 10, Location.OUTDOOR, null, null));
+        repository.create(new Run(2L, "Evening Run", LocalDateTime.now(), LocalDateTime.now().plusMinutes(45), 15, Location.INDOOR, null, null));
     }
 
     // The @Test annotation marks this method as a test case to be run by the JUnit framework.
@@ -33,7 +39,7 @@ class InMemoryRunRepositoryTest {
     // Verifies that the findById method returns the correct run with the specified ID.
     @Test
     void shouldFindRunWithValidId() {
-        var run = repository.findById(1).get();
+        var run = repository.findById(1L).get();
         assertEquals("Morning Run", run.title());
         assertEquals(10, run.kilometers());
     }
@@ -43,7 +49,7 @@ class InMemoryRunRepositoryTest {
     void shouldNotFindRunWithInvalidId() {
         RunNotFoundException notFoundException = assertThrows(
                 RunNotFoundException.class,
-                () -> repository.findById(3).get()
+                () -> repository.findById(3L).get()
         );
 
         assertEquals("Run Not Found", notFoundException.getMessage());
@@ -52,12 +58,12 @@ class InMemoryRunRepositoryTest {
     // Verifies that the create method adds a new run to the repository.
     @Test
     void shouldCreateNewRun() {
-        repository.create(new Run(3,
+        repository.create(new Run(3L,
                 "Friday Morning Run",
                 LocalDateTime.now(),
                 LocalDateTime.now().plusMinutes(30),
                 3,
-                Location.INDOOR, null));
+                Location.INDOOR, null, null));
         List<Run> runs = repository.findAll();
         assertEquals(3, runs.size());
     }
@@ -65,13 +71,13 @@ class InMemoryRunRepositoryTest {
     // Verifies that the update method modifies an existing run in the repository.
     @Test
     void shouldUpdateRun() {
-        repository.update(new Run(1,
+        repository.update(new Run(1L,
                 "Monday Morning Run",
                 LocalDateTime.now(),
                 LocalDateTime.now().plusMinutes(30),
                 5,
-                Location.OUTDOOR, null), 1);
-        var run = repository.findById(1).get();
+                Location.OUTDOOR, null, null), 1L);
+        var run = repository.findById(1L).get();
         assertEquals("Monday Morning Run", run.title());
         assertEquals(5, run.kilometers());
         assertEquals(Location.OUTDOOR, run.location());
@@ -80,9 +86,49 @@ class InMemoryRunRepositoryTest {
     // Verifies that the delete method removes a run from the repository.
     @Test
     void shouldDeleteRun() {
-        repository.delete(1);
+        repository.delete(1L);
         List<Run> runs = repository.findAll();
         assertEquals(1, runs.size());
     }
 
-}
\ No newline at end of file
+    // Verifies that no update is lost when many writers increment the same run concurrently.
+    // Each writer reads the run, adds one kilometer and retries whenever its version is stale.
+    @Test
+    void shouldNotLoseUpdatesUnderConcurrentWriters() throws Exception {
+        int writers = 64;
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < writers; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                while (true) {
+                    Run current = repository.findById(1L).get();
+                    try {
+                        repository.update(new Run(current.id(),
+                                current.title(),
+                                current.startedOn(),
+                                current.completedOn(),
+                                current.kilometers() + 1,
+                                current.location(),
+                                null,
+                                current.version()), 1L);
+                        return null;
+                    } catch (OptimisticLockingFailureException e) {
+                        // Somebody else got in first, read the run again and retry
+                    }
+                }
+            }));
+        }
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+
+        var run = repository.findById(1L).get();
+        assertEquals(10 + writers, run.kilometers());
+        assertEquals(writers, run.version());
+    }
+
+}
@@ -2,10 +2,16 @@ package com.bryanchow.runnerz.run;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import com.bryanchow.runnerz.statement.StatementProperties;
+import com.bryanchow.runnerz.statement.StatementRecorder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.simple.JdbcClient;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -16,8 +22,9 @@ import static org.junit.jupiter.api.Assertions.*;
 // It focuses on configuring the necessary components for JDBC tests
 // and can include an in-memory database.
 @JdbcTest
-// Import the repository class for testing
-@Import(JdbcClientRunRepository.class)
+// Import the repository class for testing, with the statement timing it uses
+@Import({JdbcClientRunRepository.class, StatementRecorder.class, SimpleMeterRegistry.class, RunSegmentStore.class})
+@EnableConfigurationProperties({StatementProperties.class, RunTieringProperties.class})
 // Use the actual database configuration instead of an in-memory database
 @AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
 class JdbcClientRunRepositoryTest {
@@ -26,21 +33,24 @@ class JdbcClientRunRepositoryTest {
     @Autowired
     JdbcClientRunRepository repository;
 
+    @Autowired
+    JdbcClient jdbcClient;
+
     @BeforeEach
     void setup() {
-        repository.create(new Run(1,
+        repository.create(new Run(1L,
                 "Monday Morning Run",
                 LocalDateTime.now(),
                 LocalDateTime.now().plusMinutes(30),
                 3,
-                Location.INDOOR, null));
+                Location.INDOOR, null, null));
 
-        repository.create(new Run(2,
+        repository.create(new Run(2L,
                 "Wednesday Evening Run",
                 LocalDateTime.now(),
                 LocalDateTime.now().plusMinutes(60),
                 6,
-                Location.INDOOR, null));
+                Location.INDOOR, null, null));
     }
 
     // Verifies that the findAll method returns the correct number of runs.
@@ -53,7 +63,7 @@ class JdbcClientRunRepositoryTest {
     // Verifies that the findById method returns the correct run with the specified ID.
     @Test
     void shouldFindRunWithValidId() {
-        var run = repository.findById(1).get();
+        var run = repository.findById(1L).get();
         assertEquals("Monday Morning Run", run.title());
         assertEquals(3, run.kilometers());
     }
@@ -61,33 +71,45 @@ class JdbcClientRunRepositoryTest {
     // Verifies that the findById method returns an empty Optional when an invalid ID is provided.
     @Test
     void shouldNotFindRunWithInvalidId() {
-        var run = repository.findById(3);
+        var run = repository.findById(3L);
         assertTrue(run.isEmpty());
     }
 
     // Verifies that the create method adds a new run to the repository.
     @Test
     void shouldCreateNewRun() {
-        repository.create(new Run(3,
+        repository.create(new Run(3L,
                 "Friday Morning Run",
                 LocalDateTime.now(),
                 LocalDateTime.now().plusMinutes(30),
                 3,
-                Location.INDOOR, null));
+                Location.INDOOR, null, null));
         List<Run> runs = repository.findAll();
         assertEquals(3, runs.size());
     }
 
+    // Verifies that an id cannot be used twice, even for a run in another monthly partition
+    @Test
+    void shouldRejectDuplicateIdInAnotherPartition() {
+        assertThrows(DuplicateKeyException.class, () -> repository.create(new Run(1L,
+                "Monday Morning Run a Year Ago",
+                LocalDateTime.now().minusYears(1),
+                LocalDateTime.now().minusYears(1).plusMinutes(30),
+                3,
+                Location.INDOOR, null, null)));
+        assertEquals(2, repository.count());
+    }
+
     // Verifies that the update method modifies an existing run in the repository.
     @Test
     void shouldUpdateRun() {
-        repository.update(new Run(1,
+        repository.update(new Run(1L,
                 "Monday Morning Run",
                 LocalDateTime.now(),
                 LocalDateTime.now().plusMinutes(30),
                 5,
-                Location.OUTDOOR, null), 1);
-        var run = repository.findById(1).get();
+                Location.OUTDOOR, null, null), 1L);
+        var run = repository.findById(1L).get();
         assertEquals("Monday Morning Run", run.title());
         assertEquals(5, run.kilometers());
         assertEquals(Location.OUTDOOR, run.location());
@@ -96,9 +118,28 @@ class JdbcClientRunRepositoryTest {
     // Verifies that the delete method removes a run from the repository.
     @Test
     void shouldDeleteRun() {
-        repository.delete(1);
+        repository.delete(1L);
         List<Run> runs = repository.findAll();
         assertEquals(1, runs.size());
     }
 
-}
\ No newline at end of file
+    // Verifies that every write appends the run to the history, a deletion as one more version
+    @Test
+    void shouldAppendHistoryForEachWrite() {
+        repository.update(new Run(1L,
+                "Monday Long Run",
+                LocalDateTime.now(),
+                LocalDateTime.now().plusMinutes(90),
+                15,
+                Location.OUTDOOR, null, null), 1L);
+        repository.delete(1L);
+
+        List<Boolean> deleted = jdbcClient.sql("SELECT deleted FROM run_history WHERE run_id = 1 ORDER BY version")
+                .query(Boolean.class)
+                .list();
+        assertEquals(List.of(false, false, true), deleted);
+        assertEquals("Monday Long Run", jdbcClient.sql("SELECT title FROM run_history WHERE run_id = 1 AND version = 1")
+                .query(String.class)
+                .single());
+    }
+}
@@ -0,0 +1,88 @@
+package com.bryanchow.runnerz.run;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.arrow.compression.CommonsCompressionFactory;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.ipc.ArrowFileReader;
+import org.apache.arrow.vector.util.ByteArrayReadableSeekableByteChannel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RunArrowWriterTest {
+
+    private static final Logger log = LoggerFactory.getLogger(RunArrowWriterTest.class);
+
+    List<Run> runs;
+
+    @BeforeEach
+    void setup() {
+        runs = new ArrayList<>();
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 6, 0);
+        for (int i = 1; i <= 100_000; i++) {
+            LocalDateTime startedOn = start.plusMinutes(i * 37L);
+            runs.add(new Run((long) i,
+                    i % 3 == 0 ? "Morning Run" : "Tempo Run " + (i % 50),
+                    startedOn,
+                    startedOn.plusMinutes(20 + i % 90),
+                    1 + i % 42,
+                    i % 2 == 0 ? Location.INDOOR : Location.OUTDOOR,
+                    null,
+                    i % 5));
+        }
+    }
+
+    // Verifies that all runs are written in chunks and can be read back
+    @Test
+    void shouldWriteRunsInChunks() throws Exception {
+        var out = new ByteArrayOutputStream();
+        try (var writer = new RunArrowWriter(out, 8192)) {
+            runs.forEach(writer::write);
+            assertEquals(runs.size(), writer.rowCount());
+        }
+
+        try (var allocator = new RootAllocator();
+             var reader = new ArrowFileReader(new ByteArrayReadableSeekableByteChannel(out.toByteArray()), allocator, CommonsCompressionFactory.INSTANCE)) {
+            // 100,000 runs in chunks of 8192 make 13 record batches
+            assertEquals(13, reader.getRecordBlocks().size());
+            reader.loadNextBatch();
+            var root = reader.getVectorSchemaRoot();
+            assertEquals(8192, root.getRowCount());
+            assertEquals(1L, ((BigIntVector) root.getVector("id")).get(0));
+            assertEquals("Tempo Run 1", new String(((VarCharVector) root.getVector("title")).get(0)));
+        }
+    }
+
+    // Compares the Arrow file with the JSON representation served by GET /api/runs
+    @Test
+    void shouldBeSmallerThanJson() throws Exception {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+        long jsonStart = System.nanoTime();
+        byte[] json = objectMapper.writeValueAsBytes(runs);
+        long jsonMillis = (System.nanoTime() - jsonStart) / 1_000_000;
+
+        long arrowStart = System.nanoTime();
+        var arrow = new ByteArrayOutputStream();
+        try (var writer = new RunArrowWriter(arrow, 8192)) {
+            runs.forEach(writer::write);
+        }
+        long arrowMillis = (System.nanoTime() - arrowStart) / 1_000_000;
+
+        log.info("{} runs: JSON {} bytes in {} ms, Arrow {} bytes in {} ms",
+                runs.size(), json.length, jsonMillis, arrow.size(), arrowMillis);
+        assertTrue(arrow.size() < json.length / 4, "Arrow export should be a fraction of the JSON size");
+    }
+}
@@ -6,8 +6,10 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.web.client.RestClient;
 
+import java.net.URI;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -16,6 +18,9 @@ import static org.junit.jupiter.api.Assertions.*;
 // @SpringBootTest annotation indicates that the tests are running with the full Spring Boot context
 // The webEnvironment attribute is set to RANDOM_PORT to start the application with a random port
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+// A context of its own, so the seed runs are loaded fresh: a cached context may have
+// seen the database reset by another test class (beforeValidate.sql) or its runs changed
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_CLASS)
 class RunControllerIntTest {
 
     // The random port for the test server injected by Spring Boot
@@ -54,7 +59,7 @@ class RunControllerIntTest {
 
         // Assert that the run with ID 1 has the expected attributes
         assertAll(
-                () -> assertEquals(1, run.id()),
+                () -> assertEquals(1L, run.id()),
                 () -> assertEquals("Noon Run", run.title()),
                 () -> assertEquals("2024-02-20T06:05", run.startedOn().toString()),
                 () -> assertEquals("2024-02-20T10:27", run.completedOn().toString()),
@@ -65,7 +70,7 @@ class RunControllerIntTest {
     // Verify the endpoint for creating a new run returns a 201 Created status
     @Test
     void shouldCreateNewRun() {
-        Run run = new Run(11, "Evening Run", LocalDateTime.now(), LocalDateTime.now().plusHours(2), 10, Location.OUTDOOR, null);
+        Run run = new Run(null, "Evening Run", LocalDateTime.now(), LocalDateTime.now().plusHours(2), 10, Location.OUTDOOR, null, null);
 
         // Perform a POST request to /api/runs to create a new run
         ResponseEntity<Void> newRun = restClient.post()
@@ -75,6 +80,13 @@ class RunControllerIntTest {
                 .toBodilessEntity();
 
         assertEquals(201, newRun.getStatusCodeValue());
+        assertNotNull(newRun.getHeaders().getLocation());
+
+        // Leave the seed runs as they were for the other tests
+        restClient.delete()
+                .uri(newRun.getHeaders().getLocation())
+                .retrieve()
+                .toBodilessEntity();
     }
 
     // Verify the endpoint for updating an existing run returns a 204 No Content status
@@ -99,9 +111,18 @@ class RunControllerIntTest {
     // Verify the endpoint for deleting a run returns a 204 No Content status
     @Test
     void shouldDeleteRun() {
-        // Perform a DELETE request to delete the run with ID 1
+        // Delete a run of its own, the other tests expect the seed runs (e.g. ID 1) to be there
+        URI location = restClient.post()
+                .uri("/api/runs")
+                .body(new Run(null, "Run to delete", LocalDateTime.now(), LocalDateTime.now().plusHours(1), 5, Location.OUTDOOR, null, null))
+                .retrieve()
+                .toBodilessEntity()
+                .getHeaders()
+                .getLocation();
+
+        // Perform a DELETE request to delete the run
         ResponseEntity<Void> run = restClient.delete()
-                .uri("/api/runs/1")
+                .uri(location)
                 .retrieve()
                 .toBodilessEntity();
 
@@ -1,14 +1,23 @@
 package com.bryanchow.runnerz.run;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.bryanchow.runnerz.idempotency.IdempotencyProperties;
+import com.bryanchow.runnerz.idempotency.InMemoryIdempotencyStore;
+import com.bryanchow.runnerz.ratelimit.RateLimitProperties;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentMatchers;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -17,13 +26,24 @@ import java.util.Optional;
 
 
 import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 // WebMvcTest annotation is used to test Spring MVC controllers.
 @WebMvcTest(RunController.class)
+// Runs are also served as CBOR and Smile, and the idempotency keys of POST requests are kept in memory
+@Import({RunMessageConverterConfig.class, InMemoryIdempotencyStore.class})
+@EnableConfigurationProperties({IdempotencyProperties.class, RateLimitProperties.class})
 class RunControllerTest {
 
     // MockMvc is used to perform HTTP requests in tests
@@ -38,18 +58,27 @@ class RunControllerTest {
     @MockitoBean
     RunRepository repository;
 
+    // Without a database the transaction of a create does nothing
+    @MockitoBean
+    PlatformTransactionManager transactionManager;
+
     // List of runs to be used in tests
     private final List<Run> runs = new ArrayList<>();
 
     // Initialize the test data before each test
     @BeforeEach
     void setUp() {
-        runs.add(new Run(1,
+        runs.add(new Run(1L,
                 "Monday Morning Run",
                 LocalDateTime.now(),
                 LocalDateTime.now().plusMinutes(30),
                 3,
-                Location.INDOOR, null));
+                Location.INDOOR, null, null));
+        // New runs get their id when they are saved
+        when(repository.save(any(Run.class))).thenAnswer(invocation -> {
+            Run run = invocation.getArgument(0);
+            return new Run(42L, run.title(), run.startedOn(), run.completedOn(), run.kilometers(), run.location(), null, 0);
+        });
     }
 
     // Verify that the findAll method returns all runs
@@ -64,18 +93,74 @@ class RunControllerTest {
                 .andExpect(jsonPath("$.size()", is(runs.size())));  // Verify that the response contains all runs
     }
 
+    // Verify that runs are served as CBOR when the client asks for it
+    @Test
+    void shouldFindAllRunsAsCbor() throws Exception {
+        when(repository.findAll()).thenReturn(runs);
+        ObjectMapper cborMapper = Jackson2ObjectMapperBuilder.cbor().build();
+
+        byte[] body = mvc.perform(get("/api/runs").accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        Run[] read = cborMapper.readValue(body, Run[].class);
+        assertEquals(runs.getFirst(), read[0]);
+    }
+
+    // Verify that a run can be created from a CBOR request body
+    @Test
+    void shouldCreateNewRunFromCbor() throws Exception {
+        var run = new Run(null, "test", LocalDateTime.now(), LocalDateTime.now().plusMinutes(30), 1, Location.INDOOR, null, null);
+        ObjectMapper cborMapper = Jackson2ObjectMapperBuilder.cbor().featuresToEnable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build();
+
+        mvc.perform(post("/api/runs")
+                        .contentType(MediaType.APPLICATION_CBOR)
+                        .content(cborMapper.writeValueAsBytes(run))
+                )
+                .andExpect(status().isCreated());
+    }
+
+    // Verify that the search method passes the page as limit and offset to the repository
+    @Test
+    void shouldSearchRunsByTitle() throws Exception {
+        when(repository.search("morning", 10, 20L)).thenReturn(runs);
+
+        mvc.perform(get("/api/runs/search").param("q", "morning").param("page", "2").param("size", "10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.size()", is(1)))
+                .andExpect(jsonPath("$[0].title", is("Monday Morning Run")));
+    }
+
+    // Verify that a 400 Bad Request status is returned for an oversized page
+    @Test
+    void shouldRejectOversizedSearchPage() throws Exception {
+        mvc.perform(get("/api/runs/search").param("q", "morning").param("size", "1000"))
+                .andExpect(status().isBadRequest());
+    }
+
+    // Verify that a 400 Bad Request status is returned for a position that is not a number
+    @Test
+    void shouldRejectNonFinitePosition() throws Exception {
+        mvc.perform(get("/api/runs/near").param("lat", "NaN").param("lng", "4.89"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(get("/api/runs/within").param("south", "52.3").param("west", "-Infinity").param("north", "52.4").param("east", "5.0"))
+                .andExpect(status().isBadRequest());
+        verify(repository, never()).findNear(ArgumentMatchers.anyDouble(), ArgumentMatchers.anyDouble(), ArgumentMatchers.anyDouble(), ArgumentMatchers.anyInt());
+    }
+
     // Verify that the findById method returns a run by its ID
     @Test
     void shouldFindOneRun() throws Exception {
         Run run = runs.getFirst();  // get the first run
-        // When the findById method is called with any integer argument, it will return the run
-        when(repository.findById(ArgumentMatchers.anyInt())).thenReturn(Optional.of(run));
+        // When the findById method is called with any id, it will return the run
+        when(repository.findById(ArgumentMatchers.anyLong())).thenReturn(Optional.of(run));
 
         // Perform a GET request to /api/runs/1 and validate the response
         mvc.perform(get("/api/runs/1"))
                 .andExpect(status().isOk())
                 // Verify that the response contains the correct run details
-                .andExpect(jsonPath("$.id", is(run.id())))
+                .andExpect(jsonPath("$.id", is(run.id().intValue())))
                 .andExpect(jsonPath("$.title", is(run.title())))
                 .andExpect(jsonPath("$.kilometers", is(run.kilometers())))
                 .andExpect(jsonPath("$.location", is(run.location().toString())));
@@ -92,20 +177,68 @@ class RunControllerTest {
     // Verify that a new run is created successfully
     @Test
     void shouldCreateNewRun() throws Exception {
-        var run = new Run(null, "test", LocalDateTime.now(), LocalDateTime.now().plusMinutes(30), 1, Location.INDOOR, null);
+        var run = new Run(null, "test", LocalDateTime.now(), LocalDateTime.now().plusMinutes(30), 1, Location.INDOOR, null, null);
 
         // Perform a POST request to /api/runs with the run object as the request body
         mvc.perform(post("/api/runs")
                         .contentType(MediaType.APPLICATION_JSON)  // Set the content type to JSON
                         .content(objectMapper.writeValueAsString(run))  // Convert the run object to JSON
                 )
-                .andExpect(status().isCreated());  // Verify that the status code is 201 Created
+                .andExpect(status().isCreated())  // Verify that the status code is 201 Created
+                .andExpect(header().string("Location", "http://localhost/api/runs/42"));  // Verify the URL of the new run
+    }
+
+    // Verify that the server assigns the id of a new run, ignoring an id sent by the client
+    @Test
+    void shouldIgnoreClientSuppliedIdOnCreate() throws Exception {
+        var run = new Run(7L, "test", LocalDateTime.now(), LocalDateTime.now().plusMinutes(30), 1, Location.INDOOR, null, null);
+
+        mvc.perform(post("/api/runs")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(run))
+                )
+                .andExpect(status().isCreated());
+
+        verify(repository).save(new Run(null, run.title(), run.startedOn(), run.completedOn(), run.kilometers(), run.location(), null, null));
+    }
+
+    // Verify that a retried POST with the same Idempotency-Key gets the original answer without saving the run again
+    @Test
+    void shouldCreateRunOnlyOnceForRetriedRequest() throws Exception {
+        var run = new Run(null, "test", LocalDateTime.now(), LocalDateTime.now().plusMinutes(30), 1, Location.INDOOR, null, null);
+        String body = objectMapper.writeValueAsString(run);
+
+        mvc.perform(post("/api/runs").contentType(MediaType.APPLICATION_JSON).header("Idempotency-Key", "retried-key").content(body))
+                .andExpect(status().isCreated())
+                .andExpect(header().doesNotExist("Idempotent-Replayed"));
+        mvc.perform(post("/api/runs").contentType(MediaType.APPLICATION_JSON).header("Idempotency-Key", "retried-key").content(body))
+                .andExpect(status().isCreated())
+                .andExpect(header().string("Idempotent-Replayed", "true"))
+                .andExpect(header().string("Location", "http://localhost/api/runs/42"));
+
+        verify(repository, times(1)).save(any(Run.class));
+    }
+
+    // Verify that a 422 Unprocessable Entity status is returned when an Idempotency-Key is reused for a different run
+    @Test
+    void shouldRejectIdempotencyKeyReusedForDifferentRun() throws Exception {
+        var run = new Run(null, "test", LocalDateTime.now(), LocalDateTime.now().plusMinutes(30), 1, Location.INDOOR, null, null);
+        var other = new Run(null, "other", LocalDateTime.now(), LocalDateTime.now().plusMinutes(30), 1, Location.INDOOR, null, null);
+
+        mvc.perform(post("/api/runs").contentType(MediaType.APPLICATION_JSON).header("Idempotency-Key", "reused-key").content(objectMapper.writeValueAsString(run)))
+                .andExpect(status().isCreated());
+        mvc.perform(post("/api/runs").contentType(MediaType.APPLICATION_JSON).header("Idempotency-Key", "reused-key").content(objectMapper.writeValueAsString(other)))
+                .andExpect(status().isUnprocessableEntity());
+
+        verify(repository, never()).save(other);
     }
 
     // Verify that an existing run is updated successfully
     @Test
     void shouldUpdateRun() throws Exception {
-        var run = new Run(null, "test", LocalDateTime.now(), LocalDateTime.now().plusMinutes(30), 1, Location.INDOOR, null);
+        var run = new Run(null, "test", LocalDateTime.now(), LocalDateTime.now().plusMinutes(30), 1, Location.INDOOR, null, null);
+        // Without a version in the request, the update is applied to the currently stored version
+        when(repository.findById(1L)).thenReturn(Optional.of(runs.getFirst()));
 
         // Perform a PUT request to /api/runs/1 with the updated run object as the request body
         mvc.perform(put("/api/runs/1")
@@ -115,16 +248,127 @@ class RunControllerTest {
                 .andExpect(status().isNoContent());
     }
 
+    // Verify that a 409 Conflict status is returned when the run was modified by someone else
+    @Test
+    void shouldRejectUpdateOfStaleVersion() throws Exception {
+        var run = new Run(1L, "test", LocalDateTime.now(), LocalDateTime.now().plusMinutes(30), 1, Location.INDOOR, null, 0);
+        doThrow(new OptimisticLockingFailureException("stale")).when(repository).save(any(Run.class));
+        when(repository.existsById(1L)).thenReturn(true);
+
+        mvc.perform(put("/api/runs/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(run))
+                )
+                .andExpect(status().isConflict());
+    }
+
+    // Verify that a patch is re-applied to the latest run when a concurrent update wins the race
+    @Test
+    void shouldRetryPatchAfterConcurrentUpdate() throws Exception {
+        when(repository.findById(1L)).thenReturn(Optional.of(runs.getFirst()));
+        when(repository.patch(any(Run.class), any(Run.class)))
+                .thenThrow(new OptimisticLockingFailureException("stale"))
+                .thenReturn(true);
+
+        mvc.perform(patch("/api/runs/1")
+                        .contentType("application/merge-patch+json")
+                        .content("{\"title\": \"Tempo Run\"}")
+                )
+                .andExpect(status().isNoContent());
+
+        verify(repository, times(2)).patch(any(Run.class), any(Run.class));
+    }
+
+    // Verify that a 409 Conflict status is returned when a patch asks for a version that is no longer current
+    @Test
+    void shouldRejectPatchOfStaleVersion() throws Exception {
+        when(repository.findById(1L)).thenReturn(Optional.of(runs.getFirst()));
+
+        mvc.perform(patch("/api/runs/1")
+                        .contentType("application/merge-patch+json")
+                        .content("{\"title\": \"Tempo Run\", \"version\": 7}")
+                )
+                .andExpect(status().isConflict());
+    }
+
+    // Verify that a 400 Bad Request status is returned for a patch that is not a JSON object, has a version
+    // that is not an integer, or clears a required field
+    @Test
+    void shouldRejectInvalidPatch() throws Exception {
+        when(repository.findById(1L)).thenReturn(Optional.of(runs.getFirst()));
+
+        for (String patch : List.of("[]", "\"x\"", "1", "{\"version\": \"abc\"}", "{\"version\": 1.5}",
+                "{\"location\": null}", "{\"kilometers\": null}")) {
+            mvc.perform(patch("/api/runs/1")
+                            .contentType("application/merge-patch+json")
+                            .content(patch)
+                    )
+                    .andExpect(status().isBadRequest());
+        }
+        verify(repository, never()).patch(any(Run.class), any(Run.class));
+    }
+
     // Verify that a run is deleted successfully
     @Test
     public void shouldDeleteRun() throws Exception {
         Run run = runs.getFirst();
 
-        // When the findById method is called with any integer argument, it will return the run
-        when(repository.findById(ArgumentMatchers.anyInt())).thenReturn(Optional.of(run));
+        // When the findById method is called with any id, it will return the run
+        when(repository.findById(ArgumentMatchers.anyLong())).thenReturn(Optional.of(run));
 
         // Perform a DELETE request to /api/runs/1 and verify that the status code is 204 No Content
         mvc.perform(delete("/api/runs/1"))
                 .andExpect(status().isNoContent());
     }
-}
\ No newline at end of file
+
+    // Verify that a 409 Conflict status is returned when the run is updated while it is being deleted
+    @Test
+    void shouldRejectDeleteOfConcurrentlyUpdatedRun() throws Exception {
+        when(repository.findById(1L)).thenReturn(Optional.of(runs.getFirst()));
+        doThrow(new OptimisticLockingFailureException("stale")).when(repository).delete(any(Run.class));
+        when(repository.existsById(1L)).thenReturn(true);
+
+        mvc.perform(delete("/api/runs/1"))
+                .andExpect(status().isConflict());
+    }
+
+    // Verify that updating, patching and deleting an archived run all return the same 409 Conflict status
+    @Test
+    void shouldRejectWritesToArchivedRun() throws Exception {
+        // The run is found in the archived runs, but no write matches a row of the run table
+        when(repository.findById(1L)).thenReturn(Optional.of(runs.getFirst()));
+        when(repository.isArchived(1L)).thenReturn(true);
+        doThrow(new OptimisticLockingFailureException("archived")).when(repository).save(any(Run.class));
+        doThrow(new OptimisticLockingFailureException("archived")).when(repository).patch(any(Run.class), any(Run.class));
+        doThrow(new OptimisticLockingFailureException("archived")).when(repository).delete(any(Run.class));
+        var run = new Run(null, "test", LocalDateTime.now(), LocalDateTime.now().plusMinutes(30), 1, Location.INDOOR, null, null);
+
+        mvc.perform(put("/api/runs/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(run))
+                )
+                .andExpect(status().isConflict())
+                .andExpect(status().reason("Run is archived and read-only"));
+        mvc.perform(patch("/api/runs/1")
+                        .contentType("application/merge-patch+json")
+                        .content("{\"title\": \"Tempo Run\"}")
+                )
+                .andExpect(status().isConflict())
+                .andExpect(status().reason("Run is archived and read-only"));
+        mvc.perform(delete("/api/runs/1"))
+                .andExpect(status().isConflict())
+                .andExpect(status().reason("Run is archived and read-only"));
+
+        // The patch is not retried, the run stays read-only
+        verify(repository, times(1)).patch(any(Run.class), any(Run.class));
+    }
+
+    // Verify that a 404 Not Found status is returned when deleting a run that does not exist
+    @Test
+    void shouldReturnNotFoundWhenDeletingUnknownRun() throws Exception {
+        when(repository.findById(99L)).thenReturn(Optional.empty());
+
+        mvc.perform(delete("/api/runs/99"))
+                .andExpect(status().isNotFound());
+    }
+}
@@ -0,0 +1,69 @@
+package com.bryanchow.runnerz.run;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.simple.JdbcClient;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs against the actual Postgres database, which sets inserted_at and keeps the export watermark
+@JdbcTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class RunExporterTest {
+
+    @Autowired
+    DataSource dataSource;
+
+    @Autowired
+    JdbcClient jdbcClient;
+
+    @TempDir
+    Path directory;
+
+    RunExporter exporter;
+
+    @BeforeEach
+    void setup() {
+        // Without a lag, as the test transaction is never left open by anyone else
+        exporter = new RunExporter(dataSource, new RunExportProperties(directory, 100, Duration.ZERO));
+    }
+
+    // Verifies that a scheduled export picks up a run inserted after the previous one, even if it started long before
+    @Test
+    void shouldExportRunsInsertedSincePreviousExport() {
+        insert(1L, LocalDateTime.of(2024, 3, 1, 7, 0));
+        insert(2L, LocalDateTime.of(2024, 3, 2, 7, 0));
+
+        RunExport first = exporter.exportInserted();
+        assertEquals(2, first.rows());
+        assertNull(first.insertedFrom());
+
+        // Added late, with a start before everything exported so far
+        insert(3L, LocalDateTime.of(2023, 1, 1, 7, 0));
+
+        RunExport second = exporter.exportInserted();
+        assertEquals(1, second.rows());
+        assertEquals(first.insertedBefore(), second.insertedFrom());
+
+        // The watermark is kept in the database, so a new exporter (e.g. after a restart) continues from it
+        RunExport third = new RunExporter(dataSource, new RunExportProperties(directory, 100, Duration.ZERO)).exportInserted();
+        assertEquals(0, third.rows());
+        assertEquals(second.insertedBefore(), third.insertedFrom());
+    }
+
+    // inserted_at is set from the clock, as time does not move within the test transaction (LOCALTIMESTAMP)
+    private void insert(long id, LocalDateTime startedOn) {
+        jdbcClient.sql("INSERT INTO run (id, title, started_on, completed_on, kilometers, location, inserted_at) VALUES (?, 'Morning Run', ?, ?, 5, 'OUTDOOR', clock_timestamp())")
+                .params(id, startedOn, startedOn.plusMinutes(30))
+                .update();
+    }
+}
@@ -0,0 +1,67 @@
+package com.bryanchow.runnerz.run;
+
+import com.bryanchow.runnerz.user.Geo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RunGeoIndexTest {
+
+    RunGeoIndex index;
+
+    @BeforeEach
+    void setup() {
+        index = new RunGeoIndex();
+        index.add(run(1L, new Geo(52.3676, 4.9041)));    // Amsterdam
+        index.add(run(2L, new Geo(52.3731, 4.8922)));    // 1 km from Amsterdam center
+        index.add(run(3L, new Geo(51.9244, 4.4777)));    // Rotterdam, 57 km away
+        index.add(run(4L, new Geo(-16.5, 179.99)));      // Fiji, east of the antimeridian
+        index.add(run(5L, new Geo(-16.5, -179.99)));     // Fiji, west of the antimeridian
+        index.add(run(6L, null));                        // no start position
+    }
+
+    // Verifies that nearby runs are found nearest first, within the radius only
+    @Test
+    void shouldFindNearestRunsWithinRadius() {
+        Geo center = new Geo(52.3731, 4.8922);
+
+        assertEquals(List.of(2L, 1L), ids(index.near(center, 5, 10)));
+        assertEquals(List.of(2L, 1L, 3L), ids(index.near(center, 100, 10)));
+        assertEquals(List.of(2L), ids(index.near(center, 100, 1)));
+    }
+
+    // Verifies that a search near the antimeridian finds runs on both sides of it
+    @Test
+    void shouldFindRunsAcrossAntimeridian() {
+        assertEquals(List.of(4L, 5L), ids(index.near(new Geo(-16.5, 179.995), 5, 10)));
+    }
+
+    // Verifies that the runs in a bounding box are found
+    @Test
+    void shouldFindRunsWithinBox() {
+        assertEquals(List.of(1L, 2L, 3L), ids(index.within(51, 4, 53, 5, 10)));
+        assertEquals(List.of(1L, 2L), ids(index.within(52.2, 4.8, 52.5, 5, 10)));
+    }
+
+    // Verifies that moved and removed runs are found at their new position only
+    @Test
+    void shouldFollowMovedAndRemovedRuns() {
+        index.add(run(3L, new Geo(52.3680, 4.9000)));
+        index.remove(1L);
+
+        assertEquals(List.of(2L, 3L), ids(index.within(52.2, 4.8, 52.5, 5, 10)));
+        assertTrue(index.within(51, 4, 52, 5, 10).isEmpty());
+    }
+
+    private static Run run(Long id, Geo start) {
+        return new Run(id, "Run " + id, LocalDateTime.now(), LocalDateTime.now().plusMinutes(30), 5, Location.OUTDOOR, start, 0);
+    }
+
+    private static List<Long> ids(List<Run> runs) {
+        return runs.stream().map(Run::id).toList();
+    }
+}
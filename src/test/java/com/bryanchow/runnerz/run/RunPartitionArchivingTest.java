@@ -0,0 +1,147 @@
+package com.bryanchow.runnerz.run;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Two instances of the application sharing the database and the segment directory. Each archives in
+// transactions of its own, so the runs are committed, in a month no other test uses, and removed afterwards
+@JdbcTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class RunPartitionArchivingTest {
+
+    static final String PARTITION = "run_y2019m06";
+    static final YearMonth MONTH = YearMonth.of(2019, 6);
+    static final long FIRST_ID = 1_900_000;
+
+    @Autowired
+    JdbcClient jdbcClient;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void setup() {
+        dropPartition();
+        jdbcClient.sql("CREATE TABLE " + PARTITION + " PARTITION OF run FOR VALUES FROM ('2019-06-01') TO ('2019-07-01')").update();
+        // 5 runs fill 2 segments of 3 runs
+        for (long id = FIRST_ID; id < FIRST_ID + 5; id++) {
+            LocalDateTime startedOn = LocalDateTime.of(2019, 6, (int) (id - FIRST_ID) + 1, 7, 0);
+            jdbcClient.sql("INSERT INTO run (id, title, started_on, completed_on, kilometers, location) VALUES (?, ?, ?, ?, 5, 'OUTDOOR')")
+                    .params(id, "Run " + id, startedOn, startedOn.plusMinutes(30))
+                    .update();
+        }
+    }
+
+    @AfterEach
+    void dropPartition() {
+        jdbcClient.sql("DROP TABLE IF EXISTS " + PARTITION + ", " + RunPartitionMaintainer.detachedName(PARTITION)).update();
+        jdbcClient.sql("DELETE FROM run_archive WHERE partition = :partition").param("partition", PARTITION).update();
+    }
+
+    // Verifies that of two instances archiving the same partition at the same time, one writes its segments and the other skips it
+    @Test
+    void shouldArchivePartitionOnceAcrossInstances() throws Exception {
+        Instance first = instance(directory, Duration.ofDays(7));
+        Instance second = instance(directory, Duration.ofDays(7));
+        CyclicBarrier start = new CyclicBarrier(2);
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(2)) {
+            List<Future<Object>> archiving = Stream.of(first, second)
+                    .map(instance -> executor.submit(() -> {
+                        start.await();
+                        instance.maintainer().archivePartition(PARTITION, MONTH);
+                        return null;
+                    }))
+                    .toList();
+            for (Future<Object> future : archiving) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        }
+
+        assertFalse(first.maintainer().partitionNames().contains(PARTITION));
+        assertEquals(2, jdbcClient.sql("SELECT segments FROM run_archive WHERE partition = :partition")
+                .param("partition", PARTITION).query(Integer.class).single());
+        // Nothing left over by the instance that skipped it
+        assertEquals(List.of("run_y2019m06-0001.seg", "run_y2019m06-0002.seg"), segmentFiles());
+        assertEquals(5, jdbcClient.sql("SELECT count(*) FROM " + RunPartitionMaintainer.detachedName(PARTITION))
+                .query(Integer.class).single());
+        // The instance that skipped it finds the runs once it picked up the segments of the other
+        first.store().refreshSegments();
+        second.store().refreshSegments();
+        for (long id = FIRST_ID; id < FIRST_ID + 5; id++) {
+            assertTrue(first.store().findById(id).isPresent());
+            assertTrue(second.store().findById(id).isPresent());
+        }
+    }
+
+    // Verifies that a detached partition is kept for keep-detached, and only dropped by an instance that reads all its segments
+    @Test
+    void shouldDropDetachedPartitionOnlyOnceItsSegmentsAreShared() {
+        instance(directory, Duration.ofDays(7)).maintainer().archivePartition(PARTITION, MONTH);
+
+        instance(directory, Duration.ofDays(7)).maintainer().dropDetachedPartitions();
+        assertTrue(detachedPartitionExists());
+
+        // An instance whose segment directory is not the shared one
+        instance(directory.resolve("elsewhere"), Duration.ZERO).maintainer().dropDetachedPartitions();
+        assertTrue(detachedPartitionExists());
+
+        instance(directory, Duration.ZERO).maintainer().dropDetachedPartitions();
+        assertFalse(detachedPartitionExists());
+        assertTrue(jdbcClient.sql("SELECT dropped FROM run_archive WHERE partition = :partition")
+                .param("partition", PARTITION).query(Boolean.class).single());
+    }
+
+    private record Instance(RunSegmentStore store, RunPartitionMaintainer maintainer) {
+    }
+
+    // Archives to segments of 3 runs
+    private Instance instance(Path segments, Duration keepDetached) {
+        var tiering = new RunTieringProperties(segments, 3, 2, keepDetached);
+        var store = new RunSegmentStore(tiering);
+        return new Instance(store, new RunPartitionMaintainer(jdbcClient, new RunPartitionProperties(1, 2),
+                new RunWriteGeneration(jdbcClient), store, tiering, transactionManager));
+    }
+
+    private boolean detachedPartitionExists() {
+        return jdbcClient.sql("SELECT to_regclass(:name) IS NOT NULL")
+                .param("name", RunPartitionMaintainer.detachedName(PARTITION))
+                .query(Boolean.class)
+                .single();
+    }
+
+    private List<String> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString()).sorted().toList();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.bryanchow.runnerz.run;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs against the actual Postgres database, because partitioning is a Postgres feature
+@JdbcTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class RunPartitionMaintainerTest {
+
+    @Autowired
+    JdbcClient jdbcClient;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path directory;
+
+    RunSegmentStore segmentStore;
+    RunPartitionMaintainer maintainer;
+
+    @BeforeEach
+    void setup() {
+        maintainer = maintainer(directory);
+        maintainer.maintain(YearMonth.of(2024, 3));
+    }
+
+    // Verifies that a partition is created for every month of the window
+    @Test
+    void shouldCreateMonthlyPartitions() {
+        List<String> partitions = maintainer.partitionNames();
+        assertTrue(partitions.containsAll(List.of("run_y2024m01", "run_y2024m02", "run_y2024m03", "run_y2024m04")));
+    }
+
+    // Verifies that partitions falling out of the retention window are written to segments and detached
+    @Test
+    void shouldArchivePartitionsOutsideRetention() {
+        // 5 runs fill 2 segments of 3 runs
+        for (long id = 1; id <= 5; id++) {
+            insert(id, LocalDateTime.of(2024, 1, (int) id, 7, 0));
+        }
+        insert(6, LocalDateTime.of(2024, 2, 1, 7, 0));
+
+        maintainer.maintain(YearMonth.of(2024, 4));
+
+        List<String> partitions = maintainer.partitionNames();
+        assertFalse(partitions.contains("run_y2024m01"));
+        assertTrue(partitions.contains("run_y2024m05"));
+        assertFalse(jdbcClient.sql("SELECT to_regclass('run_y2024m01') IS NOT NULL").query(Boolean.class).single());
+        assertTrue(Files.exists(directory.resolve("run_y2024m01-0002.seg")));
+        // Kept as a table of its own until it is dropped (see RunPartitionArchivingTest)
+        assertEquals(5, jdbcClient.sql("SELECT count(*) FROM run_archived_y2024m01").query(Integer.class).single());
+        assertEquals(2, jdbcClient.sql("SELECT segments FROM run_archive WHERE partition = 'run_y2024m01'").query(Integer.class).single());
+        for (long id = 1; id <= 5; id++) {
+            assertEquals(LocalDateTime.of(2024, 1, (int) id, 7, 0), segmentStore.findById(id).orElseThrow().startedOn());
+        }
+        assertTrue(segmentStore.findById(6L).isEmpty());
+    }
+
+    // Verifies that a partition whose segments cannot be written stays attached with its runs, without failing the maintenance
+    @Test
+    void shouldKeepPartitionAttachedWhenArchivingFails() throws IOException {
+        insert(1, LocalDateTime.of(2024, 1, 1, 7, 0));
+        // The segment directory cannot be created where a file is in the way
+        Path blocked = Files.createFile(directory.resolve("blocked"));
+        RunPartitionMaintainer failing = maintainer(blocked);
+
+        assertDoesNotThrow(() -> failing.maintain(YearMonth.of(2024, 4)));
+
+        List<String> partitions = failing.partitionNames();
+        assertTrue(partitions.contains("run_y2024m01"));
+        assertTrue(partitions.contains("run_y2024m05"));
+        assertEquals(1, jdbcClient.sql("SELECT count(*) FROM run WHERE id = 1").query(Integer.class).single());
+    }
+
+    // Verifies that run_id_seq is moved past the highest archived id, so archived ids are never handed out again
+    @Test
+    void shouldAdvanceIdSequencePastArchivedRuns() throws IOException {
+        segmentStore.add("run_y2023m01", 1, List.of(new Run(10_000L, "Archived", LocalDateTime.of(2023, 1, 1, 7, 0),
+                LocalDateTime.of(2023, 1, 1, 8, 0), 10, Location.OUTDOOR, null, 0)));
+
+        maintainer.advanceIdSequence();
+
+        assertTrue(jdbcClient.sql("SELECT nextval('run_id_seq')").query(Long.class).single() > 10_000L);
+    }
+
+    // Verifies that a query bounded to March only scans the March partition
+    @Test
+    void shouldOnlyScanPartitionsWithinDateRange() {
+        String plan = String.join("\n", jdbcClient.sql("EXPLAIN " + JdbcClientRunRepository.FIND_STARTED_BETWEEN)
+                .param("from", LocalDateTime.of(2024, 3, 1, 0, 0))
+                .param("to", LocalDateTime.of(2024, 4, 1, 0, 0))
+                .query(String.class)
+                .list());
+
+        assertTrue(plan.contains("run_y2024m03"), plan);
+        assertFalse(plan.contains("run_y2024m02"), plan);
+        assertFalse(plan.contains("run_y2024m04"), plan);
+        assertFalse(plan.contains("run_default"), plan);
+    }
+
+    // Keeps 2 months of history and creates 1 month ahead, archiving to segments of 3 runs
+    private RunPartitionMaintainer maintainer(Path segments) {
+        var tiering = new RunTieringProperties(segments, 3, 2, Duration.ofDays(7));
+        segmentStore = new RunSegmentStore(tiering);
+        return new RunPartitionMaintainer(jdbcClient, new RunPartitionProperties(1, 2), new RunWriteGeneration(jdbcClient),
+                segmentStore, tiering, transactionManager);
+    }
+
+    private void insert(long id, LocalDateTime startedOn) {
+        jdbcClient.sql("INSERT INTO run (id, title, started_on, completed_on, kilometers, location) VALUES (?, ?, ?, ?, 5, 'OUTDOOR')")
+                .params(id, "Run " + id, startedOn, startedOn.plusMinutes(30))
+                .update();
+    }
+}
@@ -0,0 +1,120 @@
+package com.bryanchow.runnerz.run;
+
+import com.bryanchow.runnerz.user.Geo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.relational.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.relational.core.mapping.event.BeforeSaveEvent;
+import org.springframework.jdbc.core.simple.JdbcClient;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+// Checks the UPDATE statements generated for patches, with a mocked JdbcClient
+class RunPatchRepositoryImplTest {
+
+    static final LocalDateTime STARTED_ON = LocalDateTime.of(2024, 3, 1, 7, 0);
+
+    JdbcClient jdbcClient;
+    JdbcClient.StatementSpec statement;
+    ApplicationEventPublisher eventPublisher;
+    RunPatchRepositoryImpl repository;
+
+    Run current = new Run(1L, "Morning Run", STARTED_ON, STARTED_ON.plusMinutes(30), 5, Location.OUTDOOR, null, 3);
+
+    @BeforeEach
+    void setup() {
+        jdbcClient = mock(JdbcClient.class);
+        statement = mock(JdbcClient.StatementSpec.class);
+        when(jdbcClient.sql(anyString())).thenReturn(statement);
+        when(statement.params(anyList())).thenReturn(statement);
+        when(statement.update()).thenReturn(1);
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        repository = new RunPatchRepositoryImpl(jdbcClient, eventPublisher);
+    }
+
+    // Verifies that only the changed column is set, and that the version is checked and incremented
+    @Test
+    void shouldWriteOnlyChangedColumns() {
+        Run patched = new Run(1L, "Tempo Run", STARTED_ON, STARTED_ON.plusMinutes(30), 5, Location.OUTDOOR, null, 3);
+
+        assertTrue(repository.patch(current, patched));
+
+        verify(jdbcClient).sql("UPDATE run SET title = ?, version = version + 1 WHERE id = ? AND version = ?");
+        verify(statement).params(List.of("Tempo Run", 1L, 3));
+    }
+
+    // Verifies that a new start position sets both of its columns
+    @Test
+    void shouldWriteStartPosition() {
+        Run patched = new Run(1L, "Morning Run", STARTED_ON, STARTED_ON.plusMinutes(30), 5, Location.INDOOR, new Geo(52.37, 4.89), 3);
+
+        assertTrue(repository.patch(current, patched));
+
+        verify(jdbcClient).sql("UPDATE run SET location = ?, start_lat = ?, start_lng = ?, version = version + 1 WHERE id = ? AND version = ?");
+        verify(statement).params(List.of("INDOOR", 52.37, 4.89, 1L, 3));
+    }
+
+    // Verifies that a cleared start position is written as null, the only columns that may be null
+    @Test
+    void shouldWriteClearedStartPositionAsNull() {
+        Run withStart = new Run(1L, "Morning Run", STARTED_ON, STARTED_ON.plusMinutes(30), 5, Location.OUTDOOR, new Geo(52.37, 4.89), 3);
+
+        assertTrue(repository.patch(withStart, current));
+
+        verify(jdbcClient).sql("UPDATE run SET start_lat = ?, start_lng = ?, version = version + 1 WHERE id = ? AND version = ?");
+        verify(statement).params(Arrays.asList(null, null, 1L, 3));
+    }
+
+    // Verifies that nothing is written when the patch does not change the run
+    @Test
+    void shouldNotWriteUnchangedRun() {
+        assertFalse(repository.patch(current, current));
+
+        verifyNoInteractions(jdbcClient, eventPublisher);
+    }
+
+    // Verifies that a patch of a stale version fails, and that listeners are told about successful patches only
+    @Test
+    void shouldFailOnStaleVersionAndPublishSavedRun() {
+        Run patched = new Run(1L, "Tempo Run", STARTED_ON, STARTED_ON.plusMinutes(30), 5, Location.OUTDOOR, null, 3);
+        when(statement.update()).thenReturn(0);
+
+        assertThrows(OptimisticLockingFailureException.class, () -> repository.patch(current, patched));
+        verify(eventPublisher, never()).publishEvent(any(AfterSaveEvent.class));
+
+        when(statement.update()).thenReturn(1);
+        repository.patch(current, patched);
+
+        // The last event published is the AfterSaveEvent of the successful patch
+        ArgumentCaptor<ApplicationEvent> events = ArgumentCaptor.forClass(ApplicationEvent.class);
+        verify(eventPublisher, atLeastOnce()).publishEvent(events.capture());
+        AfterSaveEvent<?> event = assertInstanceOf(AfterSaveEvent.class, events.getValue());
+        assertEquals("Tempo Run", ((Run) event.getEntity()).title());
+        assertEquals(4, ((Run) event.getEntity()).version());
+    }
+
+    // Verifies that listeners are told before the UPDATE, while the stored run can still be read (see RunLeaderboardUpdater)
+    @Test
+    void shouldPublishBeforeSaveEventBeforeUpdate() {
+        Run patched = new Run(1L, "Tempo Run", STARTED_ON, STARTED_ON.plusMinutes(30), 5, Location.OUTDOOR, null, 3);
+
+        repository.patch(current, patched);
+
+        var order = inOrder(eventPublisher, statement);
+        order.verify(eventPublisher).publishEvent(any(BeforeSaveEvent.class));
+        order.verify(statement).update();
+        order.verify(eventPublisher).publishEvent(any(AfterSaveEvent.class));
+    }
+}
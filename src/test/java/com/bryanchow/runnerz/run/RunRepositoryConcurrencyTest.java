@@ -0,0 +1,118 @@
+package com.bryanchow.runnerz.run;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// The same stress test as InMemoryRunRepositoryTest, against the actual Postgres database.
+// No test transaction is opened, so every writer commits on its own connection
+// and the version check in the UPDATE is the only thing keeping writers apart.
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+class RunRepositoryConcurrencyTest {
+
+    static final int WRITERS = 64;
+
+    @Autowired
+    RunRepository runRepository;
+
+    @Autowired
+    JdbcClientRunRepository jdbcClientRunRepository;
+
+    Long id;
+
+    @AfterEach
+    void cleanup() {
+        if (id != null) {
+            runRepository.deleteById(id);
+        }
+    }
+
+    // Verifies that no increment is lost when 64 writers update the same run through Spring Data (@Version)
+    @Test
+    void shouldNotLoseUpdatesThroughRunRepository() throws Exception {
+        id = runRepository.save(newRun()).id();
+
+        runConcurrently(() -> {
+            while (true) {
+                Run current = runRepository.findById(id).orElseThrow();
+                try {
+                    runRepository.save(plusOneKilometer(current));
+                    return null;
+                } catch (OptimisticLockingFailureException e) {
+                    // Somebody else got in first, read the run again and retry
+                }
+            }
+        });
+
+        Run run = runRepository.findById(id).orElseThrow();
+        assertEquals(10 + WRITERS, run.kilometers());
+        assertEquals(WRITERS, run.version());
+    }
+
+    // Verifies the same for the hand-written "UPDATE ... WHERE id = ? AND version = ?" of JdbcClientRunRepository
+    @Test
+    void shouldNotLoseUpdatesThroughJdbcClientRunRepository() throws Exception {
+        id = runRepository.save(newRun()).id();
+
+        runConcurrently(() -> {
+            while (true) {
+                Run current = jdbcClientRunRepository.findById(id).orElseThrow();
+                try {
+                    jdbcClientRunRepository.update(plusOneKilometer(current), id);
+                    return null;
+                } catch (OptimisticLockingFailureException e) {
+                    // Somebody else got in first, read the run again and retry
+                }
+            }
+        });
+
+        Run run = jdbcClientRunRepository.findById(id).orElseThrow();
+        assertEquals(10 + WRITERS, run.kilometers());
+        assertEquals(WRITERS, run.version());
+    }
+
+    private static void runConcurrently(Callable<Void> writer) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < WRITERS; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return writer.call();
+            }));
+        }
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+    }
+
+    private static Run newRun() {
+        return new Run(null, "Concurrent Run", LocalDateTime.now(), LocalDateTime.now().plusMinutes(30), 10, Location.OUTDOOR, null, null);
+    }
+
+    private static Run plusOneKilometer(Run run) {
+        return new Run(run.id(),
+                run.title(),
+                run.startedOn(),
+                run.completedOn(),
+                run.kilometers() + 1,
+                run.location(),
+                run.start(),
+                run.version());
+    }
+}
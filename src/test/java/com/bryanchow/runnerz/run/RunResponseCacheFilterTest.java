@@ -0,0 +1,182 @@
+package com.bryanchow.runnerz.run;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.servlet.HandlerExecutionChain;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.ByteArrayInputStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RunResponseCacheFilterTest {
+
+    JdbcClient jdbcClient;
+    RunWriteGeneration writeGeneration;
+    RunResponseCacheFilter filter;
+    int status;
+    int queries;
+    // Stands in for the rate limiter, which runs as an interceptor of the controller
+    boolean admitted;
+    int completed;
+
+    // Stands in for the controller, answering with a list that is different on every query
+    FilterChain chain = (request, response) -> {
+        queries++;
+        var httpResponse = (HttpServletResponse) response;
+        httpResponse.setStatus(status);
+        httpResponse.setContentType("application/json");
+        httpResponse.getWriter().write("[{\"query\":" + queries + "}]" + " ".repeat(1000));
+    };
+
+    @BeforeEach
+    void setup() {
+        // The run_write_seq sequence shared by all instances is read from a mocked database
+        jdbcClient = mock(JdbcClient.class, RETURNS_DEEP_STUBS);
+        writeGeneration = new RunWriteGeneration(jdbcClient);
+        HandlerInterceptor rateLimiter = new HandlerInterceptor() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                if (!admitted) {
+                    response.setStatus(429);
+                }
+                return admitted;
+            }
+
+            @Override
+            public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+                completed++;
+            }
+        };
+        HandlerMapping handlerMapping = request -> new HandlerExecutionChain(new Object(), rateLimiter);
+        filter = new RunResponseCacheFilter(writeGeneration, handlerMapping, new RunResponseCacheProperties(2, DataSize.ofMegabytes(1)), new SimpleMeterRegistry());
+        status = 200;
+        queries = 0;
+        admitted = true;
+        completed = 0;
+    }
+
+    // Verifies that a list is served from memory until a run is written
+    @Test
+    void shouldServeCachedResponseUntilRunsChange() throws Exception {
+        assertTrue(get("/api/runs", null).getContentAsString().startsWith("[{\"query\":1}]"));
+        assertTrue(get("/api/runs", null).getContentAsString().startsWith("[{\"query\":1}]"));
+        assertEquals(1, queries);
+
+        writeGeneration.bump();
+
+        assertTrue(get("/api/runs", null).getContentAsString().startsWith("[{\"query\":2}]"));
+        assertEquals(2, queries);
+    }
+
+    // Verifies that the pre-compressed body is sent to clients that accept gzip
+    @Test
+    void shouldServeGzippedBodyToClientsAcceptingGzip() throws Exception {
+        String body = get("/api/runs", null).getContentAsString();
+
+        MockHttpServletResponse response = get("/api/runs", "gzip, deflate");
+
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertEquals("application/json", response.getContentType());
+        try (var in = new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))) {
+            assertEquals(body, new String(in.readAllBytes()));
+        }
+        assertEquals(1, queries);
+    }
+
+    // Verifies that error responses are not cached and that the number of cached responses is bounded
+    @Test
+    void shouldNotCacheErrorsOrMoreThanMaxEntries() throws Exception {
+        status = 429;
+        get("/api/runs", null);
+        get("/api/runs", null);
+        assertEquals(2, queries);
+
+        status = 200;
+        get("/api/runs/location/INDOOR", null);
+        get("/api/runs/location/OUTDOOR", null);
+        get("/api/runs/location/UNKNOWN", null);
+        get("/api/runs/location/UNKNOWN", null);
+        assertEquals(6, queries);
+
+        get("/api/runs/location/INDOOR", null);
+        assertEquals(6, queries);
+    }
+
+    // Verifies that a write by another instance, seen through run_write_seq, also expires the cached lists
+    @Test
+    void shouldExpireResponsesOnWritesOfOtherInstances() throws Exception {
+        get("/api/runs", null);
+
+        when(jdbcClient.sql("SELECT last_value FROM run_write_seq").query(Long.class).single()).thenReturn(1L);
+        writeGeneration.sync();
+
+        assertTrue(get("/api/runs", null).getContentAsString().startsWith("[{\"query\":2}]"));
+        assertEquals(2, queries);
+    }
+
+    // Verifies that writes of this instance are published to the others once, with the next sync
+    @Test
+    void shouldPublishWritesWithNextSync() {
+        writeGeneration.bump();
+        writeGeneration.bump();
+        verify(jdbcClient, never()).sql("SELECT nextval('run_write_seq')");
+
+        when(jdbcClient.sql("SELECT last_value FROM run_write_seq").query(Long.class).single()).thenReturn(1L);
+        writeGeneration.sync();
+        writeGeneration.sync();
+
+        verify(jdbcClient, times(1)).sql("SELECT nextval('run_write_seq')");
+    }
+
+    // Verifies that responses vary by format and compression, whether they come from the cache or not
+    @Test
+    void shouldVaryByAcceptAndAcceptEncoding() throws Exception {
+        assertEquals("Accept, Accept-Encoding", get("/api/runs", null).getHeader("Vary"));
+        assertEquals("Accept, Accept-Encoding", get("/api/runs", null).getHeader("Vary"));
+        assertEquals(1, queries);
+    }
+
+    // Verifies that cached responses are only served to requests admitted by the interceptors (e.g. the rate limiter)
+    @Test
+    void shouldApplyInterceptorsToCachedResponses() throws Exception {
+        get("/api/runs", null);
+
+        admitted = false;
+        MockHttpServletResponse rejected = get("/api/runs", null);
+        assertEquals(429, rejected.getStatus());
+        assertEquals(0, rejected.getContentLength());
+        assertEquals(0, completed);
+
+        admitted = true;
+        assertTrue(get("/api/runs", null).getContentAsString().startsWith("[{\"query\":1}]"));
+        assertEquals(1, completed);
+        assertEquals(1, queries);
+    }
+
+    private MockHttpServletResponse get(String uri, String acceptEncoding) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        if (acceptEncoding != null) {
+            request.addHeader("Accept-Encoding", acceptEncoding);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+}
@@ -0,0 +1,89 @@
+package com.bryanchow.runnerz.run;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.simple.JdbcClient;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares how many rows per second the run queries map, before and after
+ * the explicit projection and the positional RunRowMapper.
+ *
+ * Before, the runs were read with SELECT * and JdbcClient's query(Run.class), which
+ * maps the columns by name to the constructor of Run by reflection (SimplePropertyRowMapper).
+ * That mapper cannot put start_lat and start_lng together into a Geo, and fails without a
+ * start column, so the baseline selects NULL AS start and does a little less work than it
+ * would have to.
+ *
+ * Runs against the actual Postgres database, with the driver settings of
+ * application.properties, and only when asked for:
+ * ./mvnw test -Dtest=RunRowMapperBenchmarkTest -Drunnerz.benchmark=true
+ */
+@JdbcTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@EnabledIfSystemProperty(named = "runnerz.benchmark", matches = "true")
+class RunRowMapperBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(RunRowMapperBenchmarkTest.class);
+
+    private static final int ROWS = 100_000;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 10;
+    // How much slower the new mapping may measure before the benchmark fails
+    private static final double TOLERANCE = 0.05;
+
+    @Autowired
+    JdbcClient jdbcClient;
+
+    // Inserted in the transaction of the test, which is rolled back afterwards
+    @BeforeEach
+    void setup() {
+        jdbcClient.sql("""
+                        INSERT INTO run (title, started_on, completed_on, kilometers, location, start_lat, start_lng)
+                        SELECT 'Benchmark Run ' || i,
+                               TIMESTAMP '2024-01-01' + i * INTERVAL '1 minute',
+                               TIMESTAMP '2024-01-01' + i * INTERVAL '1 minute' + INTERVAL '30 minutes',
+                               i % 42 + 1,
+                               CASE WHEN i % 2 = 0 THEN 'INDOOR' ELSE 'OUTDOOR' END,
+                               CASE WHEN i % 3 = 0 THEN NULL ELSE 52.37 END,
+                               CASE WHEN i % 3 = 0 THEN NULL ELSE 4.89 END
+                        FROM generate_series(1, :rows) AS i
+                        """)
+                .param("rows", ROWS)
+                .update();
+    }
+
+    @Test
+    void compareRowsMappedPerSecond() {
+        double before = rowsPerSecond(() -> jdbcClient.sql("SELECT *, NULL AS start FROM run").query(Run.class).list());
+        double after = rowsPerSecond(() -> jdbcClient.sql("SELECT " + RunRowMapper.COLUMNS + " FROM run").query(RunRowMapper.INSTANCE).list());
+
+        log.info("SELECT * with query(Run.class): {} rows/s", String.format("%,.0f", before));
+        log.info("Projection with RunRowMapper:   {} rows/s ({}x)", String.format("%,.0f", after), String.format("%.2f", after / before));
+        // The projection and the positional mapper must not be slower, allowing for the noise of a shared machine
+        assertTrue(after >= before * (1 - TOLERANCE),
+                String.format("Projection with RunRowMapper maps %,.0f rows/s, SELECT * with query(Run.class) %,.0f rows/s", after, before));
+    }
+
+    private double rowsPerSecond(Supplier<List<Run>> query) {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            query.get();
+        }
+        long rows = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            rows += query.get().size();
+        }
+        return rows / ((System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,152 @@
+package com.bryanchow.runnerz.run;
+
+import com.bryanchow.runnerz.user.Geo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RunSegmentTest {
+
+    static final LocalDateTime START = LocalDateTime.of(2023, 1, 1, 6, 30, 15, 123_000_000);
+
+    @TempDir
+    Path directory;
+
+    List<Run> runs;
+
+    // 1000 runs, one every 6 hours, every third with a start position
+    @BeforeEach
+    void setup() {
+        runs = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            LocalDateTime startedOn = START.plusHours(6L * i);
+            runs.add(new Run(100L + i, "Run " + i, startedOn, startedOn.plusMinutes(45), i % 20 + 1,
+                    i % 2 == 0 ? Location.INDOOR : Location.OUTDOOR,
+                    i % 3 == 0 ? new Geo(52.37, 4.89) : null,
+                    i % 4));
+        }
+    }
+
+    // Verifies that every run is read back exactly as written, by id
+    @Test
+    void shouldFindEveryRunById() throws IOException {
+        RunSegment segment = write(runs.reversed());
+
+        for (Run run : runs) {
+            assertEquals(run, segment.findById(run.id()).orElseThrow());
+        }
+        assertTrue(segment.findById(99L).isEmpty());
+        assertTrue(segment.findById(1100L).isEmpty());
+    }
+
+    // Verifies lookups by id when the id ranges of all blocks overlap, as with runs added long after they started
+    @Test
+    void shouldFindRunsByIdAcrossOverlappingBlocks() throws IOException {
+        // Even ids scattered over the 1000 start times, so every block spans almost all of them
+        List<Run> scattered = new ArrayList<>();
+        for (int i = 0; i < runs.size(); i++) {
+            Run run = runs.get(i);
+            long id = 100L + 2L * ((i * 7919L) % runs.size());
+            scattered.add(new Run(id, run.title(), run.startedOn(), run.completedOn(), run.kilometers(), run.location(), run.start(), run.version()));
+        }
+        RunSegment segment = write(scattered);
+
+        for (Run run : scattered) {
+            assertEquals(run, segment.findById(run.id()).orElseThrow());
+        }
+        // Odd ids fall within the range of every block, but are in none of them
+        assertTrue(segment.findById(101L).isEmpty());
+        assertTrue(segment.findById(1097L).isEmpty());
+        assertTrue(segment.findById(2100L).isEmpty());
+        assertEquals(2098L, segment.maxId());
+    }
+
+    // Verifies that range queries return the runs in [from, to), across blocks, in order
+    @Test
+    void shouldFindRunsStartedBetween() throws IOException {
+        RunSegment segment = write(runs);
+        LocalDateTime from = runs.get(250).startedOn();
+        LocalDateTime to = runs.get(600).startedOn();
+
+        assertEquals(runs.subList(250, 600), segment.findStartedBetween(from, to));
+        assertEquals(runs.subList(250, 251), segment.findStartedBetween(from, from.plusNanos(1)));
+        assertTrue(segment.findStartedBetween(START.minusDays(1), START).isEmpty());
+    }
+
+    // Verifies that the store finds archived runs in any segment, and prefers the run table
+    @Test
+    void shouldMergeSegmentsWithRunTable() throws IOException {
+        var store = new RunSegmentStore(new RunTieringProperties(directory, 500, 64, Duration.ofDays(7)));
+        store.add("run_y2023m01", 1, runs.subList(0, 500));
+        store.add("run_y2023m01", 2, runs.subList(500, 1000));
+
+        assertEquals(runs.get(750), store.findById(850L).orElseThrow());
+
+        Run updated = new Run(600L, "Updated", runs.get(500).startedOn(), runs.get(500).completedOn(), 5, Location.INDOOR, null, 7);
+        List<Run> merged = store.withArchivedStartedBetween(List.of(updated), runs.get(498).startedOn(), runs.get(502).startedOn());
+        assertEquals(List.of(runs.get(498), runs.get(499), updated, runs.get(501)), merged);
+
+        // Segments are found again after a restart
+        var reopened = new RunSegmentStore(new RunTieringProperties(directory, 500, 64, Duration.ofDays(7)));
+        assertEquals(runs.get(10), reopened.findById(110L).orElseThrow());
+        assertEquals(1099L, reopened.maxId());
+    }
+
+    // Verifies that the segments of a partition are removed, and the other partitions kept
+    @Test
+    void shouldRemoveSegmentsOfPartition() throws IOException {
+        var store = new RunSegmentStore(new RunTieringProperties(directory, 500, 64, Duration.ofDays(7)));
+        store.add("run_y2023m01", 1, runs.subList(0, 500));
+        store.add("run_y2023m02", 1, runs.subList(500, 1000));
+
+        store.remove("run_y2023m01");
+
+        assertTrue(store.findById(100L).isEmpty());
+        assertEquals(runs.get(750), store.findById(850L).orElseThrow());
+        assertFalse(Files.exists(directory.resolve("run_y2023m01-0001.seg")));
+    }
+
+    // Verifies that a segment written with another format version is not read
+    @Test
+    void shouldRejectOtherFormatVersion() throws IOException {
+        Path file = directory.resolve("runs-00000001.seg");
+        RunSegment.write(file, runs, 64);
+        // The version is the int before the magic number at the end of the file
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, RunSegment.FORMAT_VERSION - 1), channel.size() - 2 * Integer.BYTES);
+        }
+
+        IOException e = assertThrows(IOException.class, () -> RunSegment.open(file));
+        assertTrue(e.getMessage().contains("format version"), e.getMessage());
+    }
+
+    // Verifies that the segment is much smaller than the runs it holds, uncompressed
+    @Test
+    void shouldCompressRuns() throws IOException {
+        Path file = directory.resolve("runs-00000001.seg");
+        RunSegment.write(file, runs, 256);
+
+        // id, title, two timestamps, kilometers, location, start and version take at least 45 bytes per run
+        assertTrue(Files.size(file) < runs.size() * 45 / 2, "segment has " + Files.size(file) + " bytes");
+        assertFalse(Files.exists(directory.resolve("runs-00000001.seg.part")));
+    }
+
+    private RunSegment write(List<Run> runs) throws IOException {
+        Path file = directory.resolve("runs-00000001.seg");
+        RunSegment.write(file, runs, 64);
+        return RunSegment.open(file);
+    }
+}
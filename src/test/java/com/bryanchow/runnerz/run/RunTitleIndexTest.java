@@ -0,0 +1,86 @@
+package com.bryanchow.runnerz.run;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RunTitleIndexTest {
+
+    RunTitleIndex index;
+
+    @BeforeEach
+    void setup() {
+        index = new RunTitleIndex();
+        index.add(run(1, "Monday Morning Run"));
+        index.add(run(2, "Tempo Run"));
+        index.add(run(3, "Morning Tempo Intervals"));
+        index.add(run(4, "Evening Jog"));
+    }
+
+    // Verifies that all runs containing the query word are found
+    @Test
+    void shouldFindRunsByWord() {
+        assertEquals(List.of(1L, 3L), ids(index.search("morning", 10, 0)));
+    }
+
+    // Verifies that runs matching more query words are ranked first
+    @Test
+    void shouldRankRunsMatchingMoreWords() {
+        assertEquals(3, index.search("morning tempo", 10, 0).getFirst().id());
+    }
+
+    // Verifies that a misspelled word still finds the run
+    @Test
+    void shouldFindRunsWithTypo() {
+        assertEquals(List.of(2L, 3L), ids(index.search("tempi", 10, 0)));
+        assertEquals(List.of(4L), ids(index.search("evenign", 10, 0)));
+    }
+
+    // Verifies that results are paginated in rank order
+    @Test
+    void shouldPaginateResults() {
+        assertEquals(List.of(1L, 2L, 3L), ids(index.search("run morning tempo", 3, 0)).stream().sorted().toList());
+        assertEquals(1, index.search("morning", 1, 1).size());
+        assertTrue(index.search("morning", 10, 2).isEmpty());
+    }
+
+    // Verifies that the pages of a word matching many runs are the same as when sorting all matches
+    @Test
+    void shouldPageThroughManyMatchesInRankOrder() {
+        for (long id = 10; id < 1010; id++) {
+            index.add(run(id, id % 3 == 0 ? "Tempo Run" : "Easy Run " + id));
+        }
+        List<Long> all = ids(index.search("tempo run", 2000, 0));
+        assertEquals(1003, all.size());
+
+        List<Long> paged = new ArrayList<>();
+        for (int page = 0; page * 20 < all.size(); page++) {
+            paged.addAll(ids(index.search("tempo run", 20, page * 20)));
+        }
+        assertEquals(all, paged);
+        // Runs with both words first, by id
+        assertEquals(List.of(2L, 12L, 15L), all.subList(0, 3));
+    }
+
+    // Verifies that updated and removed runs are no longer found by their old titles
+    @Test
+    void shouldForgetOldTitles() {
+        index.add(run(1, "Long Run"));
+        index.remove(3L);
+        assertTrue(index.search("morning", 10, 0).isEmpty());
+        assertEquals(List.of(1L), ids(index.search("long", 10, 0)));
+    }
+
+    private static Run run(long id, String title) {
+        return new Run(id, title, LocalDateTime.now(), LocalDateTime.now().plusMinutes(30), 5, Location.OUTDOOR, null, 0);
+    }
+
+    private static List<Long> ids(List<Run> runs) {
+        return runs.stream().map(Run::id).toList();
+    }
+}
@@ -0,0 +1,64 @@
+package com.bryanchow.runnerz.run;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Compares bytes on the wire and (de)serialization time of the formats served by RunController
+class RunWireFormatTest {
+
+    private static final Logger log = LoggerFactory.getLogger(RunWireFormatTest.class);
+
+    final Runs runs = new Runs(new ArrayList<>());
+
+    @BeforeEach
+    void setup() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 6, 0);
+        for (int i = 1; i <= 10_000; i++) {
+            LocalDateTime startedOn = start.plusMinutes(i * 37L);
+            runs.runs().add(new Run((long) i, "Morning Run", startedOn, startedOn.plusMinutes(45), 1 + i % 42,
+                    i % 2 == 0 ? Location.INDOOR : Location.OUTDOOR, null, 0));
+        }
+    }
+
+    @Test
+    void shouldBeSmallerThanJson() throws Exception {
+        byte[] json = measure("JSON", Jackson2ObjectMapperBuilder.json().build());
+        byte[] cbor = measure("CBOR", Jackson2ObjectMapperBuilder.cbor().featuresToEnable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build());
+        byte[] smile = measure("Smile", Jackson2ObjectMapperBuilder.smile().featuresToEnable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build());
+
+        assertTrue(cbor.length < json.length, "CBOR should be smaller than JSON");
+        assertTrue(smile.length < cbor.length, "Smile should be smaller than CBOR");
+    }
+
+    // Serializes and deserializes the runs a few times and logs the size and the time of the last round
+    private byte[] measure(String format, ObjectMapper mapper) throws Exception {
+        byte[] bytes = null;
+        long serializeNanos = 0;
+        long deserializeNanos = 0;
+        // The first rounds warm up the JIT
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            bytes = mapper.writeValueAsBytes(runs);
+            serializeNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            Runs read = mapper.readValue(bytes, Runs.class);
+            deserializeNanos = System.nanoTime() - start;
+            assertEquals(runs, read);
+        }
+        log.info("{}: {} bytes, serialize {} ms, deserialize {} ms",
+                format, bytes.length, serializeNanos / 1_000_000, deserializeNanos / 1_000_000);
+        return bytes;
+    }
+}
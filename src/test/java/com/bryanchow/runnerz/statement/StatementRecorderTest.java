@@ -0,0 +1,74 @@
+package com.bryanchow.runnerz.statement;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.simple.JdbcClient;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class StatementRecorderTest {
+
+    SimpleMeterRegistry meterRegistry;
+    StatementRecorder recorder;
+
+    @BeforeEach
+    void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        // The statements are never executed, so the data source is not needed
+        recorder = new StatementRecorder(JdbcClient.create(mock(DataSource.class)), meterRegistry,
+                new StatementProperties(Duration.ofMillis(100), 2, true, false));
+    }
+
+    // Verifies that every execution is counted under the statement name
+    @Test
+    void shouldRecordLatencyRowsAndBytesPerStatement() {
+        recorder.record(recorder.sql("run.findAll", "SELECT * FROM run"), millis(5), 10, 1000);
+        recorder.record(recorder.sql("run.findAll", "SELECT * FROM run"), millis(15), 30, 3000);
+
+        var timer = meterRegistry.get("runnerz.sql.statements").tag("statement", "run.findAll").timer();
+        assertEquals(2, timer.count());
+        assertEquals(20, timer.totalTime(TimeUnit.MILLISECONDS), 0.001);
+        assertEquals(40, meterRegistry.get("runnerz.sql.rows").tag("statement", "run.findAll").summary().totalAmount());
+        assertEquals(4000, meterRegistry.get("runnerz.sql.bytes").tag("statement", "run.findAll").summary().totalAmount());
+        assertTrue(recorder.slowest().isEmpty());
+    }
+
+    // Verifies that the bytes are only recorded when counting them is enabled
+    @Test
+    void shouldNotRecordBytesByDefault() {
+        recorder = new StatementRecorder(JdbcClient.create(mock(DataSource.class)), meterRegistry,
+                new StatementProperties(Duration.ofMillis(100), 2, false, false));
+
+        recorder.record(recorder.sql("run.findAll", "SELECT * FROM run"), millis(5), 10, 1000);
+
+        assertEquals(1, meterRegistry.get("runnerz.sql.statements").tag("statement", "run.findAll").timer().count());
+        assertNull(meterRegistry.find("runnerz.sql.bytes").summary());
+    }
+
+    // Verifies that slow statements are kept without their parameter values, slowest first
+    @Test
+    void shouldKeepSlowestStatementsWithRedactedParameters() {
+        recorder.record(recorder.sql("run.findById", "SELECT * FROM run WHERE id = :id").param("id", 7L), millis(150), 1, 100);
+        recorder.record(recorder.sql("run.update", "UPDATE run SET title = ? WHERE id = ?").params(List.of("Secret Run", 7L)), millis(300), 1, 0);
+        recorder.record(recorder.sql("run.findByLocation", "SELECT * FROM run WHERE location = :location")
+                .param("location", "INDOOR").param("since", LocalDateTime.now()), millis(200), 5, 500);
+
+        List<SlowStatement> slowest = recorder.slowest();
+        assertEquals(List.of("run.update", "run.findByLocation"), slowest.stream().map(SlowStatement::name).toList());
+        assertEquals("[String, Long]", slowest.get(0).parameters());
+        assertEquals("{location=String, since=LocalDateTime}", slowest.get(1).parameters());
+        assertEquals(Duration.ofMillis(300), slowest.get(0).duration());
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
@@ -0,0 +1,55 @@
+package com.bryanchow.runnerz.track;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrackCodecTest {
+
+    // Verifies that points survive encoding, to the precision of the format
+    @Test
+    void shouldDecodeEncodedPoints() {
+        List<TrackPoint> points = List.of(
+                new TrackPoint(LocalDateTime.of(2024, 2, 20, 6, 5, 0), 52.3702157, 4.8951679, 2.5),
+                new TrackPoint(LocalDateTime.of(2024, 2, 20, 6, 5, 1), 52.3702401, 4.8951032, 2.4),
+                new TrackPoint(LocalDateTime.of(2024, 2, 20, 6, 5, 2, 500_000_000), -33.8567844, -151.2152967, -1.0));
+
+        assertEquals(points, TrackCodec.decode(TrackCodec.encode(points)));
+    }
+
+    // Verifies that a track recorded once per second takes less than 8 bytes per point
+    @Test
+    void shouldEncodeConsecutivePointsCompactly() {
+        List<TrackPoint> points = track(3600);
+
+        byte[] data = TrackCodec.encode(points);
+
+        assertTrue(data.length < 8 * points.size(), "Encoded to " + data.length + " bytes");
+        assertEquals(points.size(), TrackCodec.decode(data).size());
+    }
+
+    // Verifies the distance between two points: one degree along a meridian is 1/360 of the earth's circumference
+    @Test
+    void shouldMeasureDistanceBetweenPoints() {
+        LocalDateTime now = LocalDateTime.now();
+        var equator = new TrackPoint(now, 0, 0, 0);
+        var north = new TrackPoint(now, 1, 0, 0);
+
+        assertEquals(2 * Math.PI * 6_371_000 / 360, equator.metersTo(north), 0.01);
+        assertEquals(0, equator.metersTo(equator));
+    }
+
+    // An hour of running at about 3 m/s to the north east, sampled once per second
+    static List<TrackPoint> track(int seconds) {
+        List<TrackPoint> points = new ArrayList<>();
+        LocalDateTime start = LocalDateTime.of(2024, 2, 20, 6, 0);
+        for (int i = 0; i < seconds; i++) {
+            points.add(new TrackPoint(start.plusSeconds(i), 52.37 + i * 0.000019, 4.89 + i * 0.000031, 2 + (i % 20) * 0.1));
+        }
+        return points;
+    }
+}
@@ -0,0 +1,28 @@
+package com.bryanchow.runnerz.track;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrackDownsamplerTest {
+
+    // Verifies that one point per interval is kept, plus the last point of the track
+    @Test
+    void shouldKeepOnePointPerIntervalAndLastPoint() {
+        List<TrackPoint> points = TrackCodecTest.track(95);
+        List<TrackPoint> kept = new ArrayList<>();
+        TrackDownsampler downsampler = new TrackDownsampler(Duration.ofSeconds(10), kept::add);
+
+        points.forEach(downsampler::accept);
+        downsampler.finish();
+
+        assertEquals(11, kept.size());
+        assertEquals(points.getFirst(), kept.getFirst());
+        assertEquals(points.get(10), kept.get(1));
+        assertEquals(points.getLast(), kept.getLast());
+    }
+}
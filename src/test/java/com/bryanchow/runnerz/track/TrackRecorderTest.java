@@ -0,0 +1,66 @@
+package com.bryanchow.runnerz.track;
+
+import com.bryanchow.runnerz.run.Location;
+import com.bryanchow.runnerz.run.Run;
+import com.bryanchow.runnerz.run.RunRepository;
+import com.bryanchow.runnerz.user.Geo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class TrackRecorderTest {
+
+    TrackRepository trackRepository;
+    RunRepository runRepository;
+    TrackRecorder recorder;
+
+    @BeforeEach
+    void setup() {
+        trackRepository = mock(TrackRepository.class);
+        runRepository = mock(RunRepository.class);
+        recorder = new TrackRecorder(trackRepository, runRepository, new TrackProperties(2), mock(PlatformTransactionManager.class));
+
+        when(runRepository.existsById(1L)).thenReturn(true);
+        when(runRepository.findById(1L)).thenReturn(Optional.of(new Run(1L, "Morning Run",
+                LocalDateTime.of(2024, 2, 20, 6, 0), LocalDateTime.of(2024, 2, 20, 6, 30), 5, Location.OUTDOOR, new Geo(52.37, 4.89), 0)));
+        when(trackRepository.findLastChunk(1L)).thenReturn(Optional.empty());
+        when(trackRepository.lockRun(1L)).thenReturn(true);
+    }
+
+    // Verifies that the points are written in chunks that follow each other
+    @Test
+    void shouldAppendChunksInOrder() {
+        when(trackRepository.nextSeq(1L)).thenReturn(0, 1);
+
+        TrackSummary summary = recorder.append(1L, TrackCodecTest.track(3).iterator());
+
+        assertEquals(2, summary.chunks());
+        verify(trackRepository).insert(eq(1L), eq(0), anyList(), anyDouble());
+        verify(trackRepository).insert(eq(1L), eq(1), anyList(), anyDouble());
+    }
+
+    // Verifies that an upload does not write a chunk after another upload appended to the same track
+    @Test
+    void shouldRejectChunkAfterConcurrentUpload() {
+        when(trackRepository.nextSeq(1L)).thenReturn(1);
+
+        assertThrows(TrackConflictException.class, () -> recorder.append(1L, TrackCodecTest.track(2).iterator()));
+        verify(trackRepository, never()).insert(anyLong(), anyInt(), anyList(), anyDouble());
+    }
+
+    // Verifies that a point without a valid position is rejected, NaN included
+    @Test
+    void shouldRejectPointThatIsNotANumber() {
+        TrackPoint point = new TrackPoint(LocalDateTime.of(2024, 2, 20, 6, 0), Double.NaN, 4.89, 2);
+
+        assertThrows(IllegalArgumentException.class, () -> recorder.append(1L, List.of(point).iterator()));
+    }
+}
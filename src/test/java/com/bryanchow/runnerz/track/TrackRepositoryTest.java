@@ -0,0 +1,37 @@
+package com.bryanchow.runnerz.track;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs against the actual Postgres database, like the other repository tests
+@JdbcTest
+@Import(TrackRepository.class)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class TrackRepositoryTest {
+
+    @Autowired
+    TrackRepository repository;
+
+    // Verifies that a track of more chunks than are read at a time is read completely and in order
+    @Test
+    void shouldReadTrackAcrossPages() {
+        List<TrackPoint> track = TrackCodecTest.track(20);
+        for (int seq = 0; seq < 20; seq++) {
+            repository.insert(900L, seq, track.subList(seq, seq + 1), 0);
+        }
+        repository.insert(901L, 0, track.subList(0, 1), 0);
+
+        List<TrackPoint> points = new ArrayList<>();
+        repository.forEachPoint(900L, points::add);
+
+        assertEquals(track.stream().map(TrackPoint::time).toList(), points.stream().map(TrackPoint::time).toList());
+    }
+}
@@ -0,0 +1,5 @@
+-- Run by Flyway before it looks at the database in the tests, so that every application
+-- context starts from an empty database, and with the seed data of runs.json under the same ids.
+-- The application keeps its data.
+DROP SCHEMA public CASCADE;
+CREATE SCHEMA public;